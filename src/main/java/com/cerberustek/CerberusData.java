@@ -22,8 +22,15 @@
 
 package com.cerberustek;
 
+import com.cerberustek.cipher.ContinuousCipher;
+import com.cerberustek.cipher.impl.ContinuousCipherInputStream;
+import com.cerberustek.cipher.impl.ContinuousCipherOutputStream;
+import com.cerberustek.cipher.impl.SegmentedGCMCipher;
 import com.cerberustek.data.*;
+import com.cerberustek.data.impl.CapturedData;
 import com.cerberustek.data.impl.DiscriminatorMapImpl;
+import com.cerberustek.data.impl.buffer.MetaByteBufferImpl;
+import com.cerberustek.data.impl.compression.CodecRegistry;
 import com.cerberustek.data.impl.elements.*;
 import com.cerberustek.data.impl.streams.MetaInputStreamImpl;
 import com.cerberustek.data.impl.streams.MetaOutputStreamImpl;
@@ -31,6 +38,7 @@ import com.cerberustek.data.impl.tags.*;
 import com.cerberustek.querry.trace.impl.pull.*;
 import com.cerberustek.querry.trace.impl.remove.*;
 import com.cerberustek.querry.trace.impl.replace.*;
+import com.cerberustek.exception.NoMatchingDiscriminatorException;
 import com.cerberustek.exception.ResourceUnavailableException;
 import com.cerberustek.exception.UnknownDiscriminatorException;
 import com.cerberustek.logic.math.Vector2i;
@@ -48,7 +56,17 @@ import com.cerberustek.querry.trace.impl.append.ApTraceResourceBuilder;
 import com.cerberustek.querry.trace.impl.insert.InsTraceIndex;
 import com.cerberustek.querry.trace.impl.insert.InsTraceIndexBuilder;
 import com.cerberustek.service.CerberusService;
+import com.cerberustek.store.BlobStore;
+import com.cerberustek.store.MetaStore;
+import com.cerberustek.store.TraceLog;
+import com.cerberustek.store.impl.BTreeStore;
+import com.cerberustek.store.impl.CachedBlobStore;
+import com.cerberustek.store.impl.FileBlobStore;
+import com.cerberustek.store.impl.GroupCommitTraceLog;
 import com.cerberustek.utils.DiscriminatorFile;
+import com.cerberustek.utils.FolderArchiver;
+import com.cerberustek.utils.FolderExtractor;
+import com.cerberustek.utils.ParallelFolderSerializer;
 
 import java.awt.image.BufferedImage;
 import java.io.*;
@@ -69,10 +87,11 @@ public class CerberusData implements CerberusService {
     }
 
     public static long totalSize(MetaData data) {
+        MetaData source = CapturedData.source(data);
         long size = DISCRIMINATOR_SIZE;
-        if (data instanceof MetaTag)
-            size += totalSize(((MetaTag) data).getTag());
-        if (data.finalSize() < 0)
+        if (source instanceof MetaTag)
+            size += totalSize(((MetaTag) source).getTag());
+        if (source.finalSize() < 0)
             size += SIZE_DEC;
         return size + data.byteSize();
     }
@@ -123,10 +142,41 @@ public class CerberusData implements CerberusService {
         return new MetaInputStreamImpl(inputStream, discriminatorMap);
     }
 
+    /**
+     * Creates a meta output stream. Closing the meta output stream
+     * closes the underlying output stream as well.
+     * @param outputStream output stream
+     * @param discriminatorMap discriminator map
+     * @return meta output stream
+     */
     public static MetaOutputStream createOutputStream(OutputStream outputStream, DiscriminatorMap discriminatorMap) {
         return new MetaOutputStreamImpl(outputStream, discriminatorMap);
     }
 
+    /**
+     * Creates an output stream which writes the children of unordered
+     * containers in canonical order, so equal data always results in
+     * equal bytes.
+     * @param outputStream output stream
+     * @param discriminatorMap discriminator map
+     * @return canonical meta output stream
+     */
+    public static MetaOutputStream createCanonicalOutputStream(OutputStream outputStream, DiscriminatorMap discriminatorMap) {
+        return new MetaOutputStreamImpl(outputStream, discriminatorMap, true);
+    }
+
+    /**
+     * Creates a meta byte buffer which writes the children of unordered
+     * containers in canonical order. Equal data always results in the
+     * same bytes as written to a canonical output stream.
+     * @param buffer underlying buffer
+     * @param discriminatorMap discriminator map
+     * @return canonical meta byte buffer
+     */
+    public static MetaByteBuffer createCanonicalBuffer(ByteBuffer buffer, DiscriminatorMap discriminatorMap) {
+        return new MetaByteBufferImpl(discriminatorMap, buffer, true);
+    }
+
     public static MetaInputStream createInputStream(InputStream inputStream) {
         return createInputStream(inputStream, genDefaultDiscriminators());
     }
@@ -135,10 +185,164 @@ public class CerberusData implements CerberusService {
         return createOutputStream(outputStream, genDefaultDiscriminators());
     }
 
+    /**
+     * Creates an input stream, which decrypts all data read from the
+     * underlying stream with the specified continuous cipher. The cipher
+     * has to be in the same state as the cipher the data has been
+     * encrypted with.
+     * @param inputStream encrypted input stream
+     * @param discriminatorMap discriminator map
+     * @param cipher continuous cipher
+     * @return meta input stream
+     */
+    public static MetaInputStream createInputStream(InputStream inputStream, DiscriminatorMap discriminatorMap,
+                                                    ContinuousCipher cipher) {
+        return createInputStream(new ContinuousCipherInputStream(inputStream, cipher), discriminatorMap);
+    }
+
+    /**
+     * Creates an output stream, which encrypts all data written to it
+     * with the specified continuous cipher, instead of encrypting single
+     * elements.
+     * @param outputStream output stream for the encrypted data
+     * @param discriminatorMap discriminator map
+     * @param cipher continuous cipher
+     * @return meta output stream
+     */
+    public static MetaOutputStream createOutputStream(OutputStream outputStream, DiscriminatorMap discriminatorMap,
+                                                      ContinuousCipher cipher) {
+        return createOutputStream(new ContinuousCipherOutputStream(outputStream, cipher), discriminatorMap);
+    }
+
+    /**
+     * Creates an input stream, which authenticates and decrypts the
+     * underlying stream segment by segment. Data is only returned
+     * once the segment it is part of has been authenticated, and is
+     * available as soon as the writing side has flushed it.
+     * @param inputStream encrypted input stream
+     * @param discriminatorMap discriminator map
+     * @param cipher segmented AES/GCM cipher
+     * @return meta input stream
+     * @throws IOException failed to read the stream header
+     */
+    public static MetaInputStream createInputStream(InputStream inputStream, DiscriminatorMap discriminatorMap,
+                                                    SegmentedGCMCipher cipher) throws IOException {
+        return createInputStream(cipher.decrypt(inputStream), discriminatorMap);
+    }
+
+    /**
+     * Creates an output stream, which encrypts all data written to it
+     * with the specified segmented AES/GCM cipher. Flushing the stream
+     * sends the buffered data as a short segment, so the stream can be
+     * used for sessions. The stream has to be closed to write the last
+     * segment.
+     * @param outputStream output stream for the encrypted data
+     * @param discriminatorMap discriminator map
+     * @param cipher segmented AES/GCM cipher
+     * @return meta output stream
+     * @throws IOException failed to write the stream header
+     */
+    public static MetaOutputStream createOutputStream(OutputStream outputStream, DiscriminatorMap discriminatorMap,
+                                                      SegmentedGCMCipher cipher) throws IOException {
+        return createOutputStream(cipher.encrypt(outputStream), discriminatorMap);
+    }
+
+    public static MetaInputStream createInputStream(InputStream inputStream, ContinuousCipher cipher) {
+        return createInputStream(inputStream, genDefaultDiscriminators(), cipher);
+    }
+
+    public static MetaOutputStream createOutputStream(OutputStream outputStream, ContinuousCipher cipher) {
+        return createOutputStream(outputStream, genDefaultDiscriminators(), cipher);
+    }
+
+    public static MetaInputStream createInputStream(InputStream inputStream, SegmentedGCMCipher cipher)
+            throws IOException {
+        return createInputStream(inputStream, genDefaultDiscriminators(), cipher);
+    }
+
+    public static MetaOutputStream createOutputStream(OutputStream outputStream, SegmentedGCMCipher cipher)
+            throws IOException {
+        return createOutputStream(outputStream, genDefaultDiscriminators(), cipher);
+    }
+
+    public static MetaStore openStore(File file, DiscriminatorMap discriminatorMap, int pageSize, int cacheSize) throws IOException {
+        return new BTreeStore(file, discriminatorMap, pageSize, cacheSize);
+    }
+
+    public static MetaStore openStore(File file, DiscriminatorMap discriminatorMap) throws IOException {
+        return new BTreeStore(file, discriminatorMap);
+    }
+
+    public static MetaStore openStore(File file) throws IOException {
+        return openStore(file, genDefaultDiscriminators());
+    }
+
+    public static TraceLog openTraceLog(File file, DiscriminatorMap discriminatorMap) throws IOException {
+        return new GroupCommitTraceLog(file, discriminatorMap);
+    }
+
+    public static TraceLog openTraceLog(File file) throws IOException {
+        return openTraceLog(file, genDefaultDiscriminators());
+    }
+
     public static DiscriminatorMap genEmptyDiscriminators() {
         return new DiscriminatorMapImpl();
     }
 
+    public static BlobStore openBlobStore(File root, long cacheSize) throws IOException {
+        return new CachedBlobStore(new FileBlobStore(root), cacheSize);
+    }
+
+    public static BlobStore openBlobStore(File root) throws IOException {
+        return new FileBlobStore(root);
+    }
+
+    /**
+     * Generates the default discriminators with blob references that
+     * resolve through the specified blob store.
+     * @param blobStore blob store
+     * @return discriminator map
+     */
+    public static DiscriminatorMap genDefaultDiscriminators(BlobStore blobStore) {
+        DiscriminatorMap map = genDefaultDiscriminators();
+        map.unregisterData(BlobRefElement.class);
+        map.unregisterData(BlobRefTag.class);
+        map.registerData(BlobRefElement.class, new BlobRefElementBuilder(blobStore), (short) 45);
+        map.registerData(BlobRefTag.class, new BlobRefTagBuilder(blobStore), (short) 94);
+        return map;
+    }
+
+    /**
+     * Generates the default discriminators with stream encryption
+     * builders, that decrypt their data with the specified cipher.
+     * @param cipher segmented AES/GCM cipher
+     * @return discriminator map
+     */
+    public static DiscriminatorMap genDefaultDiscriminators(SegmentedGCMCipher cipher) {
+        DiscriminatorMap map = genDefaultDiscriminators();
+        map.unregisterData(StreamEncryptionElement.class);
+        map.unregisterData(StreamEncryptionTag.class);
+        map.registerData(StreamEncryptionElement.class, new StreamEncryptionElementBuilder(cipher), (short) 47);
+        map.registerData(StreamEncryptionTag.class, new StreamEncryptionTagBuilder(cipher), (short) 96);
+        return map;
+    }
+
+    /**
+     * Generates the default discriminators with compression builders,
+     * which only decompress the data of compression elements once it is
+     * accessed. Compression elements that are never accessed are written
+     * back with their original payload.
+     * @return discriminator map
+     */
+    public static DiscriminatorMap genLazyDiscriminators() {
+        DiscriminatorMap map = genDefaultDiscriminators();
+        map.unregisterData(CompressionElement.class);
+        map.unregisterData(CompressionTag.class);
+        map.registerData(CompressionElement.class, new CompressionElementBuilder(CodecRegistry.getDefault(), true), (short) 26);
+        map.registerData(CompressionTag.class, new CompressionTagBuilder(CodecRegistry.getDefault(), true), (short) 75);
+        return map;
+    }
+
     public static DiscriminatorMap genDefaultDiscriminators() {
         DiscriminatorMap map = new DiscriminatorMapImpl();
         map.registerData(ByteElement.class, new ByteElementBuilder(), (short) 1);
@@ -182,6 +386,12 @@ public class CerberusData implements CerberusService {
         map.registerData(Vector4dElement.class, new Vector4dElementBuilder(), (short) 39);
         map.registerData(ClassElement.class, new ClassElementBuilder(), (short) 40);
         map.registerData(EncryptionElement.class, new EncryptionElementBuilder(), (short) 41);
+        map.registerData(SnapshotDocElement.class, new SnapshotDocElementBuilder(), (short) 42);
+        map.registerData(ConcurrentDocElement.class, new ConcurrentDocElementBuilder(), (short) 43);
+        map.registerData(ConcurrentMapElement.class, new ConcurrentMapElementBuilder(), (short) 44);
+        map.registerData(BlobRefElement.class, new BlobRefElementBuilder(), (short) 45);
+        map.registerData(BlockCompressedListElement.class, new BlockCompressedListElementBuilder(), (short) 46);
+        map.registerData(StreamEncryptionElement.class, new StreamEncryptionElementBuilder(), (short) 47);
 
         map.registerData(ByteTag.class, new ByteTagBuilder(), (short) 50);
         map.registerData(ShortTag.class, new ShortTagBuilder(), (short) 51);
@@ -224,6 +434,12 @@ public class CerberusData implements CerberusService {
         map.registerData(Vector4dTag.class, new Vector4dTagBuilder(), (short) 88);
         map.registerData(ClassTag.class, new ClassTagBuilder(), (short) 89);
         map.registerData(EncryptionTag.class, new EncryptionTagBuilder(), (short) 90);
+        map.registerData(SnapshotDocTag.class, new SnapshotDocTagBuilder(), (short) 91);
+        map.registerData(ConcurrentDocTag.class, new ConcurrentDocTagBuilder(), (short) 92);
+        map.registerData(ConcurrentMapTag.class, new ConcurrentMapTagBuilder(), (short) 93);
+        map.registerData(BlobRefTag.class, new BlobRefTagBuilder(), (short) 94);
+        map.registerData(BlockCompressedListTag.class, new BlockCompressedListTagBuilder(), (short) 95);
+        map.registerData(StreamEncryptionTag.class, new StreamEncryptionTagBuilder(), (short) 96);
 
         map.registerData(ReplTraceTag.class, new ReplTraceTagBuilder(), (short) 100);
         map.registerData(ReplTraceIndex.class, new ReplTraceIndexBuilder(), (short) 101);
@@ -327,9 +543,21 @@ public class CerberusData implements CerberusService {
         return new ContainerTag(tag, data);
     }
 
+    public static BlobRefTag serializeBufferedImageARGB(String tag, BufferedImage image, BlobStore blobStore) {
+        return new BlobRefTag(tag, serializeBufferedImageARGB(tag, image).get(), blobStore);
+    }
+
+    public static BufferedImage deserializeBufferedImageARGB(BlobRefElement element, Vector2i size) {
+        return deserializeBufferedImageARGB(element.get(), size);
+    }
+
     public static BufferedImage deserializeBufferedImageARGB(ContainerElement element, Vector2i size) {
+        return deserializeBufferedImageARGB(element.get(), size);
+    }
+
+    private static BufferedImage deserializeBufferedImageARGB(byte[] data, Vector2i size) {
         BufferedImage image = new BufferedImage(size.getX(), size.getY(), BufferedImage.TYPE_INT_ARGB);
-        ByteBuffer buffer = ByteBuffer.wrap(element.get());
+        ByteBuffer buffer = ByteBuffer.wrap(data);
         buffer.rewind();
 
         for (int y = 0; y < image.getHeight(); y++) {
@@ -347,41 +575,21 @@ public class CerberusData implements CerberusService {
         if (file.isFile()) {
             long fileSize = file.length();
 
-            if (fileSize > Integer.MAX_VALUE - 5) {
-                ListTag<ContainerElement> list = new ListTag<>(file.getName());
-                InputStream inputStream = new FileInputStream(file);
-
-                long size = fileSize;
-                byte[] dataBuffer = new byte[Integer.MAX_VALUE - 5];
-                byte[] BUFFER = new byte[4096];
-
-                while (size > 0) {
-                    int toRead = (int) (size > Integer.MAX_VALUE - 5 ? Integer.MAX_VALUE - 5 : size);
-                    int written = 0;
-
-                    for (int i = inputStream.read(BUFFER, 0, toRead > BUFFER.length ? BUFFER.length : toRead);
-                        i != -1; i = inputStream.read(BUFFER, 0, toRead > BUFFER.length ? BUFFER.length : toRead)) {
+            try (DataInputStream inputStream = new DataInputStream(new FileInputStream(file))) {
+                if (fileSize > FolderArchiver.MAX_CONTAINER_SIZE) {
+                    ListTag<ContainerElement> list = new ListTag<>(file.getName());
 
-                        System.arraycopy(BUFFER, 0, dataBuffer, written, i);
-                        written += i;
-                        toRead -= i;
+                    for (long remaining = fileSize; remaining > 0; remaining -= FolderArchiver.LARGE_FILE_CHUNK_SIZE) {
+                        byte[] data = new byte[(int) Math.min(remaining, FolderArchiver.LARGE_FILE_CHUNK_SIZE)];
+                        inputStream.readFully(data);
+                        list.add(new ContainerElement(data));
                     }
-
-                    list.add(new ContainerTag(file.getName(), dataBuffer));
-                    size -= Integer.MAX_VALUE - 5;
-                }
-                return list;
-            } else {
-                byte[] data = new byte[(int) fileSize];
-                InputStream inputStream = new FileInputStream(file);
-
-                int written = 0;
-                byte[] BUFFER = new byte[4096];
-                for (int i = inputStream.read(BUFFER); i != -1; i = inputStream.read(BUFFER)) {
-                    System.arraycopy(BUFFER, 0, data, written, i);
-                    written += i;
+                    return list;
+                } else {
+                    byte[] data = new byte[(int) fileSize];
+                    inputStream.readFully(data);
+                    return new ContainerTag(file.getName(), data);
                 }
-                return new ContainerTag(file.getName(), data);
             }
         } else if (file.isDirectory()) {
             DocTag docTag = new DocTag(file.getName());
@@ -403,6 +611,76 @@ public class CerberusData implements CerberusService {
         return null;
     }
 
+    /**
+     * Serializes the folder like <code>serializeFolder(File)</code>, but
+     * stores the file contents in the blob store and only references
+     * them from the returned tag. Files with equal contents are stored
+     * only once.
+     * @param file file or folder
+     * @param blobStore blob store
+     * @return serialized folder
+     * @throws IOException failed to read a file or to write to the
+     *          blob store
+     */
+    public static MetaTag serializeFolder(File file, BlobStore blobStore) throws IOException {
+        if (!file.exists())
+            return null;
+
+        if (file.isFile()) {
+            try (InputStream inputStream = new FileInputStream(file)) {
+                return BlobRefElement.store(inputStream, blobStore).toTag(file.getName());
+            }
+        } else if (file.isDirectory()) {
+            DocTag docTag = new DocTag(file.getName());
+
+            File[] files = file.listFiles();
+            if (files == null)
+                return docTag;
+
+            for (File f : files) {
+                MetaTag data = serializeFolder(f, blobStore);
+                if (data != null)
+                    docTag.insert(data);
+            }
+            return docTag;
+        }
+        return null;
+    }
+
+    /**
+     * Serializes the folder like <code>serializeFolder(File)</code>, but
+     * reads and optionally compresses the files in parallel on the
+     * common fork join pool.
+     * @param file file or folder
+     * @param compress store files as compression tags
+     * @return serialized folder
+     * @throws IOException failed to read a file
+     */
+    public static MetaTag serializeFolderParallel(File file, boolean compress) throws IOException {
+        return new ParallelFolderSerializer(compress).serialize(file);
+    }
+
+    /**
+     * Writes the file or folder to the output stream in the format of
+     * <code>serializeFolder(File)</code>, without loading whole files
+     * into memory.
+     * @param file file or folder
+     * @param outputStream output stream
+     * @return amount of bytes written
+     * @throws IOException failed to read a file or to write to the stream
+     */
+    public static long archiveFolder(File file, MetaOutputStream outputStream) throws IOException {
+        try {
+            return new FolderArchiver().archive(file, outputStream);
+        } catch (NoMatchingDiscriminatorException e) {
+            throw new IOException("Discriminator map does not support folder archives", e);
+        }
+    }
+
+    public static File extractFolder(MetaInputStream inputStream, File target) throws IOException, UnknownDiscriminatorException {
+        return new FolderExtractor().extract(inputStream, target);
+    }
+
     public static QueryResult pullResult(QueryTrace request, ResourceLocation location, MetaData data) throws ResourceUnavailableException {
         if (data != null) {
 
@@ -22,6 +22,11 @@
 
 package com.cerberustek;
 
+import com.cerberustek.cipher.impl.AESGCMCipher;
+import com.cerberustek.cipher.impl.KeyDerivation;
+import com.cerberustek.cipher.impl.RSAPrivateCipher;
+import com.cerberustek.cipher.impl.RSAPublicCipher;
+import com.cerberustek.cipher.impl.SignatureVerifier;
 import com.cerberustek.data.DiscriminatorMap;
 import com.cerberustek.data.MetaData;
 import com.cerberustek.data.MetaInputStream;
@@ -33,35 +38,57 @@ import com.cerberustek.exception.UnknownDiscriminatorException;
 import com.cerberustek.service.CerberusService;
 import com.cerberustek.settings.Settings;
 import com.cerberustek.settings.impl.SettingsImpl;
+import com.cerberustek.utils.BoundedCache;
 import com.cerberustek.utils.DiscriminatorFile;
 import org.jetbrains.annotations.NotNull;
 
 import javax.crypto.KeyGenerator;
 import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
-import javax.crypto.SecretKeyFactory;
-import javax.crypto.spec.PBEKeySpec;
-import javax.crypto.spec.SecretKeySpec;
 import java.io.*;
 import java.security.*;
 import java.security.interfaces.DSAPrivateKey;
 import java.security.interfaces.DSAPublicKey;
 import java.security.interfaces.RSAPrivateKey;
 import java.security.interfaces.RSAPublicKey;
-import java.security.spec.InvalidKeySpecException;
-import java.security.spec.KeySpec;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
-
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Service, which manages the keys of the application. The key document
+ * is only accessed while holding the key lock, so keys can be looked up,
+ * registered and derived from multiple threads. Cached keys and ciphers
+ * are invalidated after the lock has been released, since the caches
+ * look keys up while holding their own locks.
+ */
 @SuppressWarnings("DuplicatedCode")
 public class CerberusEncrypt implements CerberusService {
 
     private static final String SETTINGS_PATH = "security/settings.xml";
 
+    private final Object keyLock = new Object();
+    /** latest pending asynchronous derivation for each uuid, guarded by the key lock */
+    private final Map<UUID, Long> derivations = new HashMap<>();
+    private long derivationSequence;
+
     private Settings settings;
     private DocElement document;
     private SecureRandom random;
 
+    private BoundedCache<UUID, PublicKey> publicKeys;
+    private BoundedCache<UUID, PrivateKey> privateKeys;
+    private BoundedCache<UUID, SecretKey> secretKeys;
+    private BoundedCache<UUID, RSAPublicCipher> publicCiphers;
+    private BoundedCache<UUID, RSAPrivateCipher> privateCiphers;
+    private BoundedCache<UUID, AESGCMCipher> secretCiphers;
+    private volatile SignatureVerifier verifier;
+    private KeyDerivation keyDerivation;
+
     @Override
     public void start() {
         CerberusRegistry registry = CerberusRegistry.getInstance();
@@ -91,9 +118,47 @@ public class CerberusEncrypt implements CerberusService {
             document = new DocElement();
         }
 
+        int cacheSize = settings.getInteger("key_cache_size", 1024);
+        publicKeys = new BoundedCache<>(cacheSize);
+        privateKeys = new BoundedCache<>(cacheSize);
+        secretKeys = new BoundedCache<>(cacheSize);
+        publicCiphers = new BoundedCache<>(cacheSize);
+        privateCiphers = new BoundedCache<>(cacheSize);
+        secretCiphers = new BoundedCache<>(cacheSize);
+
+        keyDerivation = new KeyDerivation(
+                settings.getInteger("key_derivation_threads", Runtime.getRuntime().availableProcessors()),
+                settings.getInteger("key_derivation_queue", 256),
+                settings.getInteger("key_derivation_cache", 0));
         random = new SecureRandom();
     }
 
+    /**
+     * Drops all cached keys and ciphers for the uuid. Has to be called
+     * whenever a key with this uuid is changed or removed.
+     * @param uuid key uuid
+     */
+    private void invalidate(UUID uuid) {
+        assert !Thread.holdsLock(keyLock);
+        publicKeys.remove(uuid);
+        privateKeys.remove(uuid);
+        secretKeys.remove(uuid);
+        publicCiphers.remove(uuid);
+        privateCiphers.remove(uuid);
+        secretCiphers.remove(uuid);
+    }
+
+    /**
+     * Discards the pending asynchronous derivation for the uuid, so its
+     * key is not registered once it has been derived. Has to be called
+     * with the key lock held, whenever the secret key or the salt of the
+     * uuid is changed.
+     * @param uuid key uuid
+     */
+    private void supersede(UUID uuid) {
+        derivations.remove(uuid);
+    }
+
     private DiscriminatorMap createOrReadMap() {
         CerberusRegistry registry = CerberusRegistry.getInstance();
 
@@ -166,6 +231,7 @@ public class CerberusEncrypt implements CerberusService {
     @Override
     public void stop() {
         save();
+        keyDerivation.close();
         settings.destroy();
     }
 
@@ -176,7 +242,9 @@ public class CerberusEncrypt implements CerberusService {
         try (MetaOutputStream outputStream = CerberusData.createOutputStream(
                 new FileOutputStream(settings.getString("certificates", "ssh-certs.cdf")), map)) {
 
-            outputStream.writeData(document);
+            synchronized (keyLock) {
+                outputStream.writeData(document);
+            }
             outputStream.flush();
         } catch (IOException | NoMatchingDiscriminatorException e) {
             registry.warning("Failed to write ssh-certificates.");
@@ -194,57 +262,151 @@ public class CerberusEncrypt implements CerberusService {
     }
 
     public void registerPublicKey(UUID uuid, PublicKey key) {
-        if (getPublicKeySet().containsKey(new UUIDElement(uuid)))
-            getPublicKeySet().replace(new UUIDElement(uuid), new PublicKeyElement(key));
-        else
+        synchronized (keyLock) {
             getPublicKeySet().put(new UUIDElement(uuid), new PublicKeyElement(key));
+        }
+        invalidate(uuid);
     }
 
     public UUID registerPublicKey(PublicKey key) {
-        UUID uuid = nextUID();
-        getPublicKeySet().put(new UUIDElement(uuid), new PublicKeyElement(key));
-        return uuid;
+        synchronized (keyLock) {
+            UUID uuid = nextUID();
+            getPublicKeySet().put(new UUIDElement(uuid), new PublicKeyElement(key));
+            return uuid;
+        }
     }
 
     public void registerPrivateKey(UUID uuid, PrivateKey key) {
-        if (getPrivateKeySet().containsKey(new UUIDElement(uuid)))
-            getPrivateKeySet().replace(new UUIDElement(uuid), new PrivateKeyElement(key));
-        else
+        synchronized (keyLock) {
             getPrivateKeySet().put(new UUIDElement(uuid), new PrivateKeyElement(key));
+        }
+        invalidate(uuid);
     }
 
     public UUID registerPrivateKey(PrivateKey key) {
-        UUID uuid = nextUID();
-        getPrivateKeySet().put(new UUIDElement(uuid), new PrivateKeyElement(key));
-        return uuid;
+        synchronized (keyLock) {
+            UUID uuid = nextUID();
+            getPrivateKeySet().put(new UUIDElement(uuid), new PrivateKeyElement(key));
+            return uuid;
+        }
     }
 
     public void registerSecretKey(SecretKey key, UUID uuid) {
-        if (getSecretKeySet().containsKey(new UUIDElement(uuid)))
-            getSecretKeySet().replace(new UUIDElement(uuid), new SecretKeyElement(key));
-        else
+        synchronized (keyLock) {
+            supersede(uuid);
             getSecretKeySet().put(new UUIDElement(uuid), new SecretKeyElement(key));
+        }
+        invalidate(uuid);
     }
 
     public UUID registerSecretKey(SecretKey key) {
-        UUID uuid = nextUID();
-        getSecretKeySet().put(new UUIDElement(uuid), new SecretKeyElement(key));
-        return uuid;
+        synchronized (keyLock) {
+            UUID uuid = nextUID();
+            getSecretKeySet().put(new UUIDElement(uuid), new SecretKeyElement(key));
+            return uuid;
+        }
     }
 
+    /**
+     * Registers a derived secret key together with its salt, replacing
+     * the previous key and salt of the uuid.
+     * @param uuid key uuid
+     * @param key derived key
+     * @param salt salt the key has been derived with
+     */
+    private void registerDerivedKey(UUID uuid, SecretKey key, byte[] salt) {
+        synchronized (keyLock) {
+            supersede(uuid);
+            getSaltSet().put(new UUIDElement(uuid), new ContainerElement(salt));
+            getSecretKeySet().put(new UUIDElement(uuid), new SecretKeyElement(key));
+        }
+        invalidate(uuid);
+    }
+
+    /**
+     * Returns the public key with the specified uuid. Keys are cached
+     * after the first lookup, so repeated lookups do not have to go
+     * through the key document.
+     * @param uuid key uuid
+     * @return public key, or null if there is no such key
+     */
     public PublicKey getPublicKey(UUID uuid) {
-        PublicKeyElement key = getPublicKeySet().get(new UUIDElement(uuid));
-        return key != null ? key.get() : null;
+        return publicKeys.get(uuid, id -> {
+            PublicKeyElement key;
+            synchronized (keyLock) {
+                key = getPublicKeySet().get(new UUIDElement(id));
+            }
+            return key != null ? key.get() : null;
+        });
     }
 
     public PrivateKey getPrivateKey(UUID uuid) {
-        PrivateKeyElement key = getPrivateKeySet().get(new UUIDElement(uuid));
-        return key != null ? key.get() : null;
+        return privateKeys.get(uuid, id -> {
+            PrivateKeyElement key;
+            synchronized (keyLock) {
+                key = getPrivateKeySet().get(new UUIDElement(id));
+            }
+            return key != null ? key.get() : null;
+        });
     }
 
     public SecretKey getSecretKey(UUID uuid) {
-        SecretKeyElement key = getSecretKeySet().get(new UUIDElement(uuid));
-        return key != null ? key.get() : null;
+        return secretKeys.get(uuid, id -> {
+            SecretKeyElement key;
+            synchronized (keyLock) {
+                key = getSecretKeySet().get(new UUIDElement(id));
+            }
+            return key != null ? key.get() : null;
+        });
+    }
+
+    /**
+     * Returns a ready cipher for the RSA public key with the specified
+     * uuid. Ciphers are cached, so encrypting for known peers does not
+     * have to set up a new cipher each time.
+     * @param uuid key uuid
+     * @return public cipher, or null if there is no RSA public key
+     */
+    public RSAPublicCipher getPublicCipher(UUID uuid) {
+        return publicCiphers.get(uuid, id -> {
+            RSAPublicKey key = getRSAPublicKey(id);
+            if (key == null)
+                return null;
+            try {
+                return new RSAPublicCipher(key);
+            } catch (NoSuchPaddingException | NoSuchAlgorithmException e) {
+                CerberusRegistry.getInstance().critical("Your System does not support RSA encryption!");
+            }
+            return null;
+        });
+    }
+
+    public RSAPrivateCipher getPrivateCipher(UUID uuid) {
+        return privateCiphers.get(uuid, id -> {
+            RSAPrivateKey key = getRSAPrivateKey(id);
+            if (key == null)
+                return null;
+            try {
+                return new RSAPrivateCipher(key);
+            } catch (NoSuchPaddingException | NoSuchAlgorithmException e) {
+                CerberusRegistry.getInstance().critical("Your System does not support RSA encryption!");
+            }
+            return null;
+        });
+    }
+
+    public AESGCMCipher getSecretCipher(UUID uuid) {
+        return secretCiphers.get(uuid, id -> {
+            SecretKey key = getSecretKey(id);
+            if (key == null)
+                return null;
+            try {
+                return new AESGCMCipher(key);
+            } catch (NoSuchPaddingException | NoSuchAlgorithmException e) {
+                CerberusRegistry.getInstance().critical("Your System does not support AES encryption!");
+            }
+            return null;
+        });
     }
 
     public SecretKey genSecretKey(UUID uuid) {
@@ -256,7 +418,7 @@ public class CerberusEncrypt implements CerberusService {
             KeyGenerator generator = KeyGenerator.getInstance("AES");
             generator.init(keyLength, random);
             SecretKey key = generator.generateKey();
-            getSecretKeySet().put(new UUIDElement(uuid), new SecretKeyElement(key));
+            registerSecretKey(key, uuid);
             return key;
         } catch (NoSuchAlgorithmException e) {
             CerberusRegistry.getInstance().critical("Your System does not support AES encryption!");
@@ -273,7 +435,7 @@ public class CerberusEncrypt implements CerberusService {
             KeyGenerator generator = KeyGenerator.getInstance(algorithm);
             generator.init(keyLength, random);
             SecretKey key = generator.generateKey();
-            getSecretKeySet().put(new UUIDElement(uuid), new SecretKeyElement(key));
+            registerSecretKey(key, uuid);
             return key;
         } catch (NoSuchAlgorithmException e) {
             CerberusRegistry.getInstance().critical("Your System does not support " + algorithm + " encryption!");
@@ -282,42 +444,20 @@ public class CerberusEncrypt implements CerberusService {
     }
 
     public UUID genSecretKey(String algorithm, char[] pw, byte[] salt, int iterationCount, int keyLength) {
-        try {
-            UUID uuid = nextUID();
-            registerSalt(uuid, salt);
+        SecretKey key = deriveSecretKey(algorithm, pw, salt, iterationCount, keyLength);
+        if (key == null)
+            return null;
 
-            SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
-            KeySpec spec = new PBEKeySpec(pw, salt, iterationCount, keyLength);
-            SecretKey tmp = factory.generateSecret(spec);
-            SecretKey key = new SecretKeySpec(tmp.getEncoded(), algorithm);
-            getSecretKeySet().put(new UUIDElement(uuid), new SecretKeyElement(key));
-            return uuid;
-        } catch (NoSuchAlgorithmException e) {
-            CerberusRegistry.getInstance().critical("Your system does not support " + algorithm + " encryption!");
-        } catch (InvalidKeySpecException e) {
-            CerberusRegistry.getInstance().critical("Cannot generate secret key from password ************");
-        }
-        return null;
+        UUID uuid = nextUID();
+        registerDerivedKey(uuid, key, salt.clone());
+        return uuid;
     }
 
     public SecretKey genSecretKey(UUID uuid, String algorithm, char[] pw, byte[] salt, int iterationCount, int keyLength) {
-        try {
-            getSaltSet().remove(new UUIDElement(uuid));
-            getSecretKeySet().remove(new UUIDElement(uuid));
-            registerSalt(uuid, salt);
-
-            SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
-            KeySpec spec = new PBEKeySpec(pw, salt, iterationCount, keyLength);
-            SecretKey tmp = factory.generateSecret(spec);
-            SecretKey key = new SecretKeySpec(tmp.getEncoded(), algorithm);
-            getSecretKeySet().put(new UUIDElement(uuid), new SecretKeyElement(key));
-            return key;
-        } catch (NoSuchAlgorithmException e) {
-            CerberusRegistry.getInstance().critical("Your system does not support " + algorithm + " encryption!");
-        } catch (InvalidKeySpecException e) {
-            CerberusRegistry.getInstance().critical("Cannot generate secret key from password ************");
-        }
-        return null;
+        SecretKey key = deriveSecretKey(algorithm, pw, salt, iterationCount, keyLength);
+        if (key != null)
+            registerDerivedKey(uuid, key, salt.clone());
+        return key;
     }
 
     public UUID genSecretKey(char[] pw, byte[] salt) {
@@ -325,46 +465,76 @@ public class CerberusEncrypt implements CerberusService {
     }
 
     public UUID genSecretKey(String algorithm, char[] pw, byte[] salt) {
-        try {
-            // remove is already present
-            UUID uuid = nextUID();
-            registerSalt(uuid, salt);
-
-            SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
-            KeySpec spec = new PBEKeySpec(pw, salt, settings.getInteger("key_spec_iterations", 65536),
-                    settings.getInteger("key_length", 256));
-            SecretKey tmp = factory.generateSecret(spec);
-            SecretKey key = new SecretKeySpec(tmp.getEncoded(), algorithm);
-            getSecretKeySet().put(new UUIDElement(uuid), new SecretKeyElement(key));
-            return uuid;
-        } catch (NoSuchAlgorithmException e) {
-            CerberusRegistry.getInstance().critical("Your system does not support " + algorithm + " encryption!");
-        } catch (InvalidKeySpecException e) {
-            CerberusRegistry.getInstance().critical("Cannot generate secret key from password ************");
+        return genSecretKey(algorithm, pw, salt, settings.getInteger("key_spec_iterations", 65536),
+                settings.getInteger("key_length", 256));
+    }
+
+    /**
+     * Derives a secret key from the password on the key derivation pool,
+     * without registering it. This is meant for checking passwords, where
+     * the derived key is only compared to a known key.
+     * @param algorithm key algorithm
+     * @param pw password
+     * @param salt salt
+     * @return future of the derived key, which fails if the derivation
+     *          queue is full
+     */
+    public CompletableFuture<SecretKey> deriveSecretKeyAsync(String algorithm, char[] pw, byte[] salt) {
+        return keyDerivation.derive(algorithm, pw, salt, settings.getInteger("key_spec_iterations", 65536),
+                settings.getInteger("key_length", 256));
+    }
+
+    public CompletableFuture<SecretKey> genSecretKeyAsync(UUID uuid, char[] pw, byte[] salt) {
+        return genSecretKeyAsync(uuid, "AES", pw, salt);
+    }
+
+    /**
+     * Asynchronous version of <code>genSecretKey(uuid, algorithm, pw,
+     * salt)</code>. The key and salt are registered for the uuid by the
+     * worker thread, once the key has been derived. If the key or salt
+     * of the uuid is changed before, including by a later asynchronous
+     * derivation, the derived key is stale and the future fails with an
+     * <code>IllegalStateException</code> instead of registering it.
+     * @param uuid key uuid
+     * @param algorithm key algorithm
+     * @param pw password
+     * @param salt salt
+     * @return future of the derived key, which fails if the derivation
+     *          queue is full
+     */
+    public CompletableFuture<SecretKey> genSecretKeyAsync(UUID uuid, String algorithm, char[] pw, byte[] salt) {
+        byte[] saltCopy = salt.clone();
+        long sequence;
+        synchronized (keyLock) {
+            sequence = ++derivationSequence;
+            derivations.put(uuid, sequence);
         }
-        return null;
+
+        return deriveSecretKeyAsync(algorithm, pw, saltCopy).whenComplete((key, failure) -> {
+            if (failure != null) {
+                synchronized (keyLock) {
+                    derivations.remove(uuid, sequence);
+                }
+            }
+        }).thenApply(key -> {
+            synchronized (keyLock) {
+                if (!derivations.remove(uuid, sequence))
+                    throw new IllegalStateException("Secret key derivation for " + uuid + " has been superseded!");
+                getSaltSet().put(new UUIDElement(uuid), new ContainerElement(saltCopy));
+                getSecretKeySet().put(new UUIDElement(uuid), new SecretKeyElement(key));
+            }
+            invalidate(uuid);
+            return key;
+        });
     }
 
-    public SecretKey genSecretKey(UUID uuid, String algorithm, char[] pw, byte[] salt) {
-        try {
-            // remove is already present
-            getSecretKeySet().remove(new UUIDElement(uuid));
-            getSaltSet().remove(new UUIDElement(uuid));
-            registerSalt(uuid, salt);
+    public KeyDerivation getKeyDerivation() {
+        return keyDerivation;
+    }
 
-            SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
-            KeySpec spec = new PBEKeySpec(pw, salt, settings.getInteger("key_spec_iterations", 65536),
-                    settings.getInteger("key_length", 256));
-            SecretKey tmp = factory.generateSecret(spec);
-            SecretKey key = new SecretKeySpec(tmp.getEncoded(), algorithm);
-            getSecretKeySet().put(new UUIDElement(uuid), new SecretKeyElement(key));
-            return key;
-        } catch (NoSuchAlgorithmException e) {
-            CerberusRegistry.getInstance().critical("Your system does not support " + algorithm + " encryption!");
-        } catch (InvalidKeySpecException e) {
-            CerberusRegistry.getInstance().critical("Cannot generate secret key from password ************");
-        }
-        return null;
+    public SecretKey genSecretKey(UUID uuid, String algorithm, char[] pw, byte[] salt) {
+        return genSecretKey(uuid, algorithm, pw, salt, settings.getInteger("key_spec_iterations", 65536),
+                settings.getInteger("key_length", 256));
     }
 
     public UUID genSecretKey(char[] pw) {
@@ -372,23 +542,7 @@ public class CerberusEncrypt implements CerberusService {
     }
 
     public UUID genSecretKey(String algorithm, char[] pw) {
-        try {
-            UUID uuid = nextUID();
-            byte[] salt = genSalt(uuid);
-
-            SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
-            KeySpec spec = new PBEKeySpec(pw, salt, settings.getInteger("key_spec_iterations", 65536),
-                    settings.getInteger("key_length", 256));
-            SecretKey tmp = factory.generateSecret(spec);
-            SecretKey key = new SecretKeySpec(tmp.getEncoded(), algorithm);
-            getSecretKeySet().put(new UUIDElement(uuid), new SecretKeyElement(key));
-            return uuid;
-        } catch (NoSuchAlgorithmException e) {
-            CerberusRegistry.getInstance().critical("Your system does not support " + algorithm + " encryption!");
-        } catch (InvalidKeySpecException e) {
-            CerberusRegistry.getInstance().critical("Cannot generate secret key from password ************");
-        }
-        return null;
+        return genSecretKey(algorithm, pw, genSalt());
     }
 
     public SecretKey genSecretKey(UUID uuid, char[] pw) {
@@ -396,47 +550,43 @@ public class CerberusEncrypt implements CerberusService {
     }
 
     public SecretKey genSecretKey(UUID uuid, String algorithm, char[] pw) {
-        try {
-            // remove is already present
-            getSecretKeySet().remove(new UUIDElement(uuid));
-            getSaltSet().remove(new UUIDElement(uuid));
-            byte[] salt = genSalt(uuid);
+        return genSecretKey(uuid, algorithm, pw, genSalt());
+    }
 
-            SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
-            KeySpec spec = new PBEKeySpec(pw, salt, settings.getInteger("key_spec_iterations", 65536),
-                    settings.getInteger("key_length", 256));
-            SecretKey tmp = factory.generateSecret(spec);
-            SecretKey key = new SecretKeySpec(tmp.getEncoded(), algorithm);
-            getSecretKeySet().put(new UUIDElement(uuid), new SecretKeyElement(key));
-            return key;
+    private SecretKey deriveSecretKey(String algorithm, char[] pw, byte[] salt, int iterationCount, int keyLength) {
+        try {
+            return KeyDerivation.deriveNow(algorithm, pw, salt, iterationCount, keyLength);
         } catch (NoSuchAlgorithmException e) {
             CerberusRegistry.getInstance().critical("Your system does not support " + algorithm + " encryption!");
-        } catch (InvalidKeySpecException e) {
+        } catch (GeneralSecurityException e) {
             CerberusRegistry.getInstance().critical("Cannot generate secret key from password ************");
         }
         return null;
     }
 
-    private byte[] genSalt(UUID uuid, int size) {
-        byte[] salt = randomIV(size);
-        getSaltSet().put(new UUIDElement(uuid), new ContainerElement(salt));
-        return salt;
-    }
-
     public void registerSalt(UUID uuid, byte[] salt) {
-        getSaltSet().put(new UUIDElement(uuid), new ContainerElement(salt));
+        synchronized (keyLock) {
+            supersede(uuid);
+            getSaltSet().put(new UUIDElement(uuid), new ContainerElement(salt));
+        }
     }
 
     public void removeSalt(UUID uuid) {
-        getSaltSet().remove(new UUIDElement(uuid));
+        synchronized (keyLock) {
+            supersede(uuid);
+            getSaltSet().remove(new UUIDElement(uuid));
+        }
     }
 
-    private byte[] genSalt(UUID uuid) {
-        return genSalt(uuid, settings.getInteger("salt_size", 8));
+    private byte[] genSalt() {
+        return randomIV(settings.getInteger("salt_size", 8));
     }
 
     public byte[] getSalt(UUID uuid) {
-        ContainerElement raw = getSaltSet().get(new UUIDElement(uuid));
+        ContainerElement raw;
+        synchronized (keyLock) {
+            raw = getSaltSet().get(new UUIDElement(uuid));
+        }
         if (raw == null)
             return null;
         return raw.get();
@@ -474,8 +624,11 @@ public class CerberusEncrypt implements CerberusService {
             generator.initialize(keySize);
             KeyPair pair = generator.genKeyPair();
 
-            getPrivateKeySet().put(new UUIDElement(uuid), new PrivateKeyElement(pair.getPrivate()));
-            getPublicKeySet().put(new UUIDElement(uuid), new PublicKeyElement(pair.getPublic()));
+            synchronized (keyLock) {
+                getPrivateKeySet().put(new UUIDElement(uuid), new PrivateKeyElement(pair.getPrivate()));
+                getPublicKeySet().put(new UUIDElement(uuid), new PublicKeyElement(pair.getPublic()));
+            }
+            invalidate(uuid);
 
             return pair;
         } catch (NoSuchAlgorithmException e) {
@@ -490,11 +643,13 @@ public class CerberusEncrypt implements CerberusService {
 
     private UUID nextUID() {
         UUID uuid = UUID.randomUUID();
-        // make sure the key uuid is unique
-        while (getPublicKeySet().containsKey(new UUIDElement(uuid))
-                || getPrivateKeySet().containsKey(new UUIDElement(uuid))
-                || getSecretKeySet().containsKey(new UUIDElement(uuid)))
-            uuid = UUID.randomUUID();
+        synchronized (keyLock) {
+            // make sure the key uuid is unique
+            while (getPublicKeySet().containsKey(new UUIDElement(uuid))
+                    || getPrivateKeySet().containsKey(new UUIDElement(uuid))
+                    || getSecretKeySet().containsKey(new UUIDElement(uuid)))
+                uuid = UUID.randomUUID();
+        }
         return uuid;
     }
 
@@ -530,8 +685,11 @@ public class CerberusEncrypt implements CerberusService {
             generator.initialize(keySize);
             KeyPair pair = generator.genKeyPair();
 
-            getPrivateKeySet().put(new UUIDElement(uuid), new PrivateKeyElement(pair.getPrivate()));
-            getPublicKeySet().put(new UUIDElement(uuid), new PublicKeyElement(pair.getPublic()));
+            synchronized (keyLock) {
+                getPrivateKeySet().put(new UUIDElement(uuid), new PrivateKeyElement(pair.getPrivate()));
+                getPublicKeySet().put(new UUIDElement(uuid), new PublicKeyElement(pair.getPublic()));
+            }
+            invalidate(uuid);
 
             return pair;
         } catch (NoSuchAlgorithmException e) {
@@ -557,44 +715,101 @@ public class CerberusEncrypt implements CerberusService {
     }
 
     public boolean hasPrivateKey(UUID uuid) {
-        return getPrivateKeySet().containsKey(new UUIDElement(uuid));
+        synchronized (keyLock) {
+            return getPrivateKeySet().containsKey(new UUIDElement(uuid));
+        }
     }
 
     public boolean hasPublicKey(UUID uuid) {
-        return getPublicKeySet().containsKey(new UUIDElement(uuid));
+        synchronized (keyLock) {
+            return getPublicKeySet().containsKey(new UUIDElement(uuid));
+        }
     }
 
     public boolean hasSecretKey(UUID uuid) {
-        return getSecretKeySet().containsKey(new UUIDElement(uuid));
+        synchronized (keyLock) {
+            return getSecretKeySet().containsKey(new UUIDElement(uuid));
+        }
     }
 
     public String getKeyType(UUID uuid) {
-        PrivateKeyElement privateKey = getPrivateKeySet().get(new UUIDElement(uuid));
+        PrivateKeyElement privateKey;
+        PublicKeyElement publicKey;
+        synchronized (keyLock) {
+            privateKey = getPrivateKeySet().get(new UUIDElement(uuid));
+            publicKey = getPublicKeySet().get(new UUIDElement(uuid));
+        }
         if (privateKey != null)
             return privateKey.getTypeString();
-
-        PublicKeyElement publicKey = getPublicKeySet().get(new UUIDElement(uuid));
         if (publicKey != null)
             return publicKey.getTypeString();
         return null;
     }
 
     public void removeKey(UUID uuid) {
-        getPrivateKeySet().remove(new UUIDElement(uuid));
-        getPublicKeySet().remove(new UUIDElement(uuid));
-        getSecretKeySet().remove(new UUIDElement(uuid));
+        synchronized (keyLock) {
+            supersede(uuid);
+            getPrivateKeySet().remove(new UUIDElement(uuid));
+            getPublicKeySet().remove(new UUIDElement(uuid));
+            getSecretKeySet().remove(new UUIDElement(uuid));
+        }
+        invalidate(uuid);
     }
 
     public void removePrivateKey(UUID uuid) {
-        getPrivateKeySet().remove(new UUIDElement(uuid));
+        synchronized (keyLock) {
+            getPrivateKeySet().remove(new UUIDElement(uuid));
+        }
+        invalidate(uuid);
     }
 
     public void removePublicKey(UUID uuid) {
-        getPublicKeySet().remove(new UUIDElement(uuid));
+        synchronized (keyLock) {
+            getPublicKeySet().remove(new UUIDElement(uuid));
+        }
+        invalidate(uuid);
+    }
+
+    /**
+     * Verifies the signatures of many messages in parallel. Message i
+     * is verified with the public key registered for <code>keys[i]</code>.
+     * Messages, for which no public key is registered, are treated as
+     * invalid.
+     * @param keys key uuids
+     * @param signatures signatures
+     * @param messages signed messages
+     * @return bit set with a set bit for each valid signature
+     */
+    public BitSet verifySignatures(UUID[] keys, byte[][] signatures, byte[][] messages) {
+        if (keys.length != signatures.length || keys.length != messages.length)
+            throw new IllegalArgumentException("Keys, signatures and messages must have the same length!");
+
+        SignatureVerifier.SignedMessage[] signed = new SignatureVerifier.SignedMessage[keys.length];
+        for (int i = 0; i < keys.length; i++)
+            signed[i] = new SignatureVerifier.SignedMessage(getPublicKey(keys[i]), signatures[i], messages[i]);
+
+        SignatureVerifier verifier = getVerifier();
+        return verifier != null ? verifier.verifyAll(signed) : new BitSet();
+    }
+
+    public SignatureVerifier getVerifier() {
+        if (verifier == null) {
+            try {
+                verifier = new SignatureVerifier();
+            } catch (NoSuchAlgorithmException e) {
+                CerberusRegistry.getInstance().critical("Your system does not support "
+                        + SignatureVerifier.DEFAULT_ALGORITHM + " signatures!");
+            }
+        }
+        return verifier;
     }
 
     public void removeSecretKey(UUID uuid) {
-        getSecretKeySet().remove(new UUIDElement(uuid));
+        synchronized (keyLock) {
+            supersede(uuid);
+            getSecretKeySet().remove(new UUIDElement(uuid));
+        }
+        invalidate(uuid);
     }
 
     public byte[] randomIV(int length) {
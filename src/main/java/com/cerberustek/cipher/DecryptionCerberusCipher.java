@@ -22,8 +22,30 @@
 
 package com.cerberustek.cipher;
 
+import java.nio.ByteBuffer;
+
 public interface DecryptionCerberusCipher {
 
     byte[] decrypt(byte[] value, int offset, int length);
     byte[] decrypt(byte[] value);
+
+    /**
+     * Decrypts the remaining bytes of the input buffer into the output
+     * buffer. Both buffers may be direct buffers. Ciphers that can
+     * decrypt into a buffer directly should override this method, since
+     * the default implementation copies the data through arrays.
+     * @param input encrypted data
+     * @param output output buffer
+     * @return number of bytes written to the output buffer, or -1 if the
+     *          decryption failed
+     */
+    default int decrypt(ByteBuffer input, ByteBuffer output) {
+        byte[] value = new byte[input.remaining()];
+        input.get(value);
+        byte[] decrypted = decrypt(value);
+        if (decrypted == null)
+            return -1;
+        output.put(decrypted);
+        return decrypted.length;
+    }
 }
@@ -22,8 +22,40 @@
 
 package com.cerberustek.cipher;
 
+import java.nio.ByteBuffer;
+
 public interface EncryptionCerberusCipher {
 
     byte[] encrypt(byte[] value, int offset, int length);
     byte[] encrypt(byte[] value);
+
+    /**
+     * Encrypts the remaining bytes of the input buffer into the output
+     * buffer. Both buffers may be direct buffers. Ciphers that can
+     * encrypt into a buffer directly should override this method, since
+     * the default implementation copies the data through arrays.
+     * @param input plain data
+     * @param output output buffer
+     * @return number of bytes written to the output buffer, or -1 if the
+     *          encryption failed
+     */
+    default int encrypt(ByteBuffer input, ByteBuffer output) {
+        byte[] value = new byte[input.remaining()];
+        input.get(value);
+        byte[] encrypted = encrypt(value);
+        if (encrypted == null)
+            return -1;
+        output.put(encrypted);
+        return encrypted.length;
+    }
+
+    /**
+     * Returns the length of the encrypted data for plain data of the
+     * specified length, or -1 if the length is not known in advance.
+     * @param length plain data length
+     * @return encrypted length
+     */
+    default int getEncryptedLength(int length) {
+        return -1;
+    }
 }
@@ -25,102 +25,194 @@ package com.cerberustek.cipher;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+/**
+ * Prime number utilities. Small numbers are looked up in a table of
+ * all primes below <code>SMALL_PRIME_LIMIT</code>, which is generated
+ * once by a parallel segmented sieve of Eratosthenes. Larger numbers are
+ * checked by trial division with these small primes, before
+ * <code>BigInteger.isProbablePrime</code> runs the Miller-Rabin and
+ * Lucas-Lehmer tests on the remaining candidates.
+ */
 public class PrimeUtil {
 
-    private final ArrayList<BigInteger> primes = new ArrayList<>();
+    public static final int SMALL_PRIME_LIMIT = 1 << 16;
+    public static final int CERTAINTY = 100;
+
+    private static final int SEGMENT_SIZE = 1 << 18;
+    private static final int WINDOW_SIZE = 1 << 12;
+    private static final BigInteger TWO = BigInteger.valueOf(2);
+
+    private static volatile SmallPrimes smallPrimes;
 
-    @SuppressWarnings("DuplicatedCode")
     public BigInteger nextPrime(BigInteger number) {
-        final BigInteger two = BigInteger.valueOf(2);
-        // Filter 2 as the first prime to avoid having to
-        // add it to the prime list, thus cutting processing
-        // time in half
-        if (number.equals(two))
-            return two;
-        if (number.mod(two).equals(BigInteger.ZERO))
+        if (number.compareTo(TWO) <= 0)
+            return TWO;
+
+        SmallPrimes small = smallPrimes();
+        if (number.bitLength() < 32 && number.intValue() <= small.limit) {
+            int index = Arrays.binarySearch(small.primes, number.intValue());
+            if (index < 0)
+                index = -index - 1;
+            if (index < small.primes.length)
+                return BigInteger.valueOf(small.primes[index]);
+        }
+
+        if (!number.testBit(0))
             number = number.add(BigInteger.ONE);
-        if (number.compareTo(two) < 0)
-            return two;
-
-        Find : for (;; number = number.add(two)) {
-
-            // Add primes to prime list if necessary
-            BigInteger S = sqrt(number);
-            BigInteger lastCheck = primes.isEmpty() ? BigInteger.valueOf(3) : primes.get(primes.size() - 1).add(two);
-            PrimeLoop : for (; lastCheck.compareTo(S) <= 0; lastCheck = lastCheck.add(two)) {
-
-                // Use sieve of Eratosthenes
-                for (BigInteger e : primes) {
-                    if (e.multiply(e).compareTo(lastCheck) > 0) {
-                        // lastChecked is not excluded by any following primes
-                        // in the prime list -> continue with the next value
-                        break;
-                    }
-
-                    if (lastCheck.mod(e).equals(BigInteger.ZERO))
-                        continue PrimeLoop;
-                }
-                // System.out.println("Adding prime: " + lastCheck);
-                primes.add(lastCheck);
 
-                /*System.out.println("sieve construction: " + ((float) (BigInteger.valueOf(primes.size())
-                        .multiply(BigInteger.valueOf(1000000)).divide(S)).intValue() / 10000f) + "%");*/
+        // sieve windows of odd candidates with the small primes, so only
+        // the remaining candidates have to be tested for primality. All
+        // candidates are greater than the small primes at this point.
+        int[] primes = small.primes;
+        int count = small.trialCount(number);
+        int[] residues = small.residues(number, count);
+        long[] composite = new long[WINDOW_SIZE >>> 6];
+        for (;;) {
+            Arrays.fill(composite, 0L);
+            for (int i = 1; i < count; i++) {
+                int prime = primes[i];
+                // first k with (number + 2k) mod prime == 0
+                long k = (long) ((prime - residues[i]) % prime) * ((prime + 1) >>> 1) % prime;
+                for (; k < WINDOW_SIZE; k += prime)
+                    composite[(int) (k >>> 6)] |= 1L << k;
             }
 
-            // Use sieve of Eratosthenes
-            for (BigInteger prime : primes) {
-                if (prime.multiply(prime).compareTo(number) > 0) // Can break here, because all primes
-                    return number; // to come from this point on will not exclude number as a prime
-
-                if (number.mod(prime).equals(BigInteger.ZERO))
-                    continue Find; // number is not a prime. Continue the search
+            for (int k = 0; k < WINDOW_SIZE; k++) {
+                if ((composite[k >>> 6] & (1L << k)) != 0)
+                    continue;
+                BigInteger candidate = number.add(BigInteger.valueOf(2L * k));
+                if (candidate.isProbablePrime(CERTAINTY))
+                    return candidate;
             }
-            return number;
+
+            number = number.add(BigInteger.valueOf(2L * WINDOW_SIZE));
+            for (int i = 1; i < count; i++)
+                residues[i] = (int) ((residues[i] + 2L * WINDOW_SIZE) % primes[i]);
         }
     }
 
-    @SuppressWarnings("DuplicatedCode")
     public boolean isPrime(BigInteger number) {
-        BigInteger two = BigInteger.valueOf(2);
-
-        if (number.equals(two))
-            return true;
-        if (number.mod(two).equals(BigInteger.ZERO))
+        if (number.compareTo(TWO) < 0)
             return false;
-        if (number.compareTo(two) < 0)
+
+        SmallPrimes small = smallPrimes();
+        if (number.bitLength() < 32 && number.intValue() <= small.limit)
+            return Arrays.binarySearch(small.primes, number.intValue()) >= 0;
+
+        if (number.bitLength() < 63) {
+            long value = number.longValue();
+            if (value <= (long) small.limit * small.limit) {
+                // the small primes cover the square root, so trial
+                // division alone is exact
+                for (int prime : small.primes) {
+                    if ((long) prime * prime > value)
+                        return true;
+                    if (value % prime == 0)
+                        return false;
+                }
+                return true;
+            }
+        }
+
+        if (!number.testBit(0))
             return false;
+        for (int residue : small.residues(number, small.trialCount(number))) {
+            if (residue == 0)
+                return false;
+        }
+        return number.isProbablePrime(CERTAINTY);
+    }
 
-        // Add primes to prime list if necessary
-        BigInteger S = sqrt(number);
-        BigInteger lastCheck = primes.isEmpty() ? BigInteger.valueOf(3) : primes.get(primes.size() - 1).add(two);
-        PrimeLoop : for (; lastCheck.compareTo(S) <= 0; lastCheck = lastCheck.add(two)) {
+    /**
+     * Generates all primes up to and including the specified limit with
+     * a segmented sieve of Eratosthenes. The segments are sieved in
+     * parallel on the common pool.
+     * @param limit inclusive upper bound
+     * @return ascending primes
+     */
+    public static int[] sieve(int limit) {
+        return sieve(limit, ForkJoinPool.commonPool());
+    }
 
-            // Use sieve of Eratosthenes
-            for (BigInteger e : primes) {
-                if (e.multiply(e).compareTo(lastCheck) > 0)
-                    break;
+    public static int[] sieve(int limit, ForkJoinPool pool) {
+        if (limit < 2)
+            return new int[0];
 
-                if (lastCheck.mod(e).equals(BigInteger.ZERO)) {
-                    continue PrimeLoop;
+        int root = (int) Math.sqrt(limit);
+        while ((long) (root + 1) * (root + 1) <= limit)
+            root++;
+        int[] base = simpleSieve(root);
 
-                }
+        int segments = (int) (((long) limit + SEGMENT_SIZE) / SEGMENT_SIZE);
+        int[][] results = new int[segments][];
+        pool.invoke(new SieveTask(base, limit, results, 0, segments));
+
+        int count = 0;
+        for (int[] result : results)
+            count += result.length;
+        int[] primes = new int[count];
+        int position = 0;
+        for (int[] result : results) {
+            System.arraycopy(result, 0, primes, position, result.length);
+            position += result.length;
+        }
+        return primes;
+    }
+
+    private static int[] simpleSieve(int limit) {
+        boolean[] composite = new boolean[limit + 1];
+        int[] primes = new int[limit + 1];
+        int count = 0;
+        for (int i = 2; i <= limit; i++) {
+            if (composite[i])
+                continue;
+            primes[count++] = i;
+            for (long j = (long) i * i; j <= limit; j += i)
+                composite[(int) j] = true;
+        }
+        return Arrays.copyOf(primes, count);
+    }
+
+    private static int[] sieveSegment(int[] base, long low, long high) {
+        int length = (int) (high - low);
+        long[] composite = new long[(length + 63) >>> 6];
+        for (int prime : base) {
+            long start = Math.max((long) prime * prime, (low + prime - 1) / prime * prime);
+            for (long j = start; j < high; j += prime) {
+                int index = (int) (j - low);
+                composite[index >>> 6] |= 1L << index;
             }
-            // System.out.println("Adding prime: " + lastCheck);
-            primes.add(lastCheck);
         }
 
-        // Use sieve of Eratosthenes
-        for (BigInteger prime : primes) {
-            if (prime.multiply(prime).compareTo(number) > 0)
-                return true;
+        int marked = 0;
+        for (long word : composite)
+            marked += Long.bitCount(word);
 
-            if (number.mod(prime).equals(BigInteger.ZERO))
-                return false;
+        int[] primes = new int[length - marked];
+        int count = 0;
+        for (int index = 0; index < length; index++) {
+            if ((composite[index >>> 6] & (1L << index)) == 0 && low + index >= 2)
+                primes[count++] = (int) (low + index);
+        }
+        return Arrays.copyOf(primes, count);
+    }
+
+    private static SmallPrimes smallPrimes() {
+        SmallPrimes small = smallPrimes;
+        if (small == null) {
+            synchronized (PrimeUtil.class) {
+                small = smallPrimes;
+                if (small == null)
+                    smallPrimes = small = new SmallPrimes(SMALL_PRIME_LIMIT, sieve(SMALL_PRIME_LIMIT));
+            }
         }
-        return true;
+        return small;
     }
 
     /**
@@ -147,8 +239,23 @@ public class PrimeUtil {
                 b.abs().multiply(minLength).subtract(BigInteger.ONE), minLength);
     }
 
+    /**
+     * Returns the small primes used for table lookups and trial division.
+     * @return ascending small primes
+     */
     public List<BigInteger> getSieve() {
-        return primes;
+        int[] primes = smallPrimes().primes;
+        return new AbstractList<BigInteger>() {
+            @Override
+            public BigInteger get(int index) {
+                return BigInteger.valueOf(primes[index]);
+            }
+
+            @Override
+            public int size() {
+                return primes.length;
+            }
+        };
     }
 
     public static BigInteger createBigInteger(int smallValue) {
@@ -201,4 +308,102 @@ public class PrimeUtil {
             y = ((x.divide(y)).add(y)).divide(two));
         return y;
     }
+
+    private static class SieveTask extends RecursiveAction {
+
+        private final int[] base;
+        private final int limit;
+        private final int[][] results;
+        private final int from;
+        private final int to;
+
+        private SieveTask(int[] base, int limit, int[][] results, int from, int to) {
+            this.base = base;
+            this.limit = limit;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new SieveTask(base, limit, results, from, middle),
+                        new SieveTask(base, limit, results, middle, to));
+                return;
+            }
+
+            long low = (long) from * SEGMENT_SIZE;
+            long high = Math.min(low + SEGMENT_SIZE, (long) limit + 1);
+            results[from] = sieveSegment(base, low, high);
+        }
+    }
+
+    /**
+     * Table of small primes. The odd primes are grouped into products,
+     * which fit into a long, so the residues of a big integer modulo all
+     * small primes only take one big integer division per group.
+     */
+    private static class SmallPrimes {
+
+        private final int limit;
+        private final int[] primes;
+        private final BigInteger[] products;
+        private final int[] groupEnds;
+
+        private SmallPrimes(int limit, int[] primes) {
+            this.limit = limit;
+            this.primes = primes;
+
+            BigInteger[] products = new BigInteger[primes.length];
+            int[] groupEnds = new int[primes.length];
+            int groups = 0;
+            int index = 1;
+            while (index < primes.length) {
+                long product = primes[index++];
+                while (index < primes.length && product <= Long.MAX_VALUE / primes[index])
+                    product *= primes[index++];
+                products[groups] = BigInteger.valueOf(product);
+                groupEnds[groups++] = index;
+            }
+            this.products = Arrays.copyOf(products, groups);
+            this.groupEnds = Arrays.copyOf(groupEnds, groups);
+        }
+
+        /**
+         * Returns the number of small primes worth trial dividing by,
+         * before a primality test of the number. The bound grows with
+         * the square of the bit length, like the cost of the test.
+         * @param number number
+         * @return number of small primes
+         */
+        private int trialCount(BigInteger number) {
+            long bound = Math.max(256L, (long) number.bitLength() * number.bitLength() / 2);
+            if (bound >= limit)
+                return primes.length;
+            int index = Arrays.binarySearch(primes, (int) bound);
+            return index < 0 ? -index - 1 : index + 1;
+        }
+
+        /**
+         * Returns the residues of the number modulo the first small
+         * primes.
+         * @param number non negative number
+         * @param count number of small primes
+         * @return residues in the order of the small primes
+         */
+        private int[] residues(BigInteger number, int count) {
+            int[] residues = new int[count];
+            residues[0] = number.testBit(0) ? 1 : 0;
+            int index = 1;
+            for (int group = 0; index < count; group++) {
+                long remainder = number.mod(products[group]).longValue();
+                int end = Math.min(groupEnds[group], count);
+                for (; index < end; index++)
+                    residues[index] = (int) (remainder % primes[index]);
+            }
+            return residues;
+        }
+    }
 }
@@ -31,19 +31,27 @@ import com.cerberustek.cipher.SymmetricCipher;
 
 import javax.crypto.*;
 import javax.crypto.spec.GCMParameterSpec;
-import java.io.*;
-import java.security.InvalidAlgorithmParameterException;
-import java.security.InvalidKeyException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 
+/**
+ * AES/GCM cipher, which can be shared between threads. The underlying
+ * cipher instances are kept per thread, so they only have to be looked
+ * up once per thread and are re-initialized with a fresh nonce for
+ * every call. The encrypted data has the format:
+ *
+ * <code>{byte<NonceLength>, byte[NonceLength]<Nonce>, byte[]<CipherText>, byte[TagLength]<Tag>}</code>
+ */
 public class AESGCMCipher implements SymmetricCipher {
 
-    private Cipher encrypt;
-    private Cipher decrypt;
-    private SecretKey key;
-    private int TLLength;
-    private int TLByteLength;
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final ThreadLocal<Cipher> CIPHER = new ThreadLocal<>();
+
+    private final SecretKey key;
+    private final int TLLength;
+    private final int TLByteLength;
 
     private CerberusEncrypt encryptionService;
 
@@ -52,14 +60,25 @@ public class AESGCMCipher implements SymmetricCipher {
     }
 
     public AESGCMCipher(SecretKey key, int TLLength, int TLByteLength) throws NoSuchPaddingException, NoSuchAlgorithmException {
-        encrypt = Cipher.getInstance("AES/GCM/NoPadding");
-        decrypt = Cipher.getInstance("AES/GCM/NoPadding");
+        if (TLByteLength < 1 || TLByteLength > 255)
+            throw new IllegalArgumentException("Nonce length has to be between 1 and 255 bytes!");
+        // fail early if AES/GCM is not available
+        cipher();
 
         this.TLLength = TLLength;
         this.TLByteLength = TLByteLength;
         this.key = key;
     }
 
+    private static Cipher cipher() throws NoSuchPaddingException, NoSuchAlgorithmException {
+        Cipher cipher = CIPHER.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(TRANSFORMATION);
+            CIPHER.set(cipher);
+        }
+        return cipher;
+    }
+
     @Override
     public CerberusCipher reset() {
         return this;
@@ -70,29 +89,35 @@ public class AESGCMCipher implements SymmetricCipher {
         return key;
     }
 
+    /**
+     * Returns the length of the encrypted data for plain data of the
+     * specified length.
+     * @param length plain data length
+     * @return encrypted length
+     */
+    @Override
+    public int getEncryptedLength(int length) {
+        return 1 + TLByteLength + length + TLLength / 8;
+    }
+
     @Override
     public byte[] encrypt(byte[] value, int offset, int length) {
+        byte[] gcmBytes = getEncryptionService().randomIV(TLByteLength);
         try {
-            byte[] gcmBytes = getEncryptionService().randomIV(TLByteLength);
-            encrypt.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TLLength, gcmBytes));
-
-
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1 + TLByteLength + length);
-            outputStream.write((byte) TLByteLength);
-            outputStream.write(gcmBytes);
-
-            CipherOutputStream cipherStream = new CipherOutputStream(outputStream, encrypt);
-            cipherStream.write(value, offset, length);
-            cipherStream.flush();
-            cipherStream.close();
-
+            Cipher cipher = cipher();
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TLLength, gcmBytes));
+
+            byte[] output = new byte[1 + TLByteLength + cipher.getOutputSize(length)];
+            output[0] = (byte) TLByteLength;
+            System.arraycopy(gcmBytes, 0, output, 1, TLByteLength);
+            int written = cipher.doFinal(value, offset, length, output, 1 + TLByteLength);
+            return written == output.length - 1 - TLByteLength ? output
+                    : Arrays.copyOf(output, 1 + TLByteLength + written);
+
+        } catch (GeneralSecurityException e) {
+            encryptionFailed(e);
+        } finally {
             Arrays.fill(gcmBytes, (byte) 0); // wipe gcm from memory
-            return outputStream.toByteArray();
-
-        } catch (InvalidKeyException | InvalidAlgorithmParameterException | IOException e) {
-            CerberusRegistry.getInstance().warning("Failed to encrypt AES/GCM data!");
-            CerberusRegistry.getInstance().getService(CerberusEvent.class)
-                    .executeFullEIF(new ExceptionEvent(CerberusEncrypt.class, e));
         }
         return null;
     }
@@ -102,31 +127,50 @@ public class AESGCMCipher implements SymmetricCipher {
         return encrypt(value, 0, value.length);
     }
 
+    /**
+     * Encrypts the remaining bytes of the input buffer directly into the
+     * output buffer. The output buffer has to have at least
+     * <code>getEncryptedLength(input.remaining())</code> bytes remaining.
+     * @param input plain data
+     * @param output output buffer
+     * @return number of bytes written to the output buffer, or -1 if the
+     *          encryption failed
+     */
+    @Override
+    public int encrypt(ByteBuffer input, ByteBuffer output) {
+        if (output.remaining() < getEncryptedLength(input.remaining()))
+            throw new IllegalArgumentException("Output buffer is too small!");
+
+        byte[] gcmBytes = getEncryptionService().randomIV(TLByteLength);
+        try {
+            Cipher cipher = cipher();
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TLLength, gcmBytes));
+
+            output.put((byte) TLByteLength);
+            output.put(gcmBytes);
+            return 1 + TLByteLength + cipher.doFinal(input, output);
+
+        } catch (GeneralSecurityException e) {
+            encryptionFailed(e);
+        } finally {
+            Arrays.fill(gcmBytes, (byte) 0); // wipe gcm from memory
+        }
+        return -1;
+    }
+
     @Override
     public byte[] decrypt(byte[] value, int offset, int length) {
         try {
-            ByteArrayInputStream inputStream = new ByteArrayInputStream(value, offset, length);
-            int gcmLength = Byte.toUnsignedInt((byte) inputStream.read());
-            byte[] gcmBytes = new byte[gcmLength];
-            int read = inputStream.read(gcmBytes);
-            if (read < gcmLength)
+            int gcmLength = Byte.toUnsignedInt(value[offset]);
+            if (length < 1 + gcmLength)
                 throw new IllegalStateException("Invalid gcm head size AES stream!");
 
-            GCMParameterSpec gcm = new GCMParameterSpec(TLLength, gcmBytes);
-            decrypt.init(Cipher.DECRYPT_MODE, key, gcm);
-
-            CipherInputStream cipherStream = new CipherInputStream(inputStream, decrypt);
-            byte[] data = new byte[length - 1 - gcmLength];
-            read = cipherStream.read(data);
-            inputStream.close();
-            if (read < 0)
-                throw new IllegalStateException("Invalid data set length!");
-
-            byte[] finalBytes = new byte[read];
-            System.arraycopy(data, 0, finalBytes, 0, read);
-            return finalBytes;
-        } catch (InvalidAlgorithmParameterException | InvalidKeyException | IOException e) {
-            e.printStackTrace();
+            Cipher cipher = cipher();
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TLLength, value, offset + 1, gcmLength));
+            return cipher.doFinal(value, offset + 1 + gcmLength, length - 1 - gcmLength);
+
+        } catch (GeneralSecurityException e) {
+            decryptionFailed(e);
         }
         return null;
     }
@@ -136,6 +180,46 @@ public class AESGCMCipher implements SymmetricCipher {
         return decrypt(value, 0, value.length);
     }
 
+    /**
+     * Decrypts the remaining bytes of the input buffer directly into the
+     * output buffer. The output buffer has to have at least as many
+     * bytes remaining as the input buffer.
+     * @param input encrypted data
+     * @param output output buffer
+     * @return number of bytes written to the output buffer, or -1 if the
+     *          decryption failed
+     */
+    @Override
+    public int decrypt(ByteBuffer input, ByteBuffer output) {
+        try {
+            int gcmLength = Byte.toUnsignedInt(input.get());
+            if (input.remaining() < gcmLength)
+                throw new IllegalStateException("Invalid gcm head size AES stream!");
+            byte[] gcmBytes = new byte[gcmLength];
+            input.get(gcmBytes);
+
+            Cipher cipher = cipher();
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TLLength, gcmBytes));
+            return cipher.doFinal(input, output);
+
+        } catch (GeneralSecurityException e) {
+            decryptionFailed(e);
+        }
+        return -1;
+    }
+
+    private void encryptionFailed(Exception e) {
+        CerberusRegistry.getInstance().warning("Failed to encrypt AES/GCM data!");
+        CerberusRegistry.getInstance().getService(CerberusEvent.class)
+                .executeFullEIF(new ExceptionEvent(CerberusEncrypt.class, e));
+    }
+
+    private void decryptionFailed(Exception e) {
+        CerberusRegistry.getInstance().warning("Failed to decrypt AES/GCM data!");
+        CerberusRegistry.getInstance().getService(CerberusEvent.class)
+                .executeFullEIF(new ExceptionEvent(CerberusEncrypt.class, e));
+    }
+
     private CerberusEncrypt getEncryptionService() {
         if (encryptionService == null)
             encryptionService = CerberusRegistry.getInstance().getService(CerberusEncrypt.class);
@@ -0,0 +1,76 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.cerberustek.cipher.impl;
+
+import com.cerberustek.cipher.ContinuousCipher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Input stream, which decrypts the data read from the underlying stream
+ * with a continuous cipher. The data is decrypted in place, right after
+ * it has been read, so no additional buffer is needed.
+ */
+public class ContinuousCipherInputStream extends InputStream {
+
+    private final InputStream inputStream;
+    private final ContinuousCipher cipher;
+
+    public ContinuousCipherInputStream(InputStream inputStream, ContinuousCipher cipher) {
+        this.inputStream = inputStream;
+        this.cipher = cipher;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = inputStream.read();
+        if (b < 0)
+            return b;
+        return cipher.decrypt((byte) b) & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] data, int offset, int length) throws IOException {
+        int read = inputStream.read(data, offset, length);
+        if (read > 0) {
+            ByteBuffer view = ByteBuffer.wrap(data, offset, read);
+            cipher.decrypt(view.duplicate(), view);
+        }
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return inputStream.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+    public ContinuousCipher getCipher() {
+        return cipher;
+    }
+}
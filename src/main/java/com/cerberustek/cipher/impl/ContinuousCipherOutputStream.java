@@ -0,0 +1,88 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.cerberustek.cipher.impl;
+
+import com.cerberustek.cipher.ContinuousCipher;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Output stream, which encrypts the written data with a continuous
+ * cipher. Since a continuous cipher does not change the length of the
+ * data, the encrypted bytes are passed on right away. Larger writes are
+ * encrypted in chunks through the buffer methods of the cipher.
+ */
+public class ContinuousCipherOutputStream extends OutputStream {
+
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final OutputStream outputStream;
+    private final ContinuousCipher cipher;
+    private final byte[] buffer;
+
+    public ContinuousCipherOutputStream(OutputStream outputStream, ContinuousCipher cipher) {
+        this(outputStream, cipher, DEFAULT_BUFFER_SIZE);
+    }
+
+    public ContinuousCipherOutputStream(OutputStream outputStream, ContinuousCipher cipher, int bufferSize) {
+        if (bufferSize < 1)
+            throw new IllegalArgumentException("Buffer size has to be at least one byte!");
+        this.outputStream = outputStream;
+        this.cipher = cipher;
+        this.buffer = new byte[bufferSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        outputStream.write(cipher.encrypt((byte) b));
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > data.length)
+            throw new IndexOutOfBoundsException();
+
+        while (length > 0) {
+            int count = Math.min(length, buffer.length);
+            cipher.encrypt(ByteBuffer.wrap(data, offset, count), ByteBuffer.wrap(buffer, 0, count));
+            outputStream.write(buffer, 0, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        outputStream.close();
+    }
+
+    public ContinuousCipher getCipher() {
+        return cipher;
+    }
+}
@@ -19,7 +19,6 @@
  * distribution for more information.
  * If not, see <https://www.gnu.org/licenses/>.
  */
-
 package com.cerberustek.cipher.impl;
 
 import com.cerberustek.cipher.CerberusCipher;
@@ -27,9 +26,21 @@ import com.cerberustek.cipher.ContinuousCipher;
 import com.cerberustek.cipher.SymmetricCipher;
 
 import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
 
+/**
+ * Lightweight continuous stream obfuscation. Every byte is shifted by
+ * the current key byte and the previously encrypted byte, which also
+ * advances the position inside of the key set.
+ *
+ * The bulk methods keep the cipher state in local variables and avoid
+ * the modulo operations of the single byte methods where possible,
+ * while producing the exact same output.
+ */
 public class FenrirCipher implements ContinuousCipher, SymmetricCipher {
 
+    private static final int CHUNK_SIZE = 8192;
+
     private final byte start;
     private final int start_key;
     private final byte[] keySet;
@@ -76,8 +87,7 @@ public class FenrirCipher implements ContinuousCipher, SymmetricCipher {
 
     @Override
     public byte[] encrypt(byte[] value, int offset, int length) {
-        for (int index = offset; index < offset + length; index++)
-            value[index] = encrypt(value[index]);
+        encrypt(value, offset, value, offset, length);
         return value;
     }
 
@@ -88,8 +98,7 @@ public class FenrirCipher implements ContinuousCipher, SymmetricCipher {
 
     @Override
     public byte[] decrypt(byte[] value, int offset, int length) {
-        for (int index = offset; index < offset + length; index++)
-            value[index] = decrypt(value[index]);
+        decrypt(value, offset, value, offset, length);
         return value;
     }
 
@@ -98,6 +107,128 @@ public class FenrirCipher implements ContinuousCipher, SymmetricCipher {
         return decrypt(value, 0, value.length);
     }
 
+    /**
+     * Encrypts the bytes of the source array into the destination array.
+     * Source and destination may be the same region.
+     * @param source plain data
+     * @param sourceOffset source offset
+     * @param destination destination array
+     * @param destinationOffset destination offset
+     * @param length number of bytes
+     */
+    public void encrypt(byte[] source, int sourceOffset, byte[] destination, int destinationOffset, int length) {
+        final byte[] keySet = this.keySet;
+        final int size = keySet.length;
+        // the key advances by at most 256 per byte, so one subtraction
+        // is enough to wrap it for key sets of at least 256 bytes
+        final boolean subtract = size >= 256;
+        int key = this.key;
+        int last = this.last;
+
+        for (int index = 0; index < length; index++) {
+            int value = (byte) (source[sourceOffset + index] + keySet[key] + last);
+            key += Math.abs(value + last);
+            if (subtract) {
+                if (key >= size)
+                    key -= size;
+            } else {
+                key %= size;
+            }
+            destination[destinationOffset + index] = (byte) value;
+            last = value;
+        }
+        this.key = key;
+        this.last = (byte) last;
+    }
+
+    /**
+     * Decrypts the bytes of the source array into the destination array.
+     * Source and destination may be the same region.
+     * @param source encrypted data
+     * @param sourceOffset source offset
+     * @param destination destination array
+     * @param destinationOffset destination offset
+     * @param length number of bytes
+     */
+    public void decrypt(byte[] source, int sourceOffset, byte[] destination, int destinationOffset, int length) {
+        final byte[] keySet = this.keySet;
+        final int size = keySet.length;
+        final boolean subtract = size >= 256;
+        int key = this.key;
+        int last = this.last;
+
+        for (int index = 0; index < length; index++) {
+            int value = source[sourceOffset + index];
+            destination[destinationOffset + index] = (byte) (value - keySet[key] - last);
+            key += Math.abs(value + last);
+            if (subtract) {
+                if (key >= size)
+                    key -= size;
+            } else {
+                key %= size;
+            }
+            last = value;
+        }
+        this.key = key;
+        this.last = (byte) last;
+    }
+
+    /**
+     * Encrypts the remaining bytes of the input buffer into the output
+     * buffer. Since the encrypted data has the same length as the plain
+     * data, the input and output may be the same buffer, which encrypts
+     * the data in place.
+     * @param input plain data
+     * @param output output buffer
+     * @return number of bytes written
+     */
+    @Override
+    public int encrypt(ByteBuffer input, ByteBuffer output) {
+        return process(input, output, true);
+    }
+
+    @Override
+    public int decrypt(ByteBuffer input, ByteBuffer output) {
+        return process(input, output, false);
+    }
+
+    private int process(ByteBuffer input, ByteBuffer output, boolean encrypt) {
+        int length = input.remaining();
+        if (output.remaining() < length)
+            throw new IllegalArgumentException("Output buffer is too small!");
+
+        int in = input.position();
+        int out = output.position();
+        if (input.hasArray() && output.hasArray()) {
+            if (encrypt)
+                encrypt(input.array(), input.arrayOffset() + in, output.array(), output.arrayOffset() + out, length);
+            else
+                decrypt(input.array(), input.arrayOffset() + in, output.array(), output.arrayOffset() + out, length);
+        } else {
+            // move direct buffers through a small array in bulk
+            byte[] chunk = new byte[Math.min(length, CHUNK_SIZE)];
+            ByteBuffer source = input.duplicate();
+            ByteBuffer destination = output.duplicate();
+            for (int done = 0; done < length; done += chunk.length) {
+                int count = Math.min(chunk.length, length - done);
+                source.get(chunk, 0, count);
+                if (encrypt)
+                    encrypt(chunk, 0, chunk, 0, count);
+                else
+                    decrypt(chunk, 0, chunk, 0, count);
+                destination.put(chunk, 0, count);
+            }
+        }
+        input.position(in + length);
+        output.position(out + length);
+        return length;
+    }
+
+    @Override
+    public int getEncryptedLength(int length) {
+        return length;
+    }
+
     private byte cycleData(byte input, int length) {
         return signed(clamp(unsigned(input) + length, 256));
     }
@@ -0,0 +1,235 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.cerberustek.cipher.impl;
+
+import com.cerberustek.utils.BoundedCache;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Derives secret keys from passwords with PBKDF2 on a dedicated pool
+ * of worker threads, so callers are not blocked for the duration of
+ * the derivation. The number of waiting derivations is bounded; once
+ * the queue is full, new derivations fail right away instead of piling
+ * up, which gives callers a chance to back off.
+ *
+ * Derived keys can optionally be cached. Cache entries are keyed by an
+ * HMAC-SHA256 of all derivation inputs under a random secret of this
+ * instance, so passwords are never held by the cache and the keys of a
+ * memory dump can not be used to guess passwords offline without the
+ * secret. Concurrent derivations with the same inputs share one
+ * computation.
+ */
+public class KeyDerivation implements AutoCloseable {
+
+    public static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    public static final String CACHE_KEY_ALGORITHM = "HmacSHA256";
+
+    private static final int CACHE_SECRET_LENGTH = 32;
+
+    private final ThreadPoolExecutor executor;
+    private final BoundedCache<ByteBuffer, CompletableFuture<SecretKey>> cache;
+    private final SecretKey cacheSecret;
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Creates a new key derivation service.
+     * @param threads number of worker threads
+     * @param queueCapacity maximum number of waiting derivations
+     * @param cacheSize maximum number of cached keys, or zero to
+     *                  disable the cache
+     */
+    public KeyDerivation(int threads, int queueCapacity, int cacheSize) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Key derivation needs at least one thread!");
+        if (queueCapacity < 1)
+            throw new IllegalArgumentException("Key derivation queue capacity has to be at least one!");
+
+        AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "key-derivation-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        if (cacheSize > 0) {
+            byte[] secret = new byte[CACHE_SECRET_LENGTH];
+            new SecureRandom().nextBytes(secret);
+            cache = new BoundedCache<>(cacheSize);
+            cacheSecret = new SecretKeySpec(secret, CACHE_KEY_ALGORITHM);
+            Arrays.fill(secret, (byte) 0);
+        } else {
+            cache = null;
+            cacheSecret = null;
+        }
+    }
+
+    /**
+     * Derives a secret key on the worker pool. The password is copied,
+     * so the caller may clear its array as soon as this method returns.
+     * If the queue of the pool is full, the returned future fails with
+     * a <code>RejectedExecutionException</code>.
+     *
+     * Concurrent calls with the same inputs share one derivation, but
+     * each call gets a future of its own, so completing or cancelling
+     * it does not affect other callers.
+     * @param algorithm algorithm of the derived key, e.g. AES
+     * @param password password
+     * @param salt salt
+     * @param iterations PBKDF2 iteration count
+     * @param keyLength key length in bits
+     * @return future of the derived key
+     */
+    public CompletableFuture<SecretKey> derive(String algorithm, char[] password, byte[] salt,
+                                               int iterations, int keyLength) {
+        if (cache == null)
+            return submit(algorithm, password, salt, iterations, keyLength, new CompletableFuture<>());
+
+        ByteBuffer cacheKey;
+        try {
+            cacheKey = cacheKey(algorithm, password, salt, iterations, keyLength);
+        } catch (GeneralSecurityException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        CompletableFuture<SecretKey> created = new CompletableFuture<>();
+        CompletableFuture<SecretKey> future = cache.get(cacheKey, key -> created);
+        if (future == created) {
+            submit(algorithm, password, salt, iterations, keyLength, created);
+            // failed derivations must not be served from the cache
+            created.whenComplete((result, error) -> {
+                if (error != null)
+                    cache.remove(cacheKey, created);
+            });
+        }
+        return future.copy();
+    }
+
+    private CompletableFuture<SecretKey> submit(String algorithm, char[] password, byte[] salt, int iterations,
+                                                int keyLength, CompletableFuture<SecretKey> future) {
+        char[] copy = password.clone();
+        byte[] saltCopy = salt.clone();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(deriveNow(algorithm, copy, saltCopy, iterations, keyLength));
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                } finally {
+                    Arrays.fill(copy, '\0');
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Arrays.fill(copy, '\0');
+            rejected.incrementAndGet();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Derives a secret key on the calling thread.
+     * @param algorithm algorithm of the derived key, e.g. AES
+     * @param password password
+     * @param salt salt
+     * @param iterations PBKDF2 iteration count
+     * @param keyLength key length in bits
+     * @return derived key
+     * @throws GeneralSecurityException PBKDF2 is not available, or the
+     *          parameters are invalid
+     */
+    public static SecretKey deriveNow(String algorithm, char[] password, byte[] salt, int iterations, int keyLength)
+            throws GeneralSecurityException {
+        PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, keyLength);
+        try {
+            SecretKeyFactory factory = SecretKeyFactory.getInstance(ALGORITHM);
+            SecretKey tmp = factory.generateSecret(spec);
+            return new SecretKeySpec(tmp.getEncoded(), algorithm);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private ByteBuffer cacheKey(String algorithm, char[] password, byte[] salt, int iterations, int keyLength)
+            throws GeneralSecurityException {
+        Mac mac = Mac.getInstance(CACHE_KEY_ALGORITHM);
+        mac.init(cacheSecret);
+        ByteBuffer header = ByteBuffer.allocate(12);
+        header.putInt(iterations).putInt(keyLength).putInt(salt.length);
+        mac.update(header.array());
+        mac.update(salt);
+        mac.update(algorithm.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+
+        ByteBuffer encoded = StandardCharsets.UTF_8.encode(CharBuffer.wrap(password));
+        mac.update(encoded);
+        // wipe the encoded password from memory
+        if (encoded.hasArray())
+            Arrays.fill(encoded.array(), (byte) 0);
+        return ByteBuffer.wrap(mac.doFinal());
+    }
+
+    /**
+     * Returns the number of derivations, which are waiting for a worker
+     * thread.
+     * @return queue depth
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getRemainingCapacity() {
+        return executor.getQueue().remainingCapacity();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public int getCacheSize() {
+        return cache != null ? cache.size() : 0;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        if (cache != null)
+            cache.clear();
+    }
+}
@@ -29,24 +29,47 @@ import com.cerberustek.cipher.PrivateCipher;
 import javax.crypto.*;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.security.*;
 import java.security.interfaces.RSAPrivateKey;
 
 public class RSAPrivateCipher implements PrivateCipher {
 
+    private static final String TRANSFORMATION = "RSA/ECB/OAEPWithSHA1AndMGF1Padding";
+    private static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
+    private static final ThreadLocal<Cipher> CIPHER = new ThreadLocal<>();
+    private static final ThreadLocal<Signature> SIGNATURE = new ThreadLocal<>();
+
     private final RSAPrivateKey key;
-    private Cipher cipher;
-    private Signature signature;
 
     private CerberusEncrypt encrypt;
 
     public RSAPrivateCipher(RSAPrivateKey key) throws NoSuchPaddingException, NoSuchAlgorithmException {
-        cipher = Cipher.getInstance("RSA/ECB/OAEPWithSHA1AndMGF1Padding");
-        signature = Signature.getInstance("SHA256withRSA");
+        // fail early, if the algorithms are not available
+        cipher();
+        signature();
 
         this.key = key;
     }
 
+    private static Cipher cipher() throws NoSuchPaddingException, NoSuchAlgorithmException {
+        Cipher cipher = CIPHER.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(TRANSFORMATION);
+            CIPHER.set(cipher);
+        }
+        return cipher;
+    }
+
+    private static Signature signature() throws NoSuchAlgorithmException {
+        Signature signature = SIGNATURE.get();
+        if (signature == null) {
+            signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+            SIGNATURE.set(signature);
+        }
+        return signature;
+    }
+
     @Override
     public PrivateKey getPrivateKey() {
         return key;
@@ -55,6 +78,7 @@ public class RSAPrivateCipher implements PrivateCipher {
     @Override
     public byte[] decrypt(byte[] value, int offset, int length) {
         try {
+            Cipher cipher = cipher();
             cipher.init(Cipher.DECRYPT_MODE, key);
             ByteArrayInputStream byteStream = new ByteArrayInputStream(value, offset, length);
             CipherInputStream inputStream = new CipherInputStream(byteStream, cipher);
@@ -68,7 +92,7 @@ public class RSAPrivateCipher implements PrivateCipher {
             byte[] finalBytes = new byte[read];
             System.arraycopy(out, 0, finalBytes, 0, read);
             return finalBytes;
-        } catch (InvalidKeyException | IOException e) {
+        } catch (GeneralSecurityException | IOException e) {
             e.printStackTrace();
         }
         return null;
@@ -79,13 +103,26 @@ public class RSAPrivateCipher implements PrivateCipher {
         return decrypt(value, 0, value.length);
     }
 
+    @Override
+    public int decrypt(ByteBuffer input, ByteBuffer output) {
+        try {
+            Cipher cipher = cipher();
+            cipher.init(Cipher.DECRYPT_MODE, key);
+            return cipher.doFinal(input, output);
+        } catch (GeneralSecurityException e) {
+            e.printStackTrace();
+        }
+        return -1;
+    }
+
     @Override
     public byte[] genSignature(byte[] data) {
         try {
+            Signature signature = signature();
             signature.initSign(key, getService().getRandom());
             signature.update(data);
             return signature.sign();
-        } catch (InvalidKeyException | SignatureException e) {
+        } catch (GeneralSecurityException e) {
             CerberusRegistry.getInstance().warning("Unable to sign data! " + e);
         }
         return null;
@@ -94,10 +131,11 @@ public class RSAPrivateCipher implements PrivateCipher {
     @Override
     public byte[] genSignature(byte[] data, int off, int len) {
         try {
+            Signature signature = signature();
             signature.initSign(key, getService().getRandom());
             signature.update(data, off, len);
             return signature.sign();
-        } catch (InvalidKeyException | SignatureException e) {
+        } catch (GeneralSecurityException e) {
             CerberusRegistry.getInstance().warning("Unable to sign data! " + e);
         }
         return null;
@@ -28,22 +28,45 @@ import com.cerberustek.cipher.PublicCipher;
 import javax.crypto.*;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.security.*;
 import java.security.interfaces.RSAPublicKey;
 
 public class RSAPublicCipher implements PublicCipher {
 
+    private static final String TRANSFORMATION = "RSA/ECB/OAEPWithSHA1AndMGF1Padding";
+    private static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
+    private static final ThreadLocal<Cipher> CIPHER = new ThreadLocal<>();
+    private static final ThreadLocal<Signature> SIGNATURE = new ThreadLocal<>();
+
     private final RSAPublicKey key;
-    private final Cipher cipher;
-    private final Signature signature;
 
     public RSAPublicCipher(RSAPublicKey key) throws NoSuchPaddingException, NoSuchAlgorithmException {
-        cipher = Cipher.getInstance("RSA/ECB/OAEPWithSHA1AndMGF1Padding");
-        signature = Signature.getInstance("SHA256withRSA");
+        // fail early, if the algorithms are not available
+        cipher();
+        signature();
 
         this.key = key;
     }
 
+    private static Cipher cipher() throws NoSuchPaddingException, NoSuchAlgorithmException {
+        Cipher cipher = CIPHER.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(TRANSFORMATION);
+            CIPHER.set(cipher);
+        }
+        return cipher;
+    }
+
+    private static Signature signature() throws NoSuchAlgorithmException {
+        Signature signature = SIGNATURE.get();
+        if (signature == null) {
+            signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+            SIGNATURE.set(signature);
+        }
+        return signature;
+    }
+
     @Override
     public PublicKey getPublicKey() {
         return key;
@@ -52,6 +75,7 @@ public class RSAPublicCipher implements PublicCipher {
     @Override
     public byte[] encrypt(byte[] value, int offset, int length) {
         try {
+            Cipher cipher = cipher();
             cipher.init(Cipher.ENCRYPT_MODE, key);
             ByteArrayOutputStream byteStream = new ByteArrayOutputStream(length);
             CipherOutputStream outputStream = new CipherOutputStream(byteStream, cipher);
@@ -61,7 +85,7 @@ public class RSAPublicCipher implements PublicCipher {
             outputStream.close();
 
             return byteStream.toByteArray();
-        } catch (InvalidKeyException | IOException e) {
+        } catch (GeneralSecurityException | IOException e) {
             e.printStackTrace();
         }
         return null;
@@ -72,13 +96,31 @@ public class RSAPublicCipher implements PublicCipher {
         return encrypt(value, 0, value.length);
     }
 
+    @Override
+    public int encrypt(ByteBuffer input, ByteBuffer output) {
+        try {
+            Cipher cipher = cipher();
+            cipher.init(Cipher.ENCRYPT_MODE, key);
+            return cipher.doFinal(input, output);
+        } catch (GeneralSecurityException e) {
+            e.printStackTrace();
+        }
+        return -1;
+    }
+
+    @Override
+    public int getEncryptedLength(int length) {
+        return (key.getModulus().bitLength() + 7) / 8;
+    }
+
     @Override
     public boolean verifySignature(byte[] signature, byte[] message) {
         try {
-            this.signature.initVerify(key);
-            this.signature.update(message);
-            return this.signature.verify(signature);
-        } catch (InvalidKeyException | SignatureException e) {
+            Signature verifier = signature();
+            verifier.initVerify(key);
+            verifier.update(message);
+            return verifier.verify(signature);
+        } catch (GeneralSecurityException e) {
             CerberusRegistry.getInstance().warning("Unable to verify signature");
         }
         return false;
@@ -89,10 +131,11 @@ public class RSAPublicCipher implements PublicCipher {
                                    byte[] message, int messageOffset, int messageLength) {
 
         try {
-            this.signature.initVerify(key);
-            this.signature.update(message, messageOffset, messageLength);
-            return this.signature.verify(signature, signatureOffset, signatureLength);
-        } catch (InvalidKeyException | SignatureException e) {
+            Signature verifier = signature();
+            verifier.initVerify(key);
+            verifier.update(message, messageOffset, messageLength);
+            return verifier.verify(signature, signatureOffset, signatureLength);
+        } catch (GeneralSecurityException e) {
             e.printStackTrace();
         }
         return false;
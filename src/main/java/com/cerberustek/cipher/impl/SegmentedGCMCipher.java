@@ -0,0 +1,494 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.cipher.impl;
+
+import com.cerberustek.CerberusRegistry;
+import com.cerberustek.cipher.CerberusCipher;
+import com.cerberustek.cipher.SymmetricCipher;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streaming AES/GCM cipher, which splits the plain text into segments
+ * of at most a fixed size and encrypts each segment on its own. A stream
+ * has the following format:
+ *
+ * <code>{byte<Version>, int<SegmentSize>, byte[32]<Salt>,
+ *  Segments * {int<Length>, byte[Length]<CipherText>, byte[16]<Tag>}}</code>
+ *
+ * The highest bit of the length marks the last segment. Segments are
+ * full, unless the encrypting stream was flushed, so the cipher can be
+ * used for sessions as well as for files. Since the last segment is
+ * marked, the decrypting stream never reads past the end of the stream.
+ *
+ * Every stream is encrypted with its own key, which is derived from the
+ * key of the cipher and the random salt of the stream with HKDF. So the
+ * amount of data encrypted under one key is bounded by a single stream,
+ * no matter how many streams are encrypted with the cipher. The nonce of
+ * a segment consists of a prefix, which is derived together with the
+ * stream key, the index of the segment and a flag which is only set for
+ * the last segment. So reordering, dropping or truncating segments
+ * fails the authentication of the stream. Only one segment is ever
+ * held in memory, which allows encrypting data of arbitrary size.
+ * Since the segments are independent of each other, data held in
+ * arrays is encrypted and decrypted in parallel.
+ */
+public class SegmentedGCMCipher implements SymmetricCipher {
+
+    public static final int VERSION = 3;
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 16;
+    public static final int MAX_SEGMENT_SIZE = 1 << 24;
+    public static final int TAG_LENGTH = 16;
+    public static final int NONCE_LENGTH = 12;
+    public static final int NONCE_PREFIX_LENGTH = 7;
+    public static final int SALT_LENGTH = 32;
+    public static final int HEADER_SIZE = 1 + 4 + SALT_LENGTH;
+    public static final int SEGMENT_HEADER_SIZE = 4;
+
+    static final int LAST_SEGMENT = 0x80000000;
+
+    static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    static final String KDF_ALGORITHM = "HmacSHA256";
+
+    private static final byte[] KDF_INFO = "cerberus segmented aes/gcm".getBytes(StandardCharsets.UTF_8);
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final ThreadLocal<Cipher> CIPHER = new ThreadLocal<>();
+
+    private final SecretKey key;
+    private final int segmentSize;
+
+    public SegmentedGCMCipher(SecretKey key) {
+        this(key, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public SegmentedGCMCipher(SecretKey key, int segmentSize) {
+        if (segmentSize < 1 || segmentSize > MAX_SEGMENT_SIZE)
+            throw new IllegalArgumentException("Segment size has to be between 1 and " + MAX_SEGMENT_SIZE + " bytes!");
+
+        this.key = key;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Returns an output stream, which encrypts everything written to it
+     * into the specified stream. The last segment is only written once
+     * the returned stream is finished or closed.
+     * @param outputStream output stream for the cipher text
+     * @return encrypting stream
+     * @throws IOException failed to write the header
+     */
+    public SegmentedGCMOutputStream encrypt(OutputStream outputStream) throws IOException {
+        return new SegmentedGCMOutputStream(outputStream, key, segmentSize, salt());
+    }
+
+    /**
+     * Returns an input stream, which decrypts the cipher text read from
+     * the specified stream. The segment size is read from the header of
+     * the cipher text, so it does not have to match the segment size of
+     * this cipher.
+     * @param inputStream input stream of the cipher text
+     * @return decrypting stream
+     * @throws IOException failed to read the header
+     */
+    public SegmentedGCMInputStream decrypt(InputStream inputStream) throws IOException {
+        return new SegmentedGCMInputStream(inputStream, key);
+    }
+
+    /**
+     * Returns the length of the cipher text for a plain text of the
+     * specified length, which is encrypted without flushing.
+     * @param length plain text length
+     * @return cipher text length
+     */
+    public long cipherTextLength(long length) {
+        long segments = Math.max(1, (length + segmentSize - 1) / segmentSize);
+        return HEADER_SIZE + length + segments * (SEGMENT_HEADER_SIZE + TAG_LENGTH);
+    }
+
+    @Override
+    public int getEncryptedLength(int length) {
+        long cipherTextLength = cipherTextLength(length);
+        return cipherTextLength > Integer.MAX_VALUE ? -1 : (int) cipherTextLength;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    @Override
+    public CerberusCipher reset() {
+        return this;
+    }
+
+    @Override
+    public SecretKey getKeySet() {
+        return key;
+    }
+
+    @Override
+    public byte[] encrypt(byte[] value, int offset, int length) {
+        return encrypt(value, offset, length, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Encrypts the data into the segmented format. The segments are
+     * encrypted in parallel on the specified pool, so the throughput
+     * scales with the number of cores for large data. The result can be
+     * decrypted by a decrypting stream as well.
+     * @param value plain data
+     * @param offset offset
+     * @param length length
+     * @param pool fork join pool
+     * @return encrypted data, or null if the encryption failed
+     */
+    public byte[] encrypt(byte[] value, int offset, int length, ForkJoinPool pool) {
+        long cipherTextLength = cipherTextLength(length);
+        if (cipherTextLength > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Data is too large to be encrypted into one array!");
+
+        byte[] header = header(segmentSize, salt());
+        byte[] prefix = new byte[NONCE_PREFIX_LENGTH];
+        SecretKey streamKey;
+        try {
+            streamKey = streamKey(key, header, prefix);
+        } catch (GeneralSecurityException e) {
+            CerberusRegistry.getInstance().warning("Failed to derive segmented AES/GCM stream key! " + e);
+            return null;
+        }
+        byte[] output = new byte[(int) cipherTextLength];
+        System.arraycopy(header, 0, output, 0, HEADER_SIZE);
+
+        int segments = (int) Math.max(1, (length + segmentSize - 1L) / segmentSize);
+        GeneralSecurityException failure = run(pool, segments, segment -> {
+            int position = segment * segmentSize;
+            int segmentLength = Math.min(segmentSize, length - position);
+            boolean last = segment == segments - 1;
+            byte[] nonce = Arrays.copyOf(prefix, NONCE_LENGTH);
+            nonce(nonce, segment, last);
+
+            int target = HEADER_SIZE + segment * (SEGMENT_HEADER_SIZE + segmentSize + TAG_LENGTH);
+            writeInt(output, target, segmentHeader(segmentLength, last));
+            Cipher cipher = cipher();
+            cipher.init(Cipher.ENCRYPT_MODE, streamKey, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+            cipher.updateAAD(header);
+            cipher.doFinal(value, offset + position, segmentLength, output, target + SEGMENT_HEADER_SIZE);
+        });
+
+        if (failure != null) {
+            CerberusRegistry.getInstance().warning("Failed to encrypt segmented AES/GCM data! " + failure);
+            return null;
+        }
+        return output;
+    }
+
+    @Override
+    public byte[] encrypt(byte[] value) {
+        return encrypt(value, 0, value.length);
+    }
+
+    @Override
+    public byte[] decrypt(byte[] value, int offset, int length) {
+        return decrypt(value, offset, length, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Decrypts data in the segmented format. The segment headers are
+     * validated first, then the segments are decrypted in parallel on
+     * the specified pool.
+     * @param value encrypted data
+     * @param offset offset
+     * @param length length
+     * @param pool fork join pool
+     * @return decrypted data, or null if the data is malformed or failed
+     *          the authentication
+     */
+    public byte[] decrypt(byte[] value, int offset, int length, ForkJoinPool pool) {
+        if (length < HEADER_SIZE + SEGMENT_HEADER_SIZE + TAG_LENGTH || value[offset] != VERSION) {
+            CerberusRegistry.getInstance().warning("Invalid segmented AES/GCM header!");
+            return null;
+        }
+
+        int size = readInt(value, offset + 1);
+        if (size < 1 || size > MAX_SEGMENT_SIZE) {
+            CerberusRegistry.getInstance().warning("Invalid segment size " + size + "!");
+            return null;
+        }
+
+        // count the segments and the plain text length, before anything is allocated
+        int segments = 0;
+        int plainTextLength = 0;
+        for (int position = HEADER_SIZE, segmentLength; ; position += segmentLength + TAG_LENGTH) {
+            segmentLength = segmentLength(value, offset + position, length - position, size);
+            if (segmentLength < 0)
+                return null;
+            position += SEGMENT_HEADER_SIZE;
+            segments++;
+            plainTextLength += segmentLength;
+
+            if (readInt(value, offset + position - SEGMENT_HEADER_SIZE) < 0) {
+                if (position + segmentLength + TAG_LENGTH != length) {
+                    CerberusRegistry.getInstance().warning("Trailing data after segmented AES/GCM data!");
+                    return null;
+                }
+                break;
+            }
+        }
+
+        int[] positions = new int[segments];
+        int[] targets = new int[segments];
+        for (int segment = 0, position = HEADER_SIZE, target = 0; segment < segments; segment++) {
+            int segmentLength = readInt(value, offset + position) & ~LAST_SEGMENT;
+            positions[segment] = position + SEGMENT_HEADER_SIZE;
+            targets[segment] = target;
+            position += SEGMENT_HEADER_SIZE + segmentLength + TAG_LENGTH;
+            target += segmentLength;
+        }
+
+        byte[] header = Arrays.copyOfRange(value, offset, offset + HEADER_SIZE);
+        byte[] prefix = new byte[NONCE_PREFIX_LENGTH];
+        SecretKey streamKey;
+        try {
+            streamKey = streamKey(key, header, prefix);
+        } catch (GeneralSecurityException e) {
+            CerberusRegistry.getInstance().warning("Failed to derive segmented AES/GCM stream key! " + e);
+            return null;
+        }
+
+        byte[] output = new byte[plainTextLength];
+        int outputLength = plainTextLength;
+        int lastSegment = segments - 1;
+        GeneralSecurityException failure = run(pool, segments, segment -> {
+            byte[] nonce = Arrays.copyOf(prefix, NONCE_LENGTH);
+            nonce(nonce, segment, segment == lastSegment);
+            int cipherLength = (segment == lastSegment ? outputLength : targets[segment + 1])
+                    - targets[segment] + TAG_LENGTH;
+
+            Cipher cipher = cipher();
+            cipher.init(Cipher.DECRYPT_MODE, streamKey, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+            cipher.updateAAD(header);
+            cipher.doFinal(value, offset + positions[segment], cipherLength, output, targets[segment]);
+        });
+
+        if (failure != null) {
+            CerberusRegistry.getInstance().warning("Failed to decrypt segmented AES/GCM data! " + failure);
+            return null;
+        }
+        return output;
+    }
+
+    @Override
+    public byte[] decrypt(byte[] value) {
+        return decrypt(value, 0, value.length);
+    }
+
+    private static Cipher cipher() throws GeneralSecurityException {
+        Cipher cipher = CIPHER.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(TRANSFORMATION);
+            CIPHER.set(cipher);
+        }
+        return cipher;
+    }
+
+    private static GeneralSecurityException run(ForkJoinPool pool, int segments, SegmentOperation operation) {
+        AtomicReference<GeneralSecurityException> failure = new AtomicReference<>();
+        SegmentTask task = new SegmentTask(operation, 0, segments, failure);
+        if (segments == 1 || pool == null)
+            task.compute();
+        else
+            pool.invoke(task);
+        return failure.get();
+    }
+
+    private static byte[] salt() {
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        return salt;
+    }
+
+    static byte[] header(int segmentSize, byte[] salt) {
+        byte[] header = new byte[HEADER_SIZE];
+        header[0] = (byte) VERSION;
+        writeInt(header, 1, segmentSize);
+        System.arraycopy(salt, 0, header, 5, SALT_LENGTH);
+        return header;
+    }
+
+    /**
+     * Derives the key and the nonce prefix of a stream from the key of
+     * the cipher and the salt in the header of the stream. The key is
+     * derived with HKDF (RFC 5869) over HMAC-SHA256 and has the same
+     * length as the key of the cipher.
+     * @param key key of the cipher
+     * @param header header of the stream
+     * @param noncePrefix receives the nonce prefix of the stream
+     * @return stream key
+     * @throws GeneralSecurityException the key has no raw encoding, or
+     *          HMAC-SHA256 is not available
+     */
+    static SecretKey streamKey(SecretKey key, byte[] header, byte[] noncePrefix) throws GeneralSecurityException {
+        byte[] material = key.getEncoded();
+        if (material == null)
+            throw new InvalidKeyException("Segmented AES/GCM requires a key with raw encoding!");
+
+        Mac mac = Mac.getInstance(KDF_ALGORITHM);
+        mac.init(new SecretKeySpec(header, 5, SALT_LENGTH, KDF_ALGORITHM));
+        byte[] pseudoRandomKey = mac.doFinal(material);
+        mac.init(new SecretKeySpec(pseudoRandomKey, KDF_ALGORITHM));
+
+        byte[] output = new byte[material.length + NONCE_PREFIX_LENGTH];
+        byte[] block = new byte[0];
+        for (int position = 0, counter = 1; position < output.length; counter++) {
+            mac.update(block);
+            mac.update(KDF_INFO);
+            mac.update((byte) counter);
+            block = mac.doFinal();
+
+            int count = Math.min(block.length, output.length - position);
+            System.arraycopy(block, 0, output, position, count);
+            position += count;
+        }
+
+        SecretKey streamKey = new SecretKeySpec(output, 0, material.length, key.getAlgorithm());
+        System.arraycopy(output, material.length, noncePrefix, 0, NONCE_PREFIX_LENGTH);
+        Arrays.fill(material, (byte) 0);
+        Arrays.fill(pseudoRandomKey, (byte) 0);
+        Arrays.fill(output, (byte) 0);
+        return streamKey;
+    }
+
+    /**
+     * Reads and validates the header of a segment in an array.
+     * @return length of the plain text of the segment, or -1 if the
+     *          segment is malformed
+     */
+    private static int segmentLength(byte[] value, int offset, int remaining, int segmentSize) {
+        if (remaining < SEGMENT_HEADER_SIZE + TAG_LENGTH) {
+            CerberusRegistry.getInstance().warning("Truncated segmented AES/GCM data!");
+            return -1;
+        }
+
+        int segmentHeader = readInt(value, offset);
+        int segmentLength = segmentHeader & ~LAST_SEGMENT;
+        if (segmentLength > segmentSize || (segmentLength == 0 && segmentHeader >= 0)) {
+            CerberusRegistry.getInstance().warning("Invalid segment length " + segmentLength + "!");
+            return -1;
+        }
+        if (remaining - SEGMENT_HEADER_SIZE - TAG_LENGTH < segmentLength) {
+            CerberusRegistry.getInstance().warning("Truncated segmented AES/GCM data!");
+            return -1;
+        }
+        return segmentLength;
+    }
+
+    /**
+     * Returns the header of a segment. Only the last segment may be
+     * empty.
+     * @param length plain text length of the segment
+     * @param last true, if the segment is the last one
+     * @return segment header
+     */
+    static int segmentHeader(int length, boolean last) {
+        return last ? length | LAST_SEGMENT : length;
+    }
+
+    static int readInt(byte[] value, int offset) {
+        return ((value[offset] & 0xff) << 24) | ((value[offset + 1] & 0xff) << 16)
+                | ((value[offset + 2] & 0xff) << 8) | (value[offset + 3] & 0xff);
+    }
+
+    static void writeInt(byte[] value, int offset, int i) {
+        value[offset] = (byte) (i >>> 24);
+        value[offset + 1] = (byte) (i >>> 16);
+        value[offset + 2] = (byte) (i >>> 8);
+        value[offset + 3] = (byte) i;
+    }
+
+    static void nonce(byte[] nonce, long segment, boolean last) {
+        nonce[NONCE_PREFIX_LENGTH] = (byte) (segment >>> 24);
+        nonce[NONCE_PREFIX_LENGTH + 1] = (byte) (segment >>> 16);
+        nonce[NONCE_PREFIX_LENGTH + 2] = (byte) (segment >>> 8);
+        nonce[NONCE_PREFIX_LENGTH + 3] = (byte) segment;
+        nonce[NONCE_LENGTH - 1] = (byte) (last ? 1 : 0);
+    }
+
+    private interface SegmentOperation {
+
+        void apply(int segment) throws GeneralSecurityException;
+    }
+
+    /**
+     * Processes a range of segments by splitting it in half, until only
+     * single segments are left.
+     */
+    private static final class SegmentTask extends RecursiveAction {
+
+        private final SegmentOperation operation;
+        private final int from;
+        private final int to;
+        private final AtomicReference<GeneralSecurityException> failure;
+
+        private SegmentTask(SegmentOperation operation, int from, int to,
+                            AtomicReference<GeneralSecurityException> failure) {
+            this.operation = operation;
+            this.from = from;
+            this.to = to;
+            this.failure = failure;
+        }
+
+        @Override
+        protected void compute() {
+            if (failure.get() != null)
+                return;
+
+            if (to - from == 1) {
+                try {
+                    operation.apply(from);
+                } catch (GeneralSecurityException e) {
+                    failure.compareAndSet(null, e);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new SegmentTask(operation, from, middle, failure),
+                        new SegmentTask(operation, middle, to, failure));
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.cipher.impl;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+
+/**
+ * Input stream, which decrypts data encrypted with a segmented AES/GCM
+ * cipher. Every segment is authenticated before any of its data is
+ * returned. Segments are read as soon as they have been written
+ * completely and the stream never reads past the last segment, so the
+ * cipher text can be followed by other data, or be part of a session.
+ */
+public class SegmentedGCMInputStream extends InputStream {
+
+    private final InputStream inputStream;
+    private final SecretKey key;
+    private final Cipher cipher;
+    private final byte[] header;
+    private final byte[] nonce;
+    private final byte[] input;
+    private final byte[] segment;
+
+    private int position;
+    private int limit;
+    private long segmentIndex;
+    private boolean last;
+
+    public SegmentedGCMInputStream(InputStream inputStream, SecretKey key) throws IOException {
+        this.inputStream = inputStream;
+
+        header = new byte[SegmentedGCMCipher.HEADER_SIZE];
+        if (readFully(header, 0, header.length) < header.length)
+            throw new EOFException("Missing segmented AES/GCM header!");
+        if (header[0] != SegmentedGCMCipher.VERSION)
+            throw new IOException("Unsupported segmented AES/GCM version " + header[0] + "!");
+
+        int segmentSize = SegmentedGCMCipher.readInt(header, 1);
+        if (segmentSize < 1 || segmentSize > SegmentedGCMCipher.MAX_SEGMENT_SIZE)
+            throw new IOException("Invalid segment size " + segmentSize + "!");
+
+        nonce = new byte[SegmentedGCMCipher.NONCE_LENGTH];
+        try {
+            cipher = Cipher.getInstance(SegmentedGCMCipher.TRANSFORMATION);
+            this.key = SegmentedGCMCipher.streamKey(key, header, nonce);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to set up segmented AES/GCM decryption", e);
+        }
+        input = new byte[segmentSize + SegmentedGCMCipher.TAG_LENGTH];
+        segment = new byte[segmentSize];
+    }
+
+    private int readFully(byte[] buffer, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int read = inputStream.read(buffer, offset + total, length - total);
+            if (read < 0)
+                break;
+            total += read;
+        }
+        return total;
+    }
+
+    private boolean nextSegment() throws IOException {
+        if (last)
+            return false;
+
+        if (readFully(input, 0, SegmentedGCMCipher.SEGMENT_HEADER_SIZE) < SegmentedGCMCipher.SEGMENT_HEADER_SIZE)
+            throw new EOFException("Truncated segmented AES/GCM stream!");
+        int segmentHeader = SegmentedGCMCipher.readInt(input, 0);
+        int length = segmentHeader & ~SegmentedGCMCipher.LAST_SEGMENT;
+        last = segmentHeader < 0;
+        if (length > segment.length || (length == 0 && !last))
+            throw new IOException("Invalid segment length " + length + "!");
+
+        int cipherLength = length + SegmentedGCMCipher.TAG_LENGTH;
+        if (readFully(input, 0, cipherLength) < cipherLength)
+            throw new EOFException("Truncated segmented AES/GCM stream!");
+
+        SegmentedGCMCipher.nonce(nonce, segmentIndex++, last);
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(SegmentedGCMCipher.TAG_LENGTH * 8, nonce));
+            cipher.updateAAD(header);
+            limit = cipher.doFinal(input, 0, cipherLength, segment, 0);
+        } catch (AEADBadTagException e) {
+            throw new IOException("Authentication of segment " + (segmentIndex - 1) + " failed!", e);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to decrypt segment " + (segmentIndex - 1) + "!", e);
+        }
+
+        position = 0;
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        while (position == limit) {
+            if (!nextSegment())
+                return -1;
+        }
+        return segment[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0)
+            return 0;
+        while (position == limit) {
+            if (!nextSegment())
+                return -1;
+        }
+        int count = Math.min(length, limit - position);
+        System.arraycopy(segment, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+}
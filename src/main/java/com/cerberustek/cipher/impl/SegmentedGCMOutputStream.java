@@ -0,0 +1,150 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.cipher.impl;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+
+/**
+ * Output stream, which encrypts the written data with a segmented
+ * AES/GCM cipher. A full segment is only encrypted once more data is
+ * written, since the last segment is encrypted with a different nonce.
+ * Flushing this stream encrypts the buffered data as a short segment,
+ * so every flush adds the overhead of one segment to the stream.
+ * Closing this stream closes the underlying stream, while
+ * <code>finish()</code> only writes the last segment.
+ */
+public class SegmentedGCMOutputStream extends OutputStream {
+
+    private static final long MAX_SEGMENTS = 0xffffffffL;
+
+    private final OutputStream outputStream;
+    private final SecretKey key;
+    private final Cipher cipher;
+    private final byte[] header;
+    private final byte[] nonce;
+    private final byte[] segment;
+    private final byte[] output;
+
+    private int position;
+    private long segmentIndex;
+    private boolean finished;
+
+    public SegmentedGCMOutputStream(OutputStream outputStream, SecretKey key, int segmentSize, byte[] salt)
+            throws IOException {
+        this.outputStream = outputStream;
+        header = SegmentedGCMCipher.header(segmentSize, salt);
+        nonce = new byte[SegmentedGCMCipher.NONCE_LENGTH];
+        try {
+            cipher = Cipher.getInstance(SegmentedGCMCipher.TRANSFORMATION);
+            this.key = SegmentedGCMCipher.streamKey(key, header, nonce);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to set up segmented AES/GCM encryption", e);
+        }
+        segment = new byte[segmentSize];
+        output = new byte[SegmentedGCMCipher.SEGMENT_HEADER_SIZE + segmentSize + SegmentedGCMCipher.TAG_LENGTH];
+
+        outputStream.write(header);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (finished)
+            throw new IOException("Stream has already been finished!");
+        if (position == segment.length)
+            writeSegment(false);
+        segment[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        if (finished)
+            throw new IOException("Stream has already been finished!");
+        while (length > 0) {
+            if (position == segment.length)
+                writeSegment(false);
+            int count = Math.min(length, segment.length - position);
+            System.arraycopy(buffer, offset, segment, position, count);
+            position += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    private void writeSegment(boolean last) throws IOException {
+        if (segmentIndex > MAX_SEGMENTS)
+            throw new IOException("Too many segments for one stream!");
+
+        SegmentedGCMCipher.nonce(nonce, segmentIndex++, last);
+        SegmentedGCMCipher.writeInt(output, 0, SegmentedGCMCipher.segmentHeader(position, last));
+        int length;
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(SegmentedGCMCipher.TAG_LENGTH * 8, nonce));
+            cipher.updateAAD(header);
+            length = cipher.doFinal(segment, 0, position, output, SegmentedGCMCipher.SEGMENT_HEADER_SIZE);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to encrypt segment " + (segmentIndex - 1) + "!", e);
+        }
+        outputStream.write(output, 0, SegmentedGCMCipher.SEGMENT_HEADER_SIZE + length);
+        position = 0;
+    }
+
+    /**
+     * Encrypts and writes the last segment without closing the
+     * underlying stream. No more data can be written afterwards.
+     * @throws IOException failed to write the last segment
+     */
+    public void finish() throws IOException {
+        if (finished)
+            return;
+        writeSegment(true);
+        finished = true;
+    }
+
+    /**
+     * Encrypts and writes the buffered data as a short segment and
+     * flushes the underlying stream, so the reading side can decrypt
+     * everything written so far.
+     * @throws IOException failed to write the segment
+     */
+    @Override
+    public void flush() throws IOException {
+        if (!finished && position > 0)
+            writeSegment(false);
+        outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            outputStream.close();
+        }
+    }
+}
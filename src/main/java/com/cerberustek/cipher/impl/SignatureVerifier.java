@@ -0,0 +1,183 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.cerberustek.cipher.impl;
+
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Verifies signatures of many messages at once. The messages are split
+ * into blocks of 64, which are verified in parallel, each thread using
+ * its own signature instance. The results are returned as bit set,
+ * in which bit i is set if message i has a valid signature.
+ */
+public class SignatureVerifier {
+
+    public static final String DEFAULT_ALGORITHM = "SHA256withRSA";
+
+    private final String algorithm;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<Signature> signature = new ThreadLocal<>();
+
+    public SignatureVerifier() throws NoSuchAlgorithmException {
+        this(DEFAULT_ALGORITHM);
+    }
+
+    public SignatureVerifier(String algorithm) throws NoSuchAlgorithmException {
+        this(algorithm, ForkJoinPool.commonPool());
+    }
+
+    public SignatureVerifier(String algorithm, ForkJoinPool pool) throws NoSuchAlgorithmException {
+        this.algorithm = algorithm;
+        this.pool = pool;
+        signature();
+    }
+
+    private Signature signature() throws NoSuchAlgorithmException {
+        Signature signature = this.signature.get();
+        if (signature == null) {
+            signature = Signature.getInstance(algorithm);
+            this.signature.set(signature);
+        }
+        return signature;
+    }
+
+    /**
+     * Verifies a single signature on the calling thread.
+     * @param key public key of the signer
+     * @param signature signature
+     * @param message signed message
+     * @return true, if the signature is valid
+     */
+    public boolean verify(PublicKey key, byte[] signature, byte[] message) {
+        if (key == null || signature == null || message == null)
+            return false;
+        try {
+            Signature verifier = signature();
+            verifier.initVerify(key);
+            verifier.update(message);
+            return verifier.verify(signature);
+        } catch (GeneralSecurityException e) {
+            // malformed signatures and unusable keys fail the verification
+            return false;
+        }
+    }
+
+    public boolean verify(SignedMessage message) {
+        return verify(message.getKey(), message.getSignature(), message.getMessage());
+    }
+
+    /**
+     * Verifies the signatures of all messages in parallel.
+     * @param messages signed messages
+     * @return bit set with a set bit for each valid signature
+     */
+    public BitSet verifyAll(List<SignedMessage> messages) {
+        return verifyAll(messages.toArray(new SignedMessage[0]));
+    }
+
+    public BitSet verifyAll(SignedMessage[] messages) {
+        long[] words = new long[(messages.length + 63) >>> 6];
+        if (words.length == 1)
+            new VerifyTask(messages, words, 0, 1).compute();
+        else if (words.length > 1)
+            pool.invoke(new VerifyTask(messages, words, 0, words.length));
+        return BitSet.valueOf(words);
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Message together with its signature and the public key it has
+     * to be verified with.
+     */
+    public static class SignedMessage {
+
+        private final PublicKey key;
+        private final byte[] signature;
+        private final byte[] message;
+
+        public SignedMessage(PublicKey key, byte[] signature, byte[] message) {
+            this.key = key;
+            this.signature = signature;
+            this.message = message;
+        }
+
+        public PublicKey getKey() {
+            return key;
+        }
+
+        public byte[] getSignature() {
+            return signature;
+        }
+
+        public byte[] getMessage() {
+            return message;
+        }
+    }
+
+    /**
+     * Verifies a range of 64 message blocks. Every block owns one word
+     * of the result, so no synchronization is needed.
+     */
+    private class VerifyTask extends RecursiveAction {
+
+        private final SignedMessage[] messages;
+        private final long[] words;
+        private final int from;
+        private final int to;
+
+        private VerifyTask(SignedMessage[] messages, long[] words, int from, int to) {
+            this.messages = messages;
+            this.words = words;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new VerifyTask(messages, words, from, middle),
+                        new VerifyTask(messages, words, middle, to));
+                return;
+            }
+
+            long word = 0;
+            int offset = from << 6;
+            int end = Math.min(offset + 64, messages.length);
+            for (int index = offset; index < end; index++) {
+                if (messages[index] != null && verify(messages[index]))
+                    word |= 1L << (index - offset);
+            }
+            words[from] = word;
+        }
+    }
+}
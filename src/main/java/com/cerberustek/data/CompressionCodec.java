@@ -0,0 +1,57 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compression algorithm used by compression elements. Codecs are
+ * identified in the serialized data by the id they are registered
+ * with in a codec registry.
+ */
+public interface CompressionCodec {
+
+    /**
+     * Returns a stream which compresses all data written to it into
+     * the output stream. Closing the returned stream finishes the
+     * compressed data and releases all resources held by it, but does
+     * not close the output stream.
+     * @param outputStream output stream
+     * @return compressing stream
+     * @throws IOException failed to write to the output stream
+     */
+    OutputStream compress(OutputStream outputStream) throws IOException;
+
+    /**
+     * Returns a stream which decompresses the data read from the input
+     * stream. Closing the returned stream releases all resources held
+     * by it, but does not close the input stream.
+     * @param inputStream input stream
+     * @return decompressing stream
+     * @throws IOException failed to read from the input stream
+     */
+    InputStream decompress(InputStream inputStream) throws IOException;
+}
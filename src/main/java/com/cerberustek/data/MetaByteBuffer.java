@@ -25,6 +25,8 @@ package com.cerberustek.data;
 import com.cerberustek.exception.NoMatchingDiscriminatorException;
 import com.cerberustek.exception.UnknownDiscriminatorException;
 
+import java.nio.ByteBuffer;
+
 public interface MetaByteBuffer {
 
     void rewind();
@@ -136,6 +138,32 @@ public interface MetaByteBuffer {
 
     DiscriminatorMap getDiscriminatorMap();
 
+    /**
+     * Returns true, if this buffer writes the children of unordered
+     * containers, like documents, sets and maps, in canonical order.
+     * Equal data written to a canonical buffer always results in the
+     * same bytes as written to a canonical stream.
+     * @return canonical
+     */
+    default boolean isCanonical() {
+        return false;
+    }
+
     int remaining();
     int capacity();
+
+    /**
+     * Returns the next <code>length</code> bytes of this buffer and
+     * moves the position of this buffer past them. By default, the bytes
+     * are copied into a new buffer. Implementations backed by a byte
+     * buffer return a view instead, so data can be processed in place,
+     * without copying it out of the buffer.
+     * @param length number of bytes
+     * @return bytes
+     */
+    default ByteBuffer slice(int length) {
+        byte[] data = new byte[length];
+        read(data);
+        return ByteBuffer.wrap(data);
+    }
 }
@@ -22,9 +22,14 @@
 
 package com.cerberustek.data;
 
+import com.cerberustek.CerberusData;
 import com.cerberustek.exception.NoMatchingDiscriminatorException;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 
 public interface MetaData {
 
@@ -33,4 +38,42 @@ public interface MetaData {
 
     long byteSize();
     long finalSize();
+
+    /**
+     * Returns the content which is written for this data by a single
+     * <code>writeData</code> call. Meta streams and buffers request the
+     * byte size and the serialization from the returned content, so data,
+     * which may be modified while it is written, can capture a consistent
+     * version of itself here. By default the data itself is written.
+     * @return captured content
+     */
+    default MetaData capture() {
+        return this;
+    }
+
+    /**
+     * Streams the canonical encoding of this data through the message
+     * digest and returns the resulting hash. Since the encoding is
+     * canonical, equal data always results in equal hashes.
+     * @param digest message digest
+     * @param discriminatorMap discriminator map used for the encoding
+     * @return hash
+     * @throws NoMatchingDiscriminatorException the data can not be encoded
+     *          with the discriminator map
+     */
+    default byte[] digest(MessageDigest digest, DiscriminatorMap discriminatorMap) throws NoMatchingDiscriminatorException {
+        digest.reset();
+        OutputStream sink = new BufferedOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest));
+        try (MetaOutputStream outputStream = CerberusData.createCanonicalOutputStream(sink, discriminatorMap)) {
+            outputStream.writeData(this);
+            outputStream.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to digest meta data", e);
+        }
+        return digest.digest();
+    }
+
+    default byte[] digest(MessageDigest digest) throws NoMatchingDiscriminatorException {
+        return digest(digest, CerberusData.genDefaultDiscriminators());
+    }
 }
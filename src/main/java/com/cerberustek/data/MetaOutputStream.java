@@ -34,8 +34,25 @@ public interface MetaOutputStream extends CountingStream, DataOutput, AutoClosea
     void write(byte[] buffer, int offset, int length) throws IOException;
     void writeData(MetaData data) throws IOException, NoMatchingDiscriminatorException;
 
+    /**
+     * Flushes and closes this stream together with the underlying
+     * output stream. Earlier versions left the underlying stream open;
+     * callers, which keep using it, have to flush instead of closing.
+     * @throws IOException failed to flush or close the stream
+     */
     void close() throws IOException;
     void flush() throws IOException;
 
     DiscriminatorMap getDiscriminatorMap();
+
+    /**
+     * Returns true, if this stream writes the children of unordered
+     * containers, like documents, sets and maps, in canonical order.
+     * Equal data written to a canonical stream always results in
+     * equal bytes.
+     * @return canonical
+     */
+    default boolean isCanonical() {
+        return false;
+    }
 }
@@ -0,0 +1,136 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data.impl;
+
+import com.cerberustek.data.DiscriminatorMap;
+import com.cerberustek.data.MetaData;
+import com.cerberustek.data.MetaTag;
+import com.cerberustek.data.impl.streams.MetaOutputStreamImpl;
+import com.cerberustek.exception.NoMatchingDiscriminatorException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Orderings used by canonical meta output streams. Canonical streams
+ * write the children of unordered containers in a well-defined order,
+ * so equal data always results in equal bytes:
+ *
+ * The tags of documents are ordered by their tag names, while the
+ * elements of sets and the keys of maps are ordered by their canonical
+ * encoding.
+ */
+public final class CanonicalOrder {
+
+    private static final Comparator<String> NAME_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+
+    private CanonicalOrder() {}
+
+    /**
+     * Returns the tags ordered by their tag names.
+     * @param tags tags
+     * @return ordered tags
+     */
+    public static List<MetaTag> tags(Iterable<? extends MetaTag> tags) {
+        ArrayList<MetaTag> sorted = new ArrayList<>();
+        for (MetaTag tag : tags)
+            sorted.add(tag);
+        sorted.sort((a, b) -> NAME_ORDER.compare(a.getTag(), b.getTag()));
+        return sorted;
+    }
+
+    /**
+     * Returns the indices of the tags ordered by their tag names.
+     * @param tags tags
+     * @return ordered indices
+     */
+    public static int[] order(MetaTag[] tags) {
+        Integer[] order = indices(tags.length);
+        Arrays.sort(order, (a, b) -> NAME_ORDER.compare(tags[a].getTag(), tags[b].getTag()));
+        return unbox(order);
+    }
+
+    /**
+     * Returns the elements ordered by their canonical encoding.
+     * @param elements elements
+     * @param discriminatorMap discriminator map used for the encoding
+     * @param <T> element type
+     * @return ordered elements
+     * @throws NoMatchingDiscriminatorException an element can not be encoded
+     */
+    public static <T extends MetaData> List<T> elements(Collection<T> elements, DiscriminatorMap discriminatorMap)
+            throws NoMatchingDiscriminatorException {
+        MetaData[] values = elements.toArray(new MetaData[0]);
+        ArrayList<T> sorted = new ArrayList<>(values.length);
+        for (int i : order(values, discriminatorMap)) {
+            @SuppressWarnings("unchecked")
+            T value = (T) values[i];
+            sorted.add(value);
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns the indices of the elements ordered by their canonical
+     * encoding.
+     * @param elements elements
+     * @param discriminatorMap discriminator map used for the encoding
+     * @return ordered indices
+     * @throws NoMatchingDiscriminatorException an element can not be encoded
+     */
+    public static int[] order(MetaData[] elements, DiscriminatorMap discriminatorMap)
+            throws NoMatchingDiscriminatorException {
+        byte[][] keys = new byte[elements.length][];
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        MetaOutputStreamImpl outputStream = new MetaOutputStreamImpl(buffer, discriminatorMap, true);
+        try {
+            for (int i = 0; i < elements.length; i++) {
+                buffer.reset();
+                outputStream.writeData(elements[i]);
+                keys[i] = buffer.toByteArray();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to encode element in memory", e);
+        }
+
+        Integer[] order = indices(elements.length);
+        Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(keys[a], keys[b]));
+        return unbox(order);
+    }
+
+    private static Integer[] indices(int length) {
+        Integer[] indices = new Integer[length];
+        for (int i = 0; i < length; i++)
+            indices[i] = i;
+        return indices;
+    }
+
+    private static int[] unbox(Integer[] values) {
+        int[] output = new int[values.length];
+        for (int i = 0; i < values.length; i++)
+            output[i] = values[i];
+        return output;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data.impl;
+
+import com.cerberustek.data.MetaByteBuffer;
+import com.cerberustek.data.MetaData;
+import com.cerberustek.data.MetaOutputStream;
+import com.cerberustek.exception.NoMatchingDiscriminatorException;
+
+import java.io.IOException;
+
+/**
+ * Pairs meta data with the content, which was captured from it by
+ * <code>capture()</code>. Containers store the children they captured
+ * in this form, so the size computed for a child and the bytes written
+ * for it are always taken from the same capture.
+ *
+ * Meta streams and buffers take the discriminator and the tag name of
+ * the written data from the source, and everything else from the
+ * captured content.
+ */
+public final class CapturedData implements MetaData {
+
+    private final MetaData source;
+    private final MetaData content;
+
+    private CapturedData(MetaData source, MetaData content) {
+        this.source = source;
+        this.content = content;
+    }
+
+    /**
+     * Captures the content of the data. Data, which does not capture
+     * its content, is returned as is.
+     * @param data meta data
+     * @return captured data
+     */
+    public static MetaData of(MetaData data) {
+        if (data == null || data instanceof CapturedData)
+            return data;
+
+        MetaData content = data.capture();
+        return content == data ? data : new CapturedData(data, content);
+    }
+
+    /**
+     * Returns the data the content was captured from.
+     * @param data possibly captured meta data
+     * @return source data
+     */
+    public static MetaData source(MetaData data) {
+        return data instanceof CapturedData ? ((CapturedData) data).source : data;
+    }
+
+    @Override
+    public void serialize(MetaOutputStream metaOutputStream) throws IOException, NoMatchingDiscriminatorException {
+        content.serialize(metaOutputStream);
+    }
+
+    @Override
+    public void serialize(MetaByteBuffer metaBuffer) throws NoMatchingDiscriminatorException {
+        content.serialize(metaBuffer);
+    }
+
+    @Override
+    public long byteSize() {
+        return content.byteSize();
+    }
+
+    @Override
+    public long finalSize() {
+        return source.finalSize();
+    }
+
+    @Override
+    public MetaData capture() {
+        return content;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data.impl;
+
+import com.cerberustek.CerberusData;
+import com.cerberustek.data.MetaByteBuffer;
+import com.cerberustek.data.MetaData;
+import com.cerberustek.data.MetaOutputStream;
+import com.cerberustek.data.MetaTag;
+import com.cerberustek.exception.NoMatchingDiscriminatorException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Captured content of a document. The tags of the document and the
+ * content of nested documents are captured once, when the snapshot is
+ * created, so the byte size and the serialization of the snapshot
+ * always describe the same tags, even if the document is modified
+ * concurrently.
+ */
+public final class DocSnapshot implements MetaData {
+
+    private final MetaTag[] tags;
+    private final MetaData[] contents;
+    private final long size;
+
+    public DocSnapshot(Iterable<? extends MetaTag> tags) {
+        ArrayList<MetaTag> list = new ArrayList<>();
+        for (MetaTag tag : tags)
+            list.add(tag);
+
+        this.tags = list.toArray(new MetaTag[0]);
+        this.contents = new MetaData[this.tags.length];
+
+        long size = 4;
+        for (int i = 0; i < this.tags.length; i++) {
+            contents[i] = CapturedData.of(this.tags[i]);
+            size += CerberusData.totalSize(contents[i]);
+        }
+        this.size = size;
+    }
+
+    @Override
+    public void serialize(MetaOutputStream metaOutputStream) throws IOException, NoMatchingDiscriminatorException {
+        metaOutputStream.writeInt(tags.length);
+        if (metaOutputStream.isCanonical()) {
+            for (int i : CanonicalOrder.order(tags))
+                metaOutputStream.writeData(contents[i]);
+        } else {
+            for (MetaData content : contents)
+                metaOutputStream.writeData(content);
+        }
+    }
+
+    @Override
+    public void serialize(MetaByteBuffer metaBuffer) throws NoMatchingDiscriminatorException {
+        metaBuffer.writeInt(tags.length);
+        if (metaBuffer.isCanonical()) {
+            for (int i : CanonicalOrder.order(tags))
+                metaBuffer.writeData(contents[i]);
+        } else {
+            for (MetaData content : contents)
+                metaBuffer.writeData(content);
+        }
+    }
+
+    @Override
+    public long byteSize() {
+        return size;
+    }
+
+    @Override
+    public long finalSize() {
+        return -1;
+    }
+
+    @Override
+    public MetaData capture() {
+        return this;
+    }
+}
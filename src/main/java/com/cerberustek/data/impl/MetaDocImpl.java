@@ -40,36 +40,6 @@ import java.util.*;
 
 public abstract class MetaDocImpl implements MetaDoc, MetaData {
 
-    protected HashMap<String, MetaTag> tags = new HashMap<>();
-
-    @Override
-    public MetaDoc clear() {
-        tags.clear();
-        return this;
-    }
-
-    @Override
-    public MetaDoc insert(MetaTag data) {
-        tags.put(data.getTag(), data);
-        return this;
-    }
-
-    @Override
-    public MetaDoc remove(String tag) {
-        this.tags.remove(tag);
-        return this;
-    }
-
-    @Override
-    public int size() {
-        return tags.size();
-    }
-
-    @Override
-    public MetaTag extract(String tag) {
-        return this.tags.get(tag);
-    }
-
     @Override
     public <T extends MetaTag> T extract(@NotNull String tag, Class<T> clazz) {
         MetaTag meta = extract(tag);
@@ -82,10 +52,18 @@ public abstract class MetaDocImpl implements MetaDoc, MetaData {
                 " of class: " + clazz + "!");
     }
 
-    @Override
-    @NotNull
-    public Iterator<MetaTag> iterator() {
-        return tags.values().iterator();
+    /**
+     * Inserts the value if this document does not contain a tag with
+     * the same name yet. Returns the tag which is stored under the name
+     * after the call.
+     * @param value value to insert
+     * @param clazz expected class of the stored tag
+     * @param <T> type of the tag
+     * @return stored tag
+     */
+    protected <T extends MetaTag> T insertIfAbsent(@NotNull T value, @NotNull Class<T> clazz) {
+        insert(value);
+        return value;
     }
 
     @Override
@@ -96,12 +74,12 @@ public abstract class MetaDocImpl implements MetaDoc, MetaData {
             stringBuilder.append("<").append(((MetaTag) this).getTag()).append(">");
         stringBuilder.append(':').append(' ').append('{');
 
-        if (tags.isEmpty()) {
+        if (size() == 0) {
             stringBuilder.append('}');
             return stringBuilder.toString();
         }
 
-        tags.values().forEach(value ->
+        forEach(value ->
             stringBuilder.append("\n\t").append(value.toString().replace("\n", "\n\t")));
         stringBuilder.append("\n}");
         return stringBuilder.toString();
@@ -117,11 +95,6 @@ public abstract class MetaDocImpl implements MetaDoc, MetaData {
         return CerberusData.pullResult(request, this, this);
     }
 
-    @Override
-    public boolean contains(String tag) {
-        return tags.containsKey(tag);
-    }
-
     @Override
     public StringTag extractString(@NotNull String tag) {
         return extract(tag, StringTag.class);
@@ -265,8 +238,7 @@ public abstract class MetaDocImpl implements MetaDoc, MetaData {
             return value;
 
         value = new StringTag(tag, "");
-        insert(value);
-        return value;
+        return insertIfAbsent(value, StringTag.class);
     }
 
     @Override
@@ -276,8 +248,7 @@ public abstract class MetaDocImpl implements MetaDoc, MetaData {
             return value;
 
         value = new BooleanTag(tag, false);
-        insert(value);
-        return value;
+        return insertIfAbsent(value, BooleanTag.class);
     }
 
     @Override
@@ -287,8 +258,7 @@ public abstract class MetaDocImpl implements MetaDoc, MetaData {
             return value;
 
         value = new ByteTag(tag, (byte) 0);
-        insert(value);
-        return value;
+        return insertIfAbsent(value, ByteTag.class);
     }
 
     @Override
@@ -298,8 +268,7 @@ public abstract class MetaDocImpl implements MetaDoc, MetaData {
             return value;
 
         value = new ShortTag(tag, (short) 0);
-        insert(value);
-        return value;
+        return insertIfAbsent(value, ShortTag.class);
     }
 
     @Override
@@ -309,8 +278,7 @@ public abstract class MetaDocImpl implements MetaDoc, MetaData {
             return value;
 
         value = new CharTag(tag, ' ');
-        insert(value);
-        return value;
+        return insertIfAbsent(value, CharTag.class);
     }
 
     @Override
@@ -320,8 +288,7 @@ public abstract class MetaDocImpl implements MetaDoc, MetaData {
             return value;
 
         value = new IntTag(tag, 0);
-        insert(value);
-        return value;
+        return insertIfAbsent(value, IntTag.class);
     }
 
     @Override
@@ -331,8 +298,7 @@ public abstract class MetaDocImpl implements MetaDoc, MetaData {
             return value;
 
         value = new LongTag(tag, 0L);
-        insert(value);
-        return value;
+        return insertIfAbsent(value, LongTag.class);
     }
 
     @Override
@@ -342,8 +308,7 @@ public abstract class MetaDocImpl implements MetaDoc, MetaData {
             return value;
 
         value = new FloatTag(tag, 0f);
-        insert(value);
-        return value;
+        return insertIfAbsent(value, FloatTag.class);
     }
 
     @Override
@@ -353,8 +318,7 @@ public abstract class MetaDocImpl implements MetaDoc, MetaData {
             return value;
 
         value = new DoubleTag(tag, 0d);
-        insert(value);
-        return value;
+        return insertIfAbsent(value, DoubleTag.class);
     }
 
     @Override
@@ -364,8 +328,7 @@ public abstract class MetaDocImpl implements MetaDoc, MetaData {
             return value;
 
         value = new ArrayTag<>(tag, new MetaData[0]);
-        insert(value);
-        return value;
+        return insertIfAbsent(value, ArrayTag.class);
     }
 
     @Override
@@ -375,8 +338,7 @@ public abstract class MetaDocImpl implements MetaDoc, MetaData {
             return value;
 
         value = new ListTag<>(tag);
-        insert(value);
-        return value;
+        return insertIfAbsent(value, ListTag.class);
     }
 
     @Override
@@ -386,8 +348,7 @@ public abstract class MetaDocImpl implements MetaDoc, MetaData {
             return value;
 
         value = new SetTag(tag);
-        insert(value);
-        return value;
+        return insertIfAbsent(value, SetTag.class);
     }
 
     @Override
@@ -397,8 +358,7 @@ public abstract class MetaDocImpl implements MetaDoc, MetaData {
             return value;
 
         value = new MapTag<>(tag);
-        insert(value);
-        return value;
+        return insertIfAbsent(value, MapTag.class);
     }
 
     @Override
@@ -408,8 +368,7 @@ public abstract class MetaDocImpl implements MetaDoc, MetaData {
             return value;
 
         value = new DocTag(tag);
-        insert(value);
-        return value;
+        return insertIfAbsent(value, DocTag.class);
     }
 
     @Override
@@ -419,8 +378,7 @@ public abstract class MetaDocImpl implements MetaDoc, MetaData {
             return value;
 
         value = new UUIDTag(tag, UUID.randomUUID());
-        insert(value);
-        return value;
+        return insertIfAbsent(value, UUIDTag.class);
     }
 
     @Override
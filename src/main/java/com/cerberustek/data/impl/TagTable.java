@@ -0,0 +1,344 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data.impl;
+
+import com.cerberustek.data.MetaTag;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Compact map of meta tags, which is keyed by the tag names of the
+ * stored meta tags. In contrast to a hash map, the table does not
+ * allocate an entry object per mapping, since the key is already
+ * stored inside of the meta tag itself.
+ *
+ * The tags are kept in a dense array in insertion order. Small tables
+ * are searched linearly; once a table holds {@value #INLINE_CAPACITY}
+ * or more tags, an open addressing index with linear probing is
+ * built on top of the dense array.
+ *
+ * The tag name of a meta tag must not change while it is stored
+ * inside of a table.
+ */
+public class TagTable extends AbstractMap<String, MetaTag> {
+
+    public static final int INLINE_CAPACITY = 8;
+
+    private static final MetaTag[] EMPTY = new MetaTag[0];
+
+    /** tags in insertion order; removed tags leave a null slot, as long as the index is used */
+    private MetaTag[] entries = EMPTY;
+    /** dense position + 1 of the tags, zero marks an empty slot */
+    private int[] index;
+    private int used;
+    private int size;
+    private int modCount;
+
+    public TagTable() {}
+
+    public TagTable(Map<String, ? extends MetaTag> other) {
+        for (MetaTag tag : other.values())
+            insert(tag);
+    }
+
+    /**
+     * Inserts the meta tag under its tag name. A tag with the same name
+     * is replaced at its current position.
+     * @param value meta tag
+     * @return replaced tag or null
+     */
+    public MetaTag insert(@NotNull MetaTag value) {
+        String tag = value.getTag();
+        int position = find(tag);
+        if (position >= 0) {
+            MetaTag old = entries[position];
+            entries[position] = value;
+            return old;
+        }
+
+        if (used == entries.length)
+            grow();
+        entries[used] = value;
+        if (index != null)
+            indexInsert(hash(tag), used);
+        used++;
+        size++;
+        modCount++;
+
+        if (index == null && size >= INLINE_CAPACITY)
+            rebuildIndex();
+        return null;
+    }
+
+    @Override
+    public MetaTag put(String key, MetaTag value) {
+        if (!Objects.equals(key, value.getTag()))
+            throw new IllegalArgumentException("Key \"" + key + "\" does not match the tag \"" + value.getTag() + "\"");
+        return insert(value);
+    }
+
+    @Override
+    public MetaTag get(Object key) {
+        if (key != null && !(key instanceof String))
+            return null;
+        int position = find((String) key);
+        return position >= 0 ? entries[position] : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public MetaTag remove(Object key) {
+        if (key != null && !(key instanceof String))
+            return null;
+        int position = find((String) key);
+        if (position < 0)
+            return null;
+
+        MetaTag old = entries[position];
+        removeAt(position, true);
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        entries = EMPTY;
+        index = null;
+        used = 0;
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    @NotNull
+    public Collection<MetaTag> values() {
+        return new AbstractCollection<MetaTag>() {
+
+            @Override
+            @NotNull
+            public Iterator<MetaTag> iterator() {
+                return new TableIterator<MetaTag>() {
+
+                    @Override
+                    MetaTag map(MetaTag tag) {
+                        return tag;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    @NotNull
+    public Set<Entry<String, MetaTag>> entrySet() {
+        return new AbstractSet<Entry<String, MetaTag>>() {
+
+            @Override
+            @NotNull
+            public Iterator<Entry<String, MetaTag>> iterator() {
+                return new TableIterator<Entry<String, MetaTag>>() {
+
+                    @Override
+                    Entry<String, MetaTag> map(MetaTag tag) {
+                        return new SimpleImmutableEntry<>(tag.getTag(), tag);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private static int hash(String tag) {
+        if (tag == null)
+            return 0;
+        int h = tag.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private int find(String tag) {
+        if (index == null) {
+            for (int i = 0; i < used; i++) {
+                MetaTag entry = entries[i];
+                if (entry != null && Objects.equals(entry.getTag(), tag))
+                    return i;
+            }
+            return -1;
+        }
+
+        int mask = index.length - 1;
+        for (int slot = hash(tag) & mask;; slot = (slot + 1) & mask) {
+            int position = index[slot];
+            if (position == 0)
+                return -1;
+            if (Objects.equals(entries[position - 1].getTag(), tag))
+                return position - 1;
+        }
+    }
+
+    private void removeAt(int position, boolean compact) {
+        modCount++;
+        size--;
+
+        if (index == null) {
+            // small tables are kept free of gaps
+            System.arraycopy(entries, position + 1, entries, position, used - position - 1);
+            entries[--used] = null;
+            return;
+        }
+
+        indexDelete(hash(entries[position].getTag()), position);
+        entries[position] = null;
+        if (position == used - 1)
+            used--;
+        if (compact && used - size > size)
+            compact();
+    }
+
+    private void grow() {
+        if (used > size) {
+            compact();
+            if (used < entries.length)
+                return;
+        }
+
+        int length = entries.length;
+        entries = Arrays.copyOf(entries, length < 4 ? length + 2 : length + (length >> 1));
+        if (index != null)
+            rebuildIndex();
+    }
+
+    private void compact() {
+        int target = 0;
+        for (int i = 0; i < used; i++) {
+            if (entries[i] != null)
+                entries[target++] = entries[i];
+        }
+        Arrays.fill(entries, target, used, null);
+        used = target;
+
+        if (entries.length > 2 * size + 2)
+            entries = Arrays.copyOf(entries, size + (size >> 1) + 2);
+        if (size < INLINE_CAPACITY)
+            index = null;
+        else
+            rebuildIndex();
+    }
+
+    private void rebuildIndex() {
+        int capacity = Integer.highestOneBit(Math.max(entries.length, INLINE_CAPACITY) * 2 - 1) << 1;
+        index = new int[capacity];
+        for (int i = 0; i < used; i++) {
+            if (entries[i] != null)
+                indexInsert(hash(entries[i].getTag()), i);
+        }
+    }
+
+    private void indexInsert(int hash, int position) {
+        int mask = index.length - 1;
+        int slot = hash & mask;
+        while (index[slot] != 0)
+            slot = (slot + 1) & mask;
+        index[slot] = position + 1;
+    }
+
+    private void indexDelete(int hash, int position) {
+        int mask = index.length - 1;
+        int hole = hash & mask;
+        while (index[hole] != position + 1)
+            hole = (hole + 1) & mask;
+
+        // shift following entries back, so probing never stops early at the hole
+        for (int next = (hole + 1) & mask; index[next] != 0; next = (next + 1) & mask) {
+            int home = hash(entries[index[next] - 1].getTag()) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                index[hole] = index[next];
+                hole = next;
+            }
+        }
+        index[hole] = 0;
+    }
+
+    private abstract class TableIterator<T> implements Iterator<T> {
+
+        private int cursor;
+        private int last = -1;
+        private int expectedModCount = modCount;
+
+        abstract T map(MetaTag tag);
+
+        @Override
+        public boolean hasNext() {
+            while (cursor < used && entries[cursor] == null)
+                cursor++;
+            return cursor < used;
+        }
+
+        @Override
+        public T next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (!hasNext())
+                throw new NoSuchElementException();
+            last = cursor++;
+            return map(entries[last]);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+
+            removeAt(last, false);
+            // the following tag has either been shifted to the removed position, or the position is empty now
+            cursor = last;
+            last = -1;
+            expectedModCount = modCount;
+        }
+    }
+}
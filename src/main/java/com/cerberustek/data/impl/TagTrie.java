@@ -0,0 +1,404 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data.impl;
+
+import com.cerberustek.data.MetaTag;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Persistent hash array mapped trie, which maps the tags of meta tags
+ * to the meta tags themselves. Tries are immutable; every modification
+ * returns a new trie which shares all untouched nodes with the trie
+ * it was derived from, so modifications only copy the path from the
+ * root to the modified entry.
+ */
+public final class TagTrie implements Iterable<MetaTag> {
+
+    public static final TagTrie EMPTY = new TagTrie(BitmapNode.EMPTY, 0);
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final int MAX_DEPTH = 8;
+
+    private final Node root;
+    private final int size;
+
+    private TagTrie(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    public MetaTag get(String tag) {
+        return root.get(tag, hash(tag), 0);
+    }
+
+    public boolean contains(String tag) {
+        return get(tag) != null;
+    }
+
+    public TagTrie put(MetaTag value) {
+        String tag = value.getTag();
+        boolean[] added = new boolean[1];
+        Node node = root.put(tag, hash(tag), 0, value, added);
+        if (node == root)
+            return this;
+        return new TagTrie(node, added[0] ? size + 1 : size);
+    }
+
+    public TagTrie remove(String tag) {
+        Node node = root.remove(tag, hash(tag), 0);
+        if (node == root)
+            return this;
+        return node == null ? EMPTY : new TagTrie(node, size - 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    @NotNull
+    public Iterator<MetaTag> iterator() {
+        return new TrieIterator(root);
+    }
+
+    /**
+     * Returns an unmodifiable map view of this trie.
+     * @return map view
+     */
+    public Map<String, MetaTag> asMap() {
+        return new AbstractMap<String, MetaTag>() {
+
+            @Override
+            public MetaTag get(Object key) {
+                return key == null || key instanceof String ? TagTrie.this.get((String) key) : null;
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return get(key) != null;
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            @NotNull
+            public Set<Entry<String, MetaTag>> entrySet() {
+                return new AbstractSet<Entry<String, MetaTag>>() {
+
+                    @Override
+                    @NotNull
+                    public Iterator<Entry<String, MetaTag>> iterator() {
+                        Iterator<MetaTag> values = TagTrie.this.iterator();
+                        return new Iterator<Entry<String, MetaTag>>() {
+
+                            @Override
+                            public boolean hasNext() {
+                                return values.hasNext();
+                            }
+
+                            @Override
+                            public Entry<String, MetaTag> next() {
+                                MetaTag value = values.next();
+                                return new SimpleImmutableEntry<>(value.getTag(), value);
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return size;
+                    }
+                };
+            }
+        };
+    }
+
+    private static int hash(String tag) {
+        if (tag == null)
+            return 0;
+        int h = tag.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private static Node merge(MetaTag first, int firstHash, MetaTag second, int secondHash, int shift) {
+        if (firstHash == secondHash)
+            return new CollisionNode(firstHash, new MetaTag[] {first, second});
+
+        boolean[] added = new boolean[1];
+        return BitmapNode.EMPTY
+                .put(first.getTag(), firstHash, shift, first, added)
+                .put(second.getTag(), secondHash, shift, second, added);
+    }
+
+    private interface Node {
+
+        MetaTag get(String tag, int hash, int shift);
+        Node put(String tag, int hash, int shift, MetaTag value, boolean[] added);
+        Node remove(String tag, int hash, int shift);
+        Object[] slots();
+    }
+
+    /**
+     * Node which holds up to 32 slots, one for each value of the hash
+     * bits at the depth of the node. Each slot contains either a meta
+     * tag or a child node.
+     */
+    private static final class BitmapNode implements Node {
+
+        private static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+        private final Object[] slots;
+
+        private BitmapNode(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        public MetaTag get(String tag, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0)
+                return null;
+
+            Object slot = slots[index(bit)];
+            if (slot instanceof Node)
+                return ((Node) slot).get(tag, hash, shift + BITS);
+            MetaTag value = (MetaTag) slot;
+            return Objects.equals(value.getTag(), tag) ? value : null;
+        }
+
+        @Override
+        public Node put(String tag, int hash, int shift, MetaTag value, boolean[] added) {
+            int bit = bit(hash, shift);
+            int index = index(bit);
+
+            if ((bitmap & bit) == 0) {
+                Object[] copy = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, copy, 0, index);
+                copy[index] = value;
+                System.arraycopy(slots, index, copy, index + 1, slots.length - index);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, copy);
+            }
+
+            Object slot = slots[index];
+            Object replacement;
+            if (slot instanceof Node) {
+                Node child = ((Node) slot).put(tag, hash, shift + BITS, value, added);
+                if (child == slot)
+                    return this;
+                replacement = child;
+            } else {
+                MetaTag current = (MetaTag) slot;
+                if (current == value)
+                    return this;
+
+                if (Objects.equals(current.getTag(), tag)) {
+                    replacement = value;
+                } else {
+                    replacement = merge(current, hash(current.getTag()), value, hash, shift + BITS);
+                    added[0] = true;
+                }
+            }
+
+            Object[] copy = slots.clone();
+            copy[index] = replacement;
+            return new BitmapNode(bitmap, copy);
+        }
+
+        @Override
+        public Node remove(String tag, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0)
+                return this;
+
+            int index = index(bit);
+            Object slot = slots[index];
+            if (slot instanceof Node) {
+                Node child = ((Node) slot).remove(tag, hash, shift + BITS);
+                if (child == slot)
+                    return this;
+                if (child != null) {
+                    Object[] copy = slots.clone();
+                    copy[index] = child;
+                    return new BitmapNode(bitmap, copy);
+                }
+            } else if (!Objects.equals(((MetaTag) slot).getTag(), tag))
+                return this;
+
+            if (slots.length == 1)
+                return null;
+            Object[] copy = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, copy, 0, index);
+            System.arraycopy(slots, index + 1, copy, index, copy.length - index);
+            return new BitmapNode(bitmap & ~bit, copy);
+        }
+
+        @Override
+        public Object[] slots() {
+            return slots;
+        }
+    }
+
+    /**
+     * Node for tags with identical hash codes.
+     */
+    private static final class CollisionNode implements Node {
+
+        private final int hash;
+        private final MetaTag[] values;
+
+        private CollisionNode(int hash, MetaTag[] values) {
+            this.hash = hash;
+            this.values = values;
+        }
+
+        private int find(String tag) {
+            for (int i = 0; i < values.length; i++) {
+                if (Objects.equals(values[i].getTag(), tag))
+                    return i;
+            }
+            return -1;
+        }
+
+        @Override
+        public MetaTag get(String tag, int hash, int shift) {
+            if (hash != this.hash)
+                return null;
+            int index = find(tag);
+            return index < 0 ? null : values[index];
+        }
+
+        @Override
+        public Node put(String tag, int hash, int shift, MetaTag value, boolean[] added) {
+            if (hash != this.hash) {
+                // a tag with a different hash ended up at this depth, so the collision node has to be nested
+                return new BitmapNode(bit(this.hash, shift), new Object[] {this})
+                        .put(tag, hash, shift, value, added);
+            }
+
+            int index = find(tag);
+            if (index >= 0) {
+                if (values[index] == value)
+                    return this;
+                MetaTag[] copy = values.clone();
+                copy[index] = value;
+                return new CollisionNode(hash, copy);
+            }
+
+            MetaTag[] copy = Arrays.copyOf(values, values.length + 1);
+            copy[values.length] = value;
+            added[0] = true;
+            return new CollisionNode(hash, copy);
+        }
+
+        @Override
+        public Node remove(String tag, int hash, int shift) {
+            if (hash != this.hash)
+                return this;
+            int index = find(tag);
+            if (index < 0)
+                return this;
+            if (values.length == 1)
+                return null;
+
+            MetaTag[] copy = new MetaTag[values.length - 1];
+            System.arraycopy(values, 0, copy, 0, index);
+            System.arraycopy(values, index + 1, copy, index, copy.length - index);
+            return new CollisionNode(hash, copy);
+        }
+
+        @Override
+        public Object[] slots() {
+            return values;
+        }
+    }
+
+    private static final class TrieIterator implements Iterator<MetaTag> {
+
+        private final Object[][] stack = new Object[MAX_DEPTH + 1][];
+        private final int[] positions = new int[MAX_DEPTH + 1];
+        private int depth;
+        private MetaTag next;
+
+        private TrieIterator(Node root) {
+            stack[0] = root.slots();
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (depth >= 0) {
+                Object[] slots = stack[depth];
+                if (positions[depth] >= slots.length) {
+                    depth--;
+                    continue;
+                }
+
+                Object slot = slots[positions[depth]++];
+                if (slot instanceof Node) {
+                    depth++;
+                    stack[depth] = ((Node) slot).slots();
+                    positions[depth] = 0;
+                } else {
+                    next = (MetaTag) slot;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public MetaTag next() {
+            if (next == null)
+                throw new NoSuchElementException();
+            MetaTag value = next;
+            advance();
+            return value;
+        }
+    }
+}
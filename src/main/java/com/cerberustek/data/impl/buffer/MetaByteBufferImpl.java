@@ -24,9 +24,11 @@ package com.cerberustek.data.impl.buffer;
 
 import com.cerberustek.CerberusData;
 import com.cerberustek.data.*;
+import com.cerberustek.data.impl.CapturedData;
 import com.cerberustek.exception.NoMatchingDiscriminatorException;
 import com.cerberustek.exception.UnknownDiscriminatorException;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.util.logging.Level;
 
@@ -34,14 +36,32 @@ public class MetaByteBufferImpl implements MetaByteBuffer {
 
     private final DiscriminatorMap discriminatorMap;
     private final ByteBuffer buffer;
+    private final boolean canonical;
 
     public MetaByteBufferImpl(DiscriminatorMap discriminatorMap, int length) {
         this(discriminatorMap, ByteBuffer.allocateDirect(length));
     }
 
     public MetaByteBufferImpl(DiscriminatorMap discriminatorMap, ByteBuffer buffer) {
+        this(discriminatorMap, buffer, false);
+    }
+
+    /**
+     * Creates a new meta byte buffer, which writes the children of
+     * unordered containers in canonical order, if requested.
+     * @param discriminatorMap discriminator map
+     * @param buffer underlying buffer
+     * @param canonical true, if the buffer should be canonical
+     */
+    public MetaByteBufferImpl(DiscriminatorMap discriminatorMap, ByteBuffer buffer, boolean canonical) {
         this.discriminatorMap = discriminatorMap;
         this.buffer = buffer;
+        this.canonical = canonical;
+    }
+
+    @Override
+    public boolean isCanonical() {
+        return canonical;
     }
 
     @Override
@@ -212,17 +232,19 @@ public class MetaByteBufferImpl implements MetaByteBuffer {
     @Override
     public void writeData(MetaData data) throws NoMatchingDiscriminatorException {
         if (data != null) {
-            short discriminator = discriminatorMap.getDiscriminator(data.getClass());
+            MetaData source = CapturedData.source(data);
+            short discriminator = discriminatorMap.getDiscriminator(source.getClass());
 
             if (discriminator != CerberusData.CERBERUS_NULL) {
+                MetaData content = data.capture();
                 writeShort(discriminator);
-                if (data.finalSize() < 0)
-                    writeLong(CerberusData.size(data));
-                if (data instanceof MetaTag)
-                    writeUTF(((MetaTag) data).getTag());
-                data.serialize(this);
+                if (source.finalSize() < 0)
+                    writeLong(CerberusData.size(content));
+                if (source instanceof MetaTag)
+                    writeUTF(((MetaTag) source).getTag());
+                content.serialize(this);
             } else
-                throw new NoMatchingDiscriminatorException(data.getClass());
+                throw new NoMatchingDiscriminatorException(source.getClass());
         } else {
             writeShort(CerberusData.CERBERUS_NULL);
         }
@@ -288,4 +310,22 @@ public class MetaByteBufferImpl implements MetaByteBuffer {
     public int capacity() {
         return buffer.capacity();
     }
+
+    /**
+     * Returns a view of the next <code>length</code> bytes of this
+     * buffer. Changes to the view are visible in this buffer and vice
+     * versa.
+     * @param length length of the view
+     * @return view
+     */
+    @Override
+    public ByteBuffer slice(int length) {
+        if (length > buffer.remaining())
+            throw new BufferOverflowException();
+
+        ByteBuffer view = buffer.slice();
+        view.limit(length);
+        buffer.position(buffer.position() + length);
+        return view;
+    }
 }
@@ -0,0 +1,86 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data.impl.compression;
+
+import com.cerberustek.data.MetaInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream over the next <code>length</code> bytes of a meta
+ * input stream. The stream never reads past its length, so it can be
+ * handed to buffering readers without them consuming the data that
+ * follows.
+ */
+public class BoundedInputStream extends InputStream {
+
+    private final MetaInputStream inputStream;
+    private long remaining;
+
+    public BoundedInputStream(MetaInputStream inputStream, long length) {
+        this.inputStream = inputStream;
+        this.remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (remaining <= 0)
+            return -1;
+        remaining--;
+        return inputStream.readUnsignedByte();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0)
+            return 0;
+        if (remaining <= 0)
+            return -1;
+
+        int read = inputStream.read(buffer, offset, (int) Math.min(length, remaining));
+        if (read > 0)
+            remaining -= read;
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return 0;
+    }
+
+    /**
+     * Skips all bytes that have not been read yet.
+     * @throws IOException failed to skip
+     */
+    public void skipRemaining() throws IOException {
+        if (remaining > 0)
+            inputStream.skipFully(remaining);
+        remaining = 0;
+    }
+
+    public long getRemaining() {
+        return remaining;
+    }
+}
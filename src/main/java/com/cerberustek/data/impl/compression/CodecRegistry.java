@@ -0,0 +1,104 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data.impl.compression;
+
+import com.cerberustek.data.CompressionCodec;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps compression codecs to the ids, which identify them in the
+ * serialized data of compression elements. Just like with the
+ * discriminator map, codecs are registered by their class, together
+ * with an instance that is used to decompress data of that id.
+ *
+ * The dictionary codec of the default registry decompresses data with
+ * the dictionaries of the default dictionary registry, but can not
+ * compress data itself. Data is compressed with a dictionary codec
+ * created from a trained dictionary instead.
+ */
+public class CodecRegistry {
+
+    public static final short STORE = 0;
+    public static final short DEFLATE = 1;
+    public static final short LZ = 2;
+    public static final short DICTIONARY = 3;
+    public static final short UNKNOWN = -1;
+
+    private static final CodecRegistry DEFAULT = genDefaultCodecs();
+
+    private final ConcurrentHashMap<Class<? extends CompressionCodec>, Short> ids = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Short, CompressionCodec> codecs = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the registry that is used by compression elements to look
+     * up the id of their codec, and by the compression builders that
+     * have not been created with a registry of their own.
+     * @return default registry
+     */
+    public static CodecRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    public static CodecRegistry genDefaultCodecs() {
+        CodecRegistry registry = new CodecRegistry();
+        registry.registerCodec(StoreCodec.class, new StoreCodec(), STORE);
+        registry.registerCodec(DeflateCodec.class, new DeflateCodec(), DEFLATE);
+        registry.registerCodec(LzCodec.class, new LzCodec(), LZ);
+        registry.registerCodec(DictionaryDeflateCodec.class,
+                new DictionaryDeflateCodec(DictionaryRegistry.getDefault()), DICTIONARY);
+        return registry;
+    }
+
+    public synchronized <T extends CompressionCodec> void registerCodec(Class<T> clazz, T codec, short id) {
+        if (id < 0)
+            throw new IllegalArgumentException("Codec ids can not be negative!");
+
+        if (!ids.containsKey(clazz) && !codecs.containsKey(id)) {
+            ids.put(clazz, id);
+            codecs.put(id, codec);
+        }
+    }
+
+    public synchronized void unregisterCodec(Class<? extends CompressionCodec> clazz) {
+        Short id = ids.remove(clazz);
+        if (id != null)
+            codecs.remove(id);
+    }
+
+    public short getId(Class<? extends CompressionCodec> clazz) {
+        Short id = ids.get(clazz);
+        return id != null ? id : UNKNOWN;
+    }
+
+    public CompressionCodec getCodec(short id) {
+        return codecs.get(id);
+    }
+
+    public Collection<Class<? extends CompressionCodec>> getRegisteredCodecs() {
+        return Collections.unmodifiableCollection(ids.keySet());
+    }
+}
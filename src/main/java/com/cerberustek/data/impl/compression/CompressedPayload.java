@@ -0,0 +1,166 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data.impl.compression;
+
+import com.cerberustek.CerberusData;
+import com.cerberustek.data.CompressionCodec;
+import com.cerberustek.data.DiscriminatorMap;
+import com.cerberustek.data.MetaByteBuffer;
+import com.cerberustek.data.MetaData;
+import com.cerberustek.data.MetaInputStream;
+import com.cerberustek.exception.UnknownDiscriminatorException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.logging.Level;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the payload of compression elements. Payloads are written as
+ * <code>{int<Marker>, short<Codec>, int<RawLength>, int<CompressedLength>, byte[]<Data>}</code>,
+ * where the marker is always negative. Payloads without marker, as
+ * written before codecs could be chosen, start with the raw length and
+ * are always deflated.
+ */
+public final class CompressedPayload {
+
+    public static final int CODEC_MARKER = -1;
+    public static final int STREAM_BUFFER_SIZE = 8192;
+
+    private CompressedPayload() {}
+
+    /**
+     * Decompresses the meta data from the input stream. The data is
+     * decoded while it is decompressed, so it is never held in memory as
+     * a whole. All of the compressed bytes are consumed, even if the
+     * data could not be decompressed.
+     * @param inputStream input stream
+     * @param registry codec registry
+     * @param factory creates the compression element from the data and
+     *                its codec
+     * @param <T> type of the compression element
+     * @return compression element, or null if the payload could not be
+     *          decompressed
+     * @throws IOException failed to read from the stream
+     * @throws UnknownDiscriminatorException the decompressed data is unknown
+     */
+    public static <T> T read(MetaInputStream inputStream, CodecRegistry registry,
+                             Factory<T> factory) throws IOException, UnknownDiscriminatorException {
+
+        short id = CodecRegistry.DEFLATE;
+        if (inputStream.readInt() < 0) {
+            id = inputStream.readShort();
+            inputStream.readInt();
+        }
+        int length = inputStream.readInt();
+
+        BoundedInputStream bounded = new BoundedInputStream(inputStream, length);
+        try {
+            return decode(bounded, id, inputStream.getDiscriminatorMap(), registry, factory);
+        } finally {
+            bounded.skipRemaining();
+        }
+    }
+
+    public static <T> T read(MetaByteBuffer buffer, CodecRegistry registry,
+                             Factory<T> factory) throws UnknownDiscriminatorException {
+
+        short id = CodecRegistry.DEFLATE;
+        if (buffer.readInt() < 0) {
+            id = buffer.readShort();
+            buffer.readInt();
+        }
+        byte[] data = new byte[buffer.readInt()];
+        buffer.read(data);
+
+        try {
+            return decode(new ByteArrayInputStream(data), id, buffer.getDiscriminatorMap(), registry, factory);
+        } catch (IOException e) {
+            CerberusData.getLogger().log(Level.WARNING, "failed to read compressed data: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the compressed payload without decompressing it.
+     * @param inputStream input stream
+     * @param registry codec registry
+     * @param factory creates the lazy compression element
+     * @param <T> type of the compression element
+     * @return compression element
+     * @throws IOException failed to read from the stream
+     */
+    public static <T> T readLazy(MetaInputStream inputStream, CodecRegistry registry, LazyFactory<T> factory) throws IOException {
+        short id = CodecRegistry.DEFLATE;
+        int rawLength = inputStream.readInt();
+        if (rawLength < 0) {
+            id = inputStream.readShort();
+            rawLength = inputStream.readInt();
+        }
+        byte[] data = new byte[inputStream.readInt()];
+        inputStream.readFully(data);
+        return factory.create(registry.getCodec(id), id, rawLength, data, inputStream.getDiscriminatorMap());
+    }
+
+    public static <T> T readLazy(MetaByteBuffer buffer, CodecRegistry registry, LazyFactory<T> factory) {
+        short id = CodecRegistry.DEFLATE;
+        int rawLength = buffer.readInt();
+        if (rawLength < 0) {
+            id = buffer.readShort();
+            rawLength = buffer.readInt();
+        }
+        byte[] data = new byte[buffer.readInt()];
+        buffer.read(data);
+        return factory.create(registry.getCodec(id), id, rawLength, data, buffer.getDiscriminatorMap());
+    }
+
+    private static <T> T decode(InputStream inputStream, short id, DiscriminatorMap map, CodecRegistry registry,
+                                Factory<T> factory) throws IOException, UnknownDiscriminatorException {
+
+        CompressionCodec codec = registry.getCodec(id);
+        if (codec == null) {
+            CerberusData.getLogger().log(Level.WARNING, "failed to decompress data with unknown codec " + id);
+            return null;
+        }
+
+        try (InputStream decompressed = codec.decompress(inputStream)) {
+            MetaData data = CerberusData.createInputStream(decompressed, map).readData();
+            return factory.create(data, codec, id);
+        } catch (ZipException e) {
+            CerberusData.getLogger().log(Level.WARNING, "failed to decompress data: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public interface Factory<T> {
+
+        T create(MetaData data, CompressionCodec codec, short codecId);
+    }
+
+    public interface LazyFactory<T> {
+
+        T create(CompressionCodec codec, short codecId, int rawLength, byte[] data, DiscriminatorMap discriminatorMap);
+    }
+}
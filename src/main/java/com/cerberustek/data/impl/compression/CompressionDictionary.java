@@ -0,0 +1,86 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data.impl.compression;
+
+import java.util.Arrays;
+import java.util.zip.Adler32;
+
+/**
+ * Preset dictionary for deflate compression. Deflate streams, which
+ * have been compressed with a dictionary, reference it by the Adler-32
+ * checksum of its contents, which is used as id of the dictionary.
+ */
+public final class CompressionDictionary {
+
+    /**
+     * Deflate can only reference the last 32 KiB of a dictionary.
+     */
+    public static final int MAX_SIZE = 32 * 1024;
+
+    private final int id;
+    private final byte[] data;
+
+    public CompressionDictionary(byte[] data) {
+        if (data.length == 0)
+            throw new IllegalArgumentException("Compression dictionaries can not be empty!");
+        if (data.length > MAX_SIZE)
+            data = Arrays.copyOfRange(data, data.length - MAX_SIZE, data.length);
+
+        Adler32 adler = new Adler32();
+        adler.update(data);
+        this.id = (int) adler.getValue();
+        this.data = data;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the contents of this dictionary, which must not be modified.
+     * @return dictionary
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    public int size() {
+        return data.length;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || obj.getClass() != getClass())
+            return false;
+        CompressionDictionary that = (CompressionDictionary) obj;
+        return id == that.id && Arrays.equals(data, that.data);
+    }
+
+    @Override
+    public int hashCode() {
+        return id;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data.impl.compression;
+
+import com.cerberustek.data.CompressionCodec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Deflate codec with a configurable compression level. All deflate
+ * levels share the same codec id, since the level is only needed to
+ * compress the data.
+ */
+public class DeflateCodec implements CompressionCodec {
+
+    public static final int STREAM_BUFFER_SIZE = 8192;
+
+    private final DeflaterPool deflaters;
+    private final InflaterPool inflaters;
+
+    public DeflateCodec(DeflaterPool deflaters, InflaterPool inflaters) {
+        this.deflaters = deflaters;
+        this.inflaters = inflaters;
+    }
+
+    public DeflateCodec(int level) {
+        this(level == Deflater.DEFAULT_COMPRESSION ? DeflaterPool.getDefault()
+                : new DeflaterPool(level, Runtime.getRuntime().availableProcessors() * 2), InflaterPool.getDefault());
+    }
+
+    public DeflateCodec() {
+        this(DeflaterPool.getDefault(), InflaterPool.getDefault());
+    }
+
+    @Override
+    public OutputStream compress(OutputStream outputStream) {
+        Deflater deflater = deflaters.acquire();
+        return new DeflaterOutputStream(outputStream, deflater, STREAM_BUFFER_SIZE) {
+
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (closed)
+                    return;
+                closed = true;
+                try {
+                    finish();
+                    out.flush();
+                } finally {
+                    deflaters.release(deflater);
+                }
+            }
+        };
+    }
+
+    @Override
+    public InputStream decompress(InputStream inputStream) {
+        Inflater inflater = inflaters.acquire();
+        return new InflaterInputStream(inputStream, inflater, STREAM_BUFFER_SIZE) {
+
+            private boolean closed;
+
+            @Override
+            public void close() {
+                if (closed)
+                    return;
+                closed = true;
+                inflaters.release(inflater);
+            }
+        };
+    }
+
+    public int getLevel() {
+        return deflaters.getLevel();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data.impl.compression;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.Deflater;
+
+/**
+ * Thread safe pool of deflaters. Creating a deflater allocates a
+ * considerable amount of native memory, which is only released once
+ * the deflater is ended, so deflaters should be reused rather than
+ * created for every compressed element.
+ *
+ * Deflaters that are released while the pool is full are ended.
+ */
+public class DeflaterPool {
+
+    private static final DeflaterPool DEFAULT = new DeflaterPool(Deflater.DEFAULT_COMPRESSION,
+            Runtime.getRuntime().availableProcessors() * 2);
+
+    private final int level;
+    private final ArrayBlockingQueue<Deflater> idle;
+
+    public DeflaterPool(int level, int capacity) {
+        this.level = level;
+        this.idle = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Creates a pool, which hands out the specified deflater first,
+     * and new deflaters with the default compression level whenever the
+     * specified deflater is in use.
+     * @param deflater deflater
+     */
+    public DeflaterPool(Deflater deflater) {
+        this(Deflater.DEFAULT_COMPRESSION, 1);
+        idle.offer(deflater);
+    }
+
+    public static DeflaterPool getDefault() {
+        return DEFAULT;
+    }
+
+    public Deflater acquire() {
+        Deflater deflater = idle.poll();
+        return deflater != null ? deflater : new Deflater(level);
+    }
+
+    public void release(Deflater deflater) {
+        deflater.reset();
+        if (!idle.offer(deflater))
+            deflater.end();
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getIdle() {
+        return idle.size();
+    }
+}
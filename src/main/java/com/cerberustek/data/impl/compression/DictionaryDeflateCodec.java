@@ -0,0 +1,153 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data.impl.compression;
+
+import com.cerberustek.data.CompressionCodec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Deflate codec with a preset dictionary. Small payloads do not contain
+ * enough repetitions to compress well on their own, but usually share
+ * a lot of their content with other payloads of the same kind, like
+ * tag names and common values. A dictionary trained on such payloads
+ * primes the deflater with that content.
+ *
+ * The compressed data references the dictionary by its id, so data is
+ * decompressed with whatever dictionary of that id is registered in the
+ * dictionary registry of the decompressing codec.
+ */
+public class DictionaryDeflateCodec implements CompressionCodec {
+
+    private final CompressionDictionary dictionary;
+    private final DictionaryRegistry registry;
+    private final DeflaterPool deflaters;
+    private final InflaterPool inflaters;
+
+    /**
+     * Creates a codec, which compresses data with the dictionary. The
+     * dictionary is registered in the default dictionary registry.
+     * @param dictionary dictionary
+     * @param level compression level
+     */
+    public DictionaryDeflateCodec(CompressionDictionary dictionary, int level) {
+        this.dictionary = dictionary;
+        this.registry = DictionaryRegistry.getDefault();
+        this.deflaters = level == Deflater.DEFAULT_COMPRESSION ? DeflaterPool.getDefault()
+                : new DeflaterPool(level, Runtime.getRuntime().availableProcessors() * 2);
+        this.inflaters = InflaterPool.getDefault();
+
+        if (!registry.registerDictionary(dictionary))
+            throw new IllegalArgumentException("A different dictionary with id " + dictionary.getId() + " is already registered!");
+    }
+
+    public DictionaryDeflateCodec(CompressionDictionary dictionary) {
+        this(dictionary, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Creates a codec, which decompresses data with the dictionaries of
+     * the registry. Since the codec does not hold a dictionary, it can
+     * not compress data.
+     * @param registry dictionary registry
+     */
+    public DictionaryDeflateCodec(DictionaryRegistry registry) {
+        this.dictionary = null;
+        this.registry = registry;
+        this.deflaters = DeflaterPool.getDefault();
+        this.inflaters = InflaterPool.getDefault();
+    }
+
+    @Override
+    public OutputStream compress(OutputStream outputStream) throws IOException {
+        if (dictionary == null)
+            throw new IOException("Dictionary codec has no dictionary to compress with! Create the codec with a trained dictionary.");
+
+        Deflater deflater = deflaters.acquire();
+        deflater.setDictionary(dictionary.getData());
+
+        return new DeflaterOutputStream(outputStream, deflater, DeflateCodec.STREAM_BUFFER_SIZE) {
+
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (closed)
+                    return;
+                closed = true;
+                try {
+                    finish();
+                    out.flush();
+                } finally {
+                    deflaters.release(deflater);
+                }
+            }
+        };
+    }
+
+    @Override
+    public InputStream decompress(InputStream inputStream) {
+        Inflater inflater = inflaters.acquire();
+        return new InflaterInputStream(inputStream, inflater, DeflateCodec.STREAM_BUFFER_SIZE) {
+
+            private boolean closed;
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                if (read < 0 && inflater.needsDictionary()) {
+                    CompressionDictionary dictionary = registry.getDictionary(inflater.getAdler());
+                    if (dictionary == null)
+                        throw new ZipException("Missing compression dictionary " + Integer.toHexString(inflater.getAdler()));
+                    inflater.setDictionary(dictionary.getData());
+                    read = super.read(buffer, offset, length);
+                }
+                return read;
+            }
+
+            @Override
+            public void close() {
+                if (closed)
+                    return;
+                closed = true;
+                inflaters.release(inflater);
+            }
+        };
+    }
+
+    public CompressionDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public DictionaryRegistry getRegistry() {
+        return registry;
+    }
+}
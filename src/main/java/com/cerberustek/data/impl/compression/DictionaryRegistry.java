@@ -0,0 +1,66 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data.impl.compression;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionaries, which are available to decompress dictionary deflated
+ * data, by their id.
+ */
+public class DictionaryRegistry {
+
+    private static final DictionaryRegistry DEFAULT = new DictionaryRegistry();
+
+    private final ConcurrentHashMap<Integer, CompressionDictionary> dictionaries = new ConcurrentHashMap<>();
+
+    public static DictionaryRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Registers the dictionary. If a different dictionary with the same
+     * id has already been registered, the dictionary is not registered.
+     * @param dictionary dictionary
+     * @return success
+     */
+    public boolean registerDictionary(CompressionDictionary dictionary) {
+        CompressionDictionary previous = dictionaries.putIfAbsent(dictionary.getId(), dictionary);
+        return previous == null || previous.equals(dictionary);
+    }
+
+    public void unregisterDictionary(int id) {
+        dictionaries.remove(id);
+    }
+
+    public CompressionDictionary getDictionary(int id) {
+        return dictionaries.get(id);
+    }
+
+    public Collection<CompressionDictionary> getDictionaries() {
+        return Collections.unmodifiableCollection(dictionaries.values());
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data.impl.compression;
+
+import com.cerberustek.CerberusData;
+import com.cerberustek.data.DiscriminatorMap;
+import com.cerberustek.data.MetaData;
+import com.cerberustek.data.MetaOutputStream;
+import com.cerberustek.exception.NoMatchingDiscriminatorException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Trains compression dictionaries from sample data.
+ *
+ * The samples are serialized, and every run of bytes that occurs in a
+ * sufficient share of the samples becomes a candidate segment. The
+ * segments that are shared by the most samples are put into the
+ * dictionary, with the most common segments at its end, since deflate
+ * encodes references to closer data with fewer bits.
+ */
+public final class DictionaryTrainer {
+
+    private static final int GRAM = 8;
+
+    private DictionaryTrainer() {}
+
+    public static CompressionDictionary train(Collection<? extends MetaData> samples, DiscriminatorMap discriminatorMap)
+            throws NoMatchingDiscriminatorException {
+
+        return train(samples, discriminatorMap, CompressionDictionary.MAX_SIZE);
+    }
+
+    /**
+     * Trains a dictionary from the samples.
+     * @param samples sample data
+     * @param discriminatorMap discriminator map used to serialize the samples
+     * @param maxSize maximum size of the dictionary
+     * @return dictionary, or null if the samples do not share any content
+     * @throws NoMatchingDiscriminatorException a sample can not be serialized
+     */
+    public static CompressionDictionary train(Collection<? extends MetaData> samples, DiscriminatorMap discriminatorMap, int maxSize)
+            throws NoMatchingDiscriminatorException {
+
+        ArrayList<byte[]> encoded = new ArrayList<>(samples.size());
+        for (MetaData sample : samples)
+            encoded.add(encode(sample, discriminatorMap));
+
+        // count the samples each gram occurs in
+        HashMap<Long, Integer> counts = new HashMap<>();
+        HashSet<Long> seen = new HashSet<>();
+        for (byte[] sample : encoded) {
+            seen.clear();
+            for (int i = 0; i + GRAM <= sample.length; i++) {
+                long gram = gram(sample, i);
+                if (seen.add(gram))
+                    counts.merge(gram, 1, Integer::sum);
+            }
+        }
+        int threshold = Math.max(2, encoded.size() / 20);
+
+        // collect maximal runs of common grams as segments
+        HashMap<Segment, Segment> segments = new HashMap<>();
+        for (byte[] sample : encoded) {
+            int i = 0;
+            while (i + GRAM <= sample.length) {
+                if (counts.get(gram(sample, i)) < threshold) {
+                    i++;
+                    continue;
+                }
+
+                int start = i;
+                long score = 0;
+                while (i + GRAM <= sample.length) {
+                    int count = counts.get(gram(sample, i));
+                    if (count < threshold)
+                        break;
+                    score += count;
+                    i++;
+                }
+
+                Segment segment = new Segment(Arrays.copyOfRange(sample, start, i + GRAM - 1), score);
+                segments.putIfAbsent(segment, segment);
+            }
+        }
+        if (segments.isEmpty())
+            return null;
+
+        ArrayList<Segment> ranked = new ArrayList<>(segments.keySet());
+        ranked.sort((a, b) -> {
+            int compare = Long.compare(b.score, a.score);
+            return compare != 0 ? compare : Arrays.compare(a.data, b.data);
+        });
+
+        ArrayList<Segment> chosen = new ArrayList<>();
+        int size = 0;
+        for (Segment segment : ranked) {
+            if (size + segment.data.length > maxSize)
+                continue;
+            chosen.add(segment);
+            size += segment.data.length;
+        }
+
+        byte[] dictionary = new byte[size];
+        int position = size;
+        for (Segment segment : chosen) {
+            position -= segment.data.length;
+            System.arraycopy(segment.data, 0, dictionary, position, segment.data.length);
+        }
+        return new CompressionDictionary(dictionary);
+    }
+
+    private static byte[] encode(MetaData sample, DiscriminatorMap discriminatorMap) throws NoMatchingDiscriminatorException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (MetaOutputStream outputStream = CerberusData.createOutputStream(bytes, discriminatorMap)) {
+            outputStream.writeData(sample);
+            outputStream.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to serialize dictionary sample", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static long gram(byte[] data, int index) {
+        long gram = 0;
+        for (int i = 0; i < GRAM; i++)
+            gram = gram << 8 | (data[index + i] & 0xFF);
+        return gram;
+    }
+
+    private static class Segment {
+
+        private final byte[] data;
+        private final long score;
+
+        private Segment(byte[] data, long score) {
+            this.data = data;
+            this.score = score;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Segment && Arrays.equals(data, ((Segment) obj).data);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(data);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data.impl.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Growable output buffer, which hands out its backing array instead
+ * of a copy.
+ */
+public class GrowableBuffer extends ByteArrayOutputStream {
+
+    public GrowableBuffer(int size) {
+        super(size);
+    }
+
+    /**
+     * Returns the backing array of this buffer. Only the first
+     * <code>size()</code> bytes of the array are valid.
+     * @return backing array
+     */
+    public synchronized byte[] array() {
+        return buf;
+    }
+
+    /**
+     * Returns the backing array, or a trimmed copy of it if more than
+     * a quarter of the array is unused.
+     * @return array holding the contents of this buffer
+     */
+    public synchronized byte[] compact() {
+        if (buf.length - count > count / 4)
+            return Arrays.copyOf(buf, count);
+        return buf;
+    }
+}
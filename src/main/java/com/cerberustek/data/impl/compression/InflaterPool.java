@@ -0,0 +1,72 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data.impl.compression;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.Inflater;
+
+/**
+ * Thread safe pool of inflaters.
+ *
+ * Inflaters that are released while the pool is full are ended.
+ */
+public class InflaterPool {
+
+    private static final InflaterPool DEFAULT = new InflaterPool(Runtime.getRuntime().availableProcessors() * 2);
+
+    private final ArrayBlockingQueue<Inflater> idle;
+
+    public InflaterPool(int capacity) {
+        this.idle = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Creates a pool, which hands out the specified inflater first,
+     * and new inflaters whenever the specified inflater is in use.
+     * @param inflater inflater
+     */
+    public InflaterPool(Inflater inflater) {
+        this(1);
+        idle.offer(inflater);
+    }
+
+    public static InflaterPool getDefault() {
+        return DEFAULT;
+    }
+
+    public Inflater acquire() {
+        Inflater inflater = idle.poll();
+        return inflater != null ? inflater : new Inflater();
+    }
+
+    public void release(Inflater inflater) {
+        inflater.reset();
+        if (!idle.offer(inflater))
+            inflater.end();
+    }
+
+    public int getIdle() {
+        return idle.size();
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data.impl.compression;
+
+import com.cerberustek.data.CompressionCodec;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.ZipException;
+
+/**
+ * Fast byte oriented codec of the LZ77 family, which trades ratio for
+ * speed. Matches are found with a single hash table probe and encoded
+ * as sequences of
+ * <code>{byte<Token>, [Literal length], byte[]<Literals>, short<Offset>, [Match length]}</code>,
+ * where the token holds four bits of the literal length and four bits
+ * of the match length, which are extended by additional bytes, if they
+ * do not fit into the token.
+ *
+ * Streams are split into blocks of up to 64 KiB, which are written as
+ * <code>{int<RawLength>, int<CompressedLength>, byte[]<Block>}</code>.
+ * Blocks that do not get any smaller are stored as they are and marked
+ * with a compressed length of -1.
+ */
+public class LzCodec implements CompressionCodec {
+
+    public static final int BLOCK_SIZE = 64 * 1024;
+
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 0xFFFF;
+    private static final int HASH_LOG = 14;
+    private static final int SKIP_TRIGGER = 6;
+    private static final int STORED = -1;
+
+    @Override
+    public OutputStream compress(OutputStream outputStream) {
+        return new LzOutputStream(outputStream);
+    }
+
+    @Override
+    public InputStream decompress(InputStream inputStream) {
+        return new LzInputStream(inputStream);
+    }
+
+    public static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compresses the source block into the destination array, which has
+     * to hold at least <code>maxCompressedLength(length)</code> bytes.
+     * @param src source array
+     * @param offset offset of the block
+     * @param length length of the block
+     * @param dst destination array
+     * @param dstOffset offset in the destination array
+     * @param table hash table with <code>1 << 14</code> entries, which is
+     *              overwritten by this method
+     * @return compressed length
+     */
+    public static int compress(byte[] src, int offset, int length, byte[] dst, int dstOffset, int[] table) {
+        Arrays.fill(table, -1);
+        int end = offset + length;
+        int limit = end - MIN_MATCH;
+        int anchor = offset;
+        int ip = offset;
+        int op = dstOffset;
+
+        while (ip <= limit) {
+            int sequence = readInt(src, ip);
+            int hash = (sequence * -1640531535) >>> (32 - HASH_LOG);
+            int ref = table[hash];
+            table[hash] = ip;
+
+            if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                // skip faster through data that does not compress
+                ip += 1 + ((ip - anchor) >>> SKIP_TRIGGER);
+                continue;
+            }
+
+            int matchLength = MIN_MATCH;
+            while (ip + matchLength < end && src[ref + matchLength] == src[ip + matchLength])
+                matchLength++;
+
+            int token = op;
+            op = literals(src, anchor, ip - anchor, dst, op);
+            dst[op++] = (byte) (ip - ref);
+            dst[op++] = (byte) ((ip - ref) >>> 8);
+
+            int code = matchLength - MIN_MATCH;
+            if (code >= 15) {
+                dst[token] |= 0x0F;
+                op = extend(dst, op, code - 15);
+            } else
+                dst[token] |= (byte) code;
+
+            ip += matchLength;
+            anchor = ip;
+        }
+
+        op = literals(src, anchor, end - anchor, dst, op);
+        return op - dstOffset;
+    }
+
+    /**
+     * Decompresses the source block into the destination array.
+     * @param src source array
+     * @param offset offset of the compressed block
+     * @param length length of the compressed block
+     * @param dst destination array
+     * @param dstOffset offset in the destination array
+     * @param dstLength length of the decompressed block
+     * @throws ZipException the compressed block is corrupted
+     */
+    public static void decompress(byte[] src, int offset, int length, byte[] dst, int dstOffset, int dstLength) throws ZipException {
+        int ip = offset;
+        int end = offset + length;
+        int op = dstOffset;
+        int dstEnd = dstOffset + dstLength;
+
+        try {
+            while (ip < end) {
+                int token = src[ip++] & 0xFF;
+
+                int literalLength = token >>> 4;
+                if (literalLength == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        literalLength += b;
+                    } while (b == 255);
+                }
+                if (literalLength > end - ip || literalLength > dstEnd - op)
+                    throw new ZipException("Corrupted LZ block: literals exceed the block");
+                System.arraycopy(src, ip, dst, op, literalLength);
+                ip += literalLength;
+                op += literalLength;
+
+                if (ip == end)
+                    break;
+
+                int distance = (src[ip] & 0xFF) | (src[ip + 1] & 0xFF) << 8;
+                ip += 2;
+                int matchLength = token & 0x0F;
+                if (matchLength == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+
+                int ref = op - distance;
+                if (distance == 0 || ref < dstOffset || matchLength > dstEnd - op)
+                    throw new ZipException("Corrupted LZ block: invalid match");
+                if (distance >= matchLength)
+                    System.arraycopy(dst, ref, dst, op, matchLength);
+                else {
+                    // overlapping matches repeat the last bytes
+                    for (int i = 0; i < matchLength; i++)
+                        dst[op + i] = dst[ref + i];
+                }
+                op += matchLength;
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new ZipException("Corrupted LZ block: unexpected end of block");
+        }
+
+        if (op != dstEnd)
+            throw new ZipException("Corrupted LZ block: expected " + dstLength + " bytes, but got " + (op - dstOffset));
+    }
+
+    /**
+     * Writes the token and the literals of a sequence. The match length
+     * is added to the token afterwards.
+     */
+    private static int literals(byte[] src, int offset, int length, byte[] dst, int op) {
+        int token = op++;
+        if (length >= 15) {
+            dst[token] = (byte) 0xF0;
+            op = extend(dst, op, length - 15);
+        } else
+            dst[token] = (byte) (length << 4);
+
+        System.arraycopy(src, offset, dst, op, length);
+        return op + length;
+    }
+
+    private static int extend(byte[] dst, int op, int value) {
+        while (value >= 255) {
+            dst[op++] = (byte) 255;
+            value -= 255;
+        }
+        dst[op++] = (byte) value;
+        return op;
+    }
+
+    private static int readInt(byte[] src, int index) {
+        return (src[index] & 0xFF) | (src[index + 1] & 0xFF) << 8
+                | (src[index + 2] & 0xFF) << 16 | (src[index + 3] & 0xFF) << 24;
+    }
+
+    private static class LzOutputStream extends OutputStream {
+
+        private final OutputStream out;
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private final byte[] compressed = new byte[8 + maxCompressedLength(BLOCK_SIZE)];
+        private final int[] table = new int[1 << HASH_LOG];
+
+        private int position;
+        private boolean closed;
+
+        private LzOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            block[position++] = (byte) b;
+            if (position == block.length)
+                flushBlock();
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            while (length > 0) {
+                int count = Math.min(length, block.length - position);
+                System.arraycopy(buffer, offset, block, position, count);
+                position += count;
+                offset += count;
+                length -= count;
+                if (position == block.length)
+                    flushBlock();
+            }
+        }
+
+        private void flushBlock() throws IOException {
+            if (position == 0)
+                return;
+
+            int length = compress(block, 0, position, compressed, 8, table);
+            writeInt(compressed, 0, position);
+            if (length < position) {
+                writeInt(compressed, 4, length);
+                out.write(compressed, 0, 8 + length);
+            } else {
+                writeInt(compressed, 4, STORED);
+                out.write(compressed, 0, 8);
+                out.write(block, 0, position);
+            }
+            position = 0;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushBlock();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            flush();
+        }
+
+        private static void writeInt(byte[] buffer, int index, int value) {
+            buffer[index] = (byte) (value >>> 24);
+            buffer[index + 1] = (byte) (value >>> 16);
+            buffer[index + 2] = (byte) (value >>> 8);
+            buffer[index + 3] = (byte) value;
+        }
+    }
+
+    private static class LzInputStream extends InputStream {
+
+        private final DataInputStream in;
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private byte[] compressed = new byte[0];
+
+        private int position;
+        private int limit;
+
+        private LzInputStream(InputStream in) {
+            this.in = new DataInputStream(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill())
+                return -1;
+            return block[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0)
+                return 0;
+            if (!fill())
+                return -1;
+
+            int count = Math.min(length, limit - position);
+            System.arraycopy(block, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return limit - position;
+        }
+
+        private boolean fill() throws IOException {
+            while (position >= limit) {
+                int rawLength;
+                try {
+                    rawLength = in.readInt();
+                } catch (EOFException e) {
+                    return false;
+                }
+                int length = in.readInt();
+                if (rawLength < 0 || rawLength > BLOCK_SIZE || length < STORED || length > maxCompressedLength(BLOCK_SIZE))
+                    throw new ZipException("Corrupted LZ block header");
+
+                if (length == STORED)
+                    in.readFully(block, 0, rawLength);
+                else {
+                    if (compressed.length < length)
+                        compressed = new byte[maxCompressedLength(BLOCK_SIZE)];
+                    in.readFully(compressed, 0, length);
+                    decompress(compressed, 0, length, block, 0, rawLength);
+                }
+                position = 0;
+                limit = rawLength;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() {}
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data.impl.elements;
+
+import com.cerberustek.data.MetaByteBuffer;
+import com.cerberustek.data.MetaElement;
+import com.cerberustek.data.MetaOutputStream;
+import com.cerberustek.data.impl.tags.BlobRefTag;
+import com.cerberustek.exception.NoMatchingDiscriminatorException;
+import com.cerberustek.store.BlobStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Reference to binary data inside of a blob store. The data is split
+ * into chunks, which are stored under their content hash, so the
+ * element itself only carries the hashes of its chunks. Equal chunks,
+ * no matter in which reference they occur, are only stored once.
+ *
+ * Serialized as <code>{long<Length>, int<ChunkCount>, byte[32]<ChunkHash>...}</code>.
+ */
+public class BlobRefElement implements MetaElement<byte[]> {
+
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private long length;
+    private byte[][] chunks;
+    private BlobStore blobStore;
+
+    public BlobRefElement(long length, byte[][] chunks, BlobStore blobStore) {
+        this.length = length;
+        this.chunks = chunks;
+        this.blobStore = blobStore;
+    }
+
+    public BlobRefElement(byte[] values, BlobStore blobStore) {
+        this.blobStore = blobStore;
+        set(values);
+    }
+
+    /**
+     * Reads the input stream until its end and stores its contents
+     * in the blob store.
+     * @param inputStream input stream
+     * @param blobStore blob store
+     * @return reference to the stored data
+     * @throws IOException failed to read the input stream or to write
+     *          to the blob store
+     */
+    public static BlobRefElement store(InputStream inputStream, BlobStore blobStore) throws IOException {
+        ArrayList<byte[]> hashes = new ArrayList<>();
+        byte[] buffer = new byte[DEFAULT_CHUNK_SIZE];
+        long length = 0;
+
+        while (true) {
+            int filled = 0;
+            for (int i = inputStream.read(buffer); i != -1; i = inputStream.read(buffer, filled, buffer.length - filled)) {
+                filled += i;
+                if (filled == buffer.length)
+                    break;
+            }
+            if (filled == 0)
+                break;
+
+            hashes.add(blobStore.put(buffer, 0, filled));
+            length += filled;
+            if (filled < buffer.length)
+                break;
+        }
+        return new BlobRefElement(length, hashes.toArray(new byte[0][]), blobStore);
+    }
+
+    /**
+     * Resolves the referenced data through the blob store.
+     * @return data
+     * @throws IOException a chunk is missing from the blob store, or
+     *          could not be read
+     */
+    public byte[] resolve() throws IOException {
+        if (length > Integer.MAX_VALUE - 8)
+            throw new IOException("Blob of " + length + " bytes does not fit into an array");
+
+        byte[] data = new byte[(int) length];
+        int position = 0;
+        for (byte[] hash : chunks) {
+            byte[] chunk = chunk(hash);
+            if (position + chunk.length > data.length)
+                throw new IOException("Blob chunks exceed the referenced length");
+            System.arraycopy(chunk, 0, data, position, chunk.length);
+            position += chunk.length;
+        }
+        if (position != data.length)
+            throw new IOException("Blob chunks fall short of the referenced length");
+        return data;
+    }
+
+    /**
+     * Opens a stream over the referenced data, which only holds one
+     * chunk in memory at a time. Blobs which are too large to be
+     * resolved into an array can still be read this way.
+     * @return input stream
+     */
+    public InputStream openStream() {
+        return new InputStream() {
+
+            private int index;
+            private byte[] chunk = new byte[0];
+            private int position;
+
+            @Override
+            public int read() throws IOException {
+                if (!fill())
+                    return -1;
+                return chunk[position++] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int len) throws IOException {
+                if (len == 0)
+                    return 0;
+                if (!fill())
+                    return -1;
+
+                int read = Math.min(len, chunk.length - position);
+                System.arraycopy(chunk, position, buffer, offset, read);
+                position += read;
+                return read;
+            }
+
+            private boolean fill() throws IOException {
+                while (position >= chunk.length) {
+                    if (index >= chunks.length)
+                        return false;
+                    chunk = chunk(chunks[index++]);
+                    position = 0;
+                }
+                return true;
+            }
+        };
+    }
+
+    private byte[] chunk(byte[] hash) throws IOException {
+        if (blobStore == null)
+            throw new IOException("No blob store to resolve the blob reference");
+
+        byte[] chunk = blobStore.get(hash);
+        if (chunk == null)
+            throw new IOException("Missing blob chunk " + Arrays.toString(hash));
+        return chunk;
+    }
+
+    public ContainerElement toContainer() throws IOException {
+        return new ContainerElement(resolve());
+    }
+
+    @Override
+    public void set(byte[] value) {
+        if (blobStore == null)
+            throw new IllegalStateException("No blob store to store the data in");
+
+        int count = (value.length + DEFAULT_CHUNK_SIZE - 1) / DEFAULT_CHUNK_SIZE;
+        byte[][] hashes = new byte[count][];
+        try {
+            for (int i = 0; i < count; i++) {
+                int offset = i * DEFAULT_CHUNK_SIZE;
+                hashes[i] = blobStore.put(value, offset, Math.min(DEFAULT_CHUNK_SIZE, value.length - offset));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.length = value.length;
+        this.chunks = hashes;
+    }
+
+    @Override
+    public byte[] get() {
+        try {
+            return resolve();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void serialize(MetaOutputStream metaOutputStream) throws IOException, NoMatchingDiscriminatorException {
+        metaOutputStream.writeLong(length);
+        metaOutputStream.writeInt(chunks.length);
+        for (byte[] hash : chunks)
+            metaOutputStream.write(hash);
+    }
+
+    @Override
+    public void serialize(MetaByteBuffer metaBuffer) throws NoMatchingDiscriminatorException {
+        metaBuffer.writeLong(length);
+        metaBuffer.writeInt(chunks.length);
+        for (byte[] hash : chunks)
+            metaBuffer.write(hash);
+    }
+
+    @Override
+    public long byteSize() {
+        return 12 + (long) chunks.length * BlobStore.HASH_SIZE;
+    }
+
+    @Override
+    public long finalSize() {
+        return -1;
+    }
+
+    @Override
+    public BlobRefTag toTag(String tag) {
+        return new BlobRefTag(tag, length, chunks, blobStore);
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public byte[][] getChunks() {
+        return chunks;
+    }
+
+    public BlobStore getBlobStore() {
+        return blobStore;
+    }
+
+    public void setBlobStore(BlobStore blobStore) {
+        this.blobStore = blobStore;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null || !obj.getClass().equals(getClass()))
+            return false;
+
+        BlobRefElement that = (BlobRefElement) obj;
+        return length == that.length && Arrays.deepEquals(chunks, that.chunks);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(length) + Arrays.deepHashCode(chunks);
+    }
+}
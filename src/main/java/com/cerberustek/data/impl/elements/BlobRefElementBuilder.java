@@ -0,0 +1,86 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data.impl.elements;
+
+import com.cerberustek.data.MetaBuilder;
+import com.cerberustek.data.MetaByteBuffer;
+import com.cerberustek.data.MetaInputStream;
+import com.cerberustek.exception.UnknownDiscriminatorException;
+import com.cerberustek.store.BlobStore;
+
+import java.io.IOException;
+
+public class BlobRefElementBuilder implements MetaBuilder<BlobRefElement> {
+
+    private BlobStore blobStore;
+
+    public BlobRefElementBuilder(BlobStore blobStore) {
+        this.blobStore = blobStore;
+    }
+
+    public BlobRefElementBuilder() {
+        this(null);
+    }
+
+    @Override
+    public BlobRefElement build(String tag, MetaInputStream inputStream) throws IOException, UnknownDiscriminatorException {
+        long length = inputStream.readLong();
+        byte[][] chunks = new byte[inputStream.readInt()][BlobStore.HASH_SIZE];
+        for (byte[] hash : chunks)
+            inputStream.readFully(hash);
+        return new BlobRefElement(length, chunks, blobStore);
+    }
+
+    @Override
+    public BlobRefElement build(String tag, MetaByteBuffer buffer) throws UnknownDiscriminatorException {
+        long length = buffer.readLong();
+        byte[][] chunks = new byte[buffer.readInt()][BlobStore.HASH_SIZE];
+        for (byte[] hash : chunks)
+            buffer.read(hash);
+        return new BlobRefElement(length, chunks, blobStore);
+    }
+
+    @Override
+    public Class<BlobRefElement> getDataClass() {
+        return BlobRefElement.class;
+    }
+
+    @Override
+    public int getFinalSize() {
+        return -1;
+    }
+
+    @Override
+    public boolean isTag() {
+        return false;
+    }
+
+    public BlobStore getBlobStore() {
+        return blobStore;
+    }
+
+    public void setBlobStore(BlobStore blobStore) {
+        this.blobStore = blobStore;
+    }
+}
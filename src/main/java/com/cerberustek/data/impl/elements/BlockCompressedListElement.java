@@ -0,0 +1,620 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data.impl.elements;
+
+import com.cerberustek.CerberusData;
+import com.cerberustek.data.*;
+import com.cerberustek.data.impl.compression.CodecRegistry;
+import com.cerberustek.data.impl.compression.CompressedPayload;
+import com.cerberustek.data.impl.compression.DeflateCodec;
+import com.cerberustek.data.impl.compression.GrowableBuffer;
+import com.cerberustek.data.impl.tags.BlockCompressedListTag;
+import com.cerberustek.exception.NoMatchingDiscriminatorException;
+import com.cerberustek.exception.ResourceUnavailableException;
+import com.cerberustek.exception.UnknownDiscriminatorException;
+import com.cerberustek.querry.QueryResult;
+import com.cerberustek.querry.ResourceLocation;
+import com.cerberustek.querry.trace.QueryTrace;
+import com.cerberustek.querry.trace.TraceIndex;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.logging.Level;
+
+/**
+ * List, which groups its elements into blocks of a fixed number of
+ * elements and compresses each block on its own. The block index is
+ * written in front of the compressed blocks:
+ *
+ * <code>{int<BlockSize>, short<Codec>, int<Size>, int<BlockCount>,
+ *  BlockCount * {int<Count>, int<RawLength>, int<CompressedLength>},
+ *  BlockCount * byte[CompressedLength]}</code>
+ *
+ * Blocks are only decompressed once one of their elements is accessed,
+ * so reading a single element or a range of elements does not require
+ * the whole list to be decompressed. Elements can only be appended or
+ * replaced, since removing elements would break up the blocks.
+ *
+ * Elements, which are handed out by one of the getters, might be
+ * modified in place by the caller. The blocks holding them are therefore
+ * compressed again, before the list is serialized the next time.
+ */
+public class BlockCompressedListElement<T extends MetaData> implements MetaElement<List<T>>, ResourceLocation {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+    private static final int INDEX_CHUNK = 1024;
+    private static final int PAYLOAD_CHUNK = 1 << 16;
+
+    private static final CompressionCodec DEFAULT_CODEC = new DeflateCodec();
+
+    private final int blockSize;
+    private final CompressionCodec codec;
+    private final short codecId;
+    private final DiscriminatorMap discriminatorMap;
+    private final ArrayList<Block> blocks = new ArrayList<>();
+
+    private int size;
+
+    public BlockCompressedListElement(DiscriminatorMap discriminatorMap) {
+        this(DEFAULT_BLOCK_SIZE, DEFAULT_CODEC, CodecRegistry.DEFLATE, new ArrayList<>(), discriminatorMap);
+    }
+
+    /**
+     * Creates an empty block compressed list. The id of the codec is
+     * looked up in the default codec registry.
+     * @param blockSize number of elements per block
+     * @param codec compression codec
+     * @param discriminatorMap discriminator map used to compress the
+     *                         elements of the list
+     */
+    public BlockCompressedListElement(int blockSize, CompressionCodec codec, DiscriminatorMap discriminatorMap) {
+        this(blockSize, codec, CodecRegistry.getDefault().getId(codec.getClass()), new ArrayList<>(), discriminatorMap);
+        if (codecId == CodecRegistry.UNKNOWN)
+            throw new IllegalArgumentException("Compression codec " + codec.getClass().getName() + " is not registered!");
+    }
+
+    /**
+     * Creates an empty block compressed list, which compresses its
+     * blocks with the codec registered for the id in the specified
+     * registry.
+     * @param blockSize number of elements per block
+     * @param registry codec registry
+     * @param codecId codec id
+     * @param discriminatorMap discriminator map used to compress the
+     *                         elements of the list
+     */
+    public BlockCompressedListElement(int blockSize, CodecRegistry registry, short codecId,
+                                      DiscriminatorMap discriminatorMap) {
+        this(blockSize, registry.getCodec(codecId), codecId, new ArrayList<>(), discriminatorMap);
+        if (codec == null)
+            throw new IllegalArgumentException("No compression codec is registered for id " + codecId + "!");
+    }
+
+    /**
+     * Creates a block compressed list from already compressed blocks.
+     * All blocks, except for the last one, have to be full.
+     * @param blockSize number of elements per block
+     * @param codec compression codec of the blocks
+     * @param codecId codec id
+     * @param blocks compressed blocks
+     * @param discriminatorMap discriminator map of the compressed blocks
+     */
+    public BlockCompressedListElement(int blockSize, CompressionCodec codec, short codecId, List<Block> blocks,
+                                      DiscriminatorMap discriminatorMap) {
+        if (blockSize < 1)
+            throw new IllegalArgumentException("Block size has to be at least one element!");
+
+        this.blockSize = blockSize;
+        this.codec = codec;
+        this.codecId = codecId;
+        this.discriminatorMap = discriminatorMap;
+
+        for (int i = 0; i < blocks.size(); i++) {
+            Block block = blocks.get(i);
+            if (block.count > blockSize || (block.count != blockSize && i != blocks.size() - 1))
+                throw new IllegalArgumentException("Malformed block index at block " + i + "!");
+            this.blocks.add(block);
+            size += block.count;
+        }
+    }
+
+    public T get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        return handOut(blocks.get(index / blockSize)).get(index % blockSize);
+    }
+
+    /**
+     * Returns the elements from the first index (inclusive) up to the
+     * last index (exclusive). Only the blocks holding these elements
+     * are decompressed, and only these blocks are compressed again,
+     * before the list is serialized the next time.
+     * @param from first index
+     * @param to last index
+     * @return elements
+     */
+    public List<T> range(int from, int to) {
+        if (from < 0 || to > size || from > to)
+            throw new IndexOutOfBoundsException("Range " + from + " to " + to + " out of bounds for length " + size);
+
+        ArrayList<T> output = new ArrayList<>(to - from);
+        while (from < to) {
+            List<T> elements = handOut(blocks.get(from / blockSize));
+            int offset = from % blockSize;
+            int end = Math.min(elements.size(), offset + to - from);
+            output.addAll(elements.subList(offset, end));
+            from += end - offset;
+        }
+        return output;
+    }
+
+    public void set(int index, T value) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+
+        Block block = blocks.get(index / blockSize);
+        elements(block).set(index % blockSize, value);
+        block.payload = null;
+    }
+
+    public void add(T value) {
+        Block block = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+        if (block == null || block.count == blockSize) {
+            block = new Block(new ArrayList<>(blockSize));
+            blocks.add(block);
+        }
+        elements(block).add(value);
+        block.count++;
+        block.payload = null;
+        size++;
+    }
+
+    public void addAll(Collection<? extends T> values) {
+        for (T value : values)
+            add(value);
+    }
+
+    public void clear() {
+        blocks.clear();
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns all elements of this list. The blocks are decompressed
+     * one after another on the calling thread.
+     * @return list of all elements
+     */
+    @Override
+    public List<T> get() {
+        for (Block block : blocks)
+            handOut(block);
+        return view();
+    }
+
+    /**
+     * Returns all elements of this list. The blocks, that are not yet
+     * decompressed, are decompressed in parallel on the specified pool.
+     * @param pool fork join pool
+     * @return list of all elements
+     */
+    public List<T> get(ForkJoinPool pool) {
+        ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (Block block : blocks) {
+            if (block.elements == null)
+                tasks.add(pool.submit(() -> elements(block)));
+        }
+        for (ForkJoinTask<?> task : tasks)
+            task.join();
+        return get();
+    }
+
+    @Override
+    public void set(List<T> value) {
+        clear();
+        addAll(value);
+    }
+
+    /**
+     * Returns the elements of all blocks without marking the blocks as
+     * modified. The returned elements must not be modified.
+     */
+    private List<T> view() {
+        ArrayList<T> output = new ArrayList<>(size);
+        for (Block block : blocks)
+            output.addAll(elements(block));
+        return output;
+    }
+
+    /**
+     * Returns the elements of the block to the caller, who might modify
+     * them in place. The payload of the block is dropped, so the block is
+     * compressed again before the list is serialized the next time.
+     */
+    private List<T> handOut(Block block) {
+        List<T> elements = elements(block);
+        block.payload = null;
+        return elements;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<T> elements(Block block) {
+        List<MetaData> elements = block.elements;
+        if (elements == null) {
+            synchronized (block) {
+                elements = block.elements;
+                if (elements == null) {
+                    elements = inflate(block);
+                    block.elements = elements;
+                }
+            }
+        }
+        return (List<T>) elements;
+    }
+
+    private List<MetaData> inflate(Block block) {
+        if (codec == null)
+            throw new IllegalStateException("Unable to decompress block with unknown codec " + codecId + "!");
+
+        ArrayList<MetaData> elements = new ArrayList<>(blockSize);
+        try (InputStream inputStream = codec.decompress(new ByteArrayInputStream(block.payload))) {
+            MetaInputStream metaInputStream = CerberusData.createInputStream(inputStream, discriminatorMap);
+            for (int i = 0; i < block.count; i++)
+                elements.add(metaInputStream.readData());
+        } catch (IOException | UnknownDiscriminatorException e) {
+            throw new IllegalStateException("Failed to decompress block of block compressed list", e);
+        }
+        return elements;
+    }
+
+    private void deflate(Block block) {
+        GrowableBuffer compressed = new GrowableBuffer(CompressedPayload.STREAM_BUFFER_SIZE);
+        MetaOutputStream outputStream;
+        try (OutputStream compressor = codec.compress(compressed)) {
+            outputStream = CerberusData.createOutputStream(compressor, discriminatorMap);
+            for (MetaData element : block.elements)
+                outputStream.writeData(element);
+            outputStream.flush();
+        } catch (IOException | NoMatchingDiscriminatorException e) {
+            throw new IllegalStateException("Failed to compress block of block compressed list", e);
+        }
+
+        long raw = outputStream.getByteCount();
+        if (raw > Integer.MAX_VALUE)
+            throw new IllegalStateException("Block of block compressed list is too large!");
+
+        block.rawLength = (int) raw;
+        block.payload = compressed.size() == compressed.array().length ? compressed.array() : compressed.toByteArray();
+    }
+
+    private void deflateModified() {
+        for (Block block : blocks) {
+            if (block.payload == null)
+                deflate(block);
+        }
+    }
+
+    @Override
+    public void serialize(MetaOutputStream metaOutputStream) throws IOException, NoMatchingDiscriminatorException {
+        deflateModified();
+        metaOutputStream.writeInt(blockSize);
+        metaOutputStream.writeShort(codecId);
+        metaOutputStream.writeInt(size);
+        metaOutputStream.writeInt(blocks.size());
+        for (Block block : blocks) {
+            metaOutputStream.writeInt(block.count);
+            metaOutputStream.writeInt(block.rawLength);
+            metaOutputStream.writeInt(block.payload.length);
+        }
+        for (Block block : blocks)
+            metaOutputStream.write(block.payload);
+    }
+
+    @Override
+    public void serialize(MetaByteBuffer metaBuffer) throws NoMatchingDiscriminatorException {
+        deflateModified();
+        metaBuffer.writeInt(blockSize);
+        metaBuffer.writeShort(codecId);
+        metaBuffer.writeInt(size);
+        metaBuffer.writeInt(blocks.size());
+        for (Block block : blocks) {
+            metaBuffer.writeInt(block.count);
+            metaBuffer.writeInt(block.rawLength);
+            metaBuffer.writeInt(block.payload.length);
+        }
+        for (Block block : blocks)
+            metaBuffer.write(block.payload);
+    }
+
+    @Override
+    public long byteSize() {
+        deflateModified();
+        long size = 14 + 12L * blocks.size();
+        for (Block block : blocks)
+            size += block.payload.length;
+        return size;
+    }
+
+    @Override
+    public long finalSize() {
+        return -1;
+    }
+
+    @Override
+    public QueryResult trace(QueryTrace request) throws ResourceUnavailableException {
+        if (request instanceof TraceIndex) {
+            int index = ((TraceIndex) request).getIndex();
+            if (index < 0 || index >= size)
+                throw new ResourceUnavailableException(request);
+            return CerberusData.pullResult(request, this, get(index));
+        }
+        return request.pull(this, this);
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public int getBlockCount() {
+        return blocks.size();
+    }
+
+    public CompressionCodec getCodec() {
+        return codec;
+    }
+
+    public short getCodecId() {
+        return codecId;
+    }
+
+    public DiscriminatorMap getDiscriminatorMap() {
+        return discriminatorMap;
+    }
+
+    /**
+     * Returns compressed copies of the blocks of this list, which can
+     * be shared with another list.
+     * @return blocks
+     */
+    protected List<Block> copyBlocks() {
+        deflateModified();
+        ArrayList<Block> output = new ArrayList<>(blocks.size());
+        for (Block block : blocks)
+            output.add(new Block(block.count, block.rawLength, block.payload));
+        return output;
+    }
+
+    @Override
+    public BlockCompressedListTag<T> toTag(String tag) {
+        return new BlockCompressedListTag<>(tag, blockSize, codec, codecId, copyBlocks(), discriminatorMap);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null || !obj.getClass().equals(getClass()))
+            return false;
+
+        assert obj instanceof BlockCompressedListElement;
+        return ((BlockCompressedListElement) obj).size() == size()
+                && ((BlockCompressedListElement) obj).view().equals(view());
+    }
+
+    @Override
+    public int hashCode() {
+        return view().hashCode();
+    }
+
+    @SuppressWarnings("Duplicates")
+    @Override
+    public String toString() {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append('[').append(getClass().getName()).append(']');
+        if (this instanceof MetaTag)
+            stringBuilder.append("<").append(((MetaTag) this).getTag()).append(">");
+        stringBuilder.append(':').append(' ').append('{');
+
+        view().forEach(value ->
+                stringBuilder.append("\n\t").append(value.toString().replace("\n", "\n\t")));
+        stringBuilder.append("\n}");
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Reads the block index and the compressed blocks of a block
+     * compressed list from the stream.
+     * @param inputStream input stream
+     * @param registry codec registry
+     * @param factory creates the list from the blocks
+     * @param <L> type of the list
+     * @return list, or null if the codec of the list is unknown
+     * @throws IOException failed to read from the stream
+     */
+    public static <L> L read(MetaInputStream inputStream, CodecRegistry registry, Factory<L> factory) throws IOException {
+        int blockSize = inputStream.readInt();
+        short codecId = inputStream.readShort();
+        int size = inputStream.readInt();
+        int blockCount = inputStream.readInt();
+        String error = checkHeader(blockSize, size, blockCount, Integer.MAX_VALUE);
+        if (error != null)
+            throw new IOException(error);
+
+        int[] index = new int[Math.min(blockCount, INDEX_CHUNK) * 3];
+        for (int i = 0; i < blockCount; i++) {
+            if (i * 3 == index.length)
+                index = Arrays.copyOf(index, (int) Math.min(blockCount * 3L, index.length * 2L));
+            index[i * 3] = inputStream.readInt();
+            index[i * 3 + 1] = inputStream.readInt();
+            index[i * 3 + 2] = inputStream.readInt();
+        }
+        error = checkIndex(blockSize, size, index, blockCount, Integer.MAX_VALUE);
+        if (error != null)
+            throw new IOException(error);
+
+        ArrayList<Block> blocks = new ArrayList<>(blockCount);
+        for (int i = 0; i < blockCount * 3; i += 3)
+            blocks.add(new Block(index[i], index[i + 1], readPayload(inputStream, index[i + 2])));
+        return create(blockSize, codecId, blocks, registry, inputStream.getDiscriminatorMap(), factory);
+    }
+
+    public static <L> L read(MetaByteBuffer buffer, CodecRegistry registry, Factory<L> factory) {
+        int blockSize = buffer.readInt();
+        short codecId = buffer.readShort();
+        int size = buffer.readInt();
+        int blockCount = buffer.readInt();
+        String error = checkHeader(blockSize, size, blockCount, buffer.remaining() / 12);
+        if (error != null) {
+            CerberusData.getLogger().log(Level.WARNING, error);
+            return null;
+        }
+
+        int[] index = new int[blockCount * 3];
+        for (int i = 0; i < index.length; i++)
+            index[i] = buffer.readInt();
+        error = checkIndex(blockSize, size, index, blockCount, buffer.remaining());
+        if (error != null) {
+            CerberusData.getLogger().log(Level.WARNING, error);
+            return null;
+        }
+
+        ArrayList<Block> blocks = new ArrayList<>(blockCount);
+        for (int i = 0; i < index.length; i += 3) {
+            byte[] payload = new byte[index[i + 2]];
+            buffer.read(payload);
+            blocks.add(new Block(index[i], index[i + 1], payload));
+        }
+        return create(blockSize, codecId, blocks, registry, buffer.getDiscriminatorMap(), factory);
+    }
+
+    /**
+     * Validates the header of a block compressed list, before the block
+     * index is allocated.
+     * @return error message, or null if the header is valid
+     */
+    private static String checkHeader(int blockSize, int size, int blockCount, int maxBlockCount) {
+        if (blockSize < 1)
+            return "Malformed block compressed list with block size " + blockSize + "!";
+        if (size < 0 || blockCount < 0 || blockCount > maxBlockCount
+                || blockCount != (int) ((size + (long) blockSize - 1) / blockSize))
+            return "Malformed block compressed list with " + blockCount + " blocks for " + size + " elements!";
+        return null;
+    }
+
+    /**
+     * Validates the block index of a block compressed list, before the
+     * payloads of the blocks are allocated. All blocks, except for the
+     * last one, have to be full.
+     * @return error message, or null if the index is valid
+     */
+    private static String checkIndex(int blockSize, int size, int[] index, int blockCount, long maxPayload) {
+        long payload = 0;
+        for (int i = 0; i < blockCount; i++) {
+            int count = index[i * 3];
+            int expected = i == blockCount - 1 ? size - i * blockSize : blockSize;
+            if (count != expected || index[i * 3 + 1] < 0 || index[i * 3 + 2] < 0)
+                return "Malformed block index at block " + i + "!";
+
+            payload += index[i * 3 + 2];
+            if (payload > maxPayload)
+                return "Block compressed list exceeds the available data!";
+        }
+        return null;
+    }
+
+    /**
+     * Reads the payload of a block in chunks, so a corrupted length can
+     * not allocate much more memory than the stream actually contains.
+     */
+    private static byte[] readPayload(MetaInputStream inputStream, int length) throws IOException {
+        byte[] payload = new byte[Math.min(length, PAYLOAD_CHUNK)];
+        inputStream.readFully(payload);
+        while (payload.length < length) {
+            int offset = payload.length;
+            payload = Arrays.copyOf(payload, (int) Math.min(length, offset * 2L));
+            inputStream.readFully(payload, offset, payload.length - offset);
+        }
+        return payload;
+    }
+
+    private static <L> L create(int blockSize, short codecId, List<Block> blocks, CodecRegistry registry,
+                                DiscriminatorMap discriminatorMap, Factory<L> factory) {
+        CompressionCodec codec = registry.getCodec(codecId);
+        if (codec == null) {
+            CerberusData.getLogger().log(Level.WARNING, "Unknown compression codec " + codecId
+                    + " of block compressed list!");
+            return null;
+        }
+        return factory.create(blockSize, codec, codecId, blocks, discriminatorMap);
+    }
+
+    public interface Factory<L> {
+
+        L create(int blockSize, CompressionCodec codec, short codecId, List<Block> blocks, DiscriminatorMap discriminatorMap);
+    }
+
+    /**
+     * Block of a block compressed list. A block either holds its
+     * compressed payload, its decompressed elements, or both.
+     */
+    public static final class Block {
+
+        private int count;
+        private int rawLength;
+        private byte[] payload;
+        private volatile List<MetaData> elements;
+
+        public Block(int count, int rawLength, byte[] payload) {
+            this.count = count;
+            this.rawLength = rawLength;
+            this.payload = payload;
+        }
+
+        private Block(List<MetaData> elements) {
+            this.elements = elements;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public int getRawLength() {
+            return rawLength;
+        }
+    }
+}
@@ -24,16 +24,29 @@ package com.cerberustek.data.impl.elements;
 
 import com.cerberustek.CerberusData;
 import com.cerberustek.cipher.SymmetricCipher;
+import com.cerberustek.data.DiscriminatorMap;
 import com.cerberustek.data.MetaByteBuffer;
 import com.cerberustek.data.MetaData;
 import com.cerberustek.data.MetaOutputStream;
+import com.cerberustek.data.impl.CapturedData;
 import com.cerberustek.data.impl.MetaElementImpl;
 import com.cerberustek.data.impl.buffer.MetaByteBufferImpl;
 import com.cerberustek.data.impl.tags.CipherTag;
 import com.cerberustek.exception.NoMatchingDiscriminatorException;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
+/**
+ * Element, which encrypts its data with a symmetric cipher, when it is
+ * serialized. The cipher text is written with a length prefix:
+ *
+ * <code>{int<Length>, byte[Length]<CipherText>}</code>
+ *
+ * The cipher has to know the length of the cipher text in advance. The
+ * cipher text may be longer than the serialized data, for example due
+ * to the nonce and the authentication tag of AES/GCM.
+ */
 public class CipherElement<T extends MetaData> extends MetaElementImpl<T> {
 
     protected final SymmetricCipher cipher;
@@ -43,45 +56,82 @@ public class CipherElement<T extends MetaData> extends MetaElementImpl<T> {
         set(data);
     }
 
-    @SuppressWarnings("Duplicates")
     @Override
     public void serialize(MetaOutputStream metaOutputStream) throws IOException, NoMatchingDiscriminatorException {
-        long byteSize = CerberusData.totalSize(get());
-        if (byteSize > Integer.MAX_VALUE)
-            throw new ArrayIndexOutOfBoundsException();
+        MetaData data = CapturedData.of(get());
+        int plainSize = plainSize(data);
+        int encryptedLength = encryptedLength(plainSize);
 
-        MetaByteBuffer buffer = new MetaByteBufferImpl(metaOutputStream.getDiscriminatorMap(), (int) byteSize);
-        buffer.writeData(get());
-        buffer.rewind();
-        byte[] data = new byte[buffer.remaining()];
-        buffer.read(data);
+        ByteBuffer plain = plain(metaOutputStream.getDiscriminatorMap(), data, plainSize);
+        ByteBuffer output = encryptedLength == plainSize ? plain.duplicate() : ByteBuffer.allocate(encryptedLength);
         // cipher.reset();
-        cipher.encrypt(data);
-        metaOutputStream.writeInt((int) byteSize);
-        metaOutputStream.write(data);
+        checkLength(cipher.encrypt(plain, output), encryptedLength);
+        metaOutputStream.writeInt(encryptedLength);
+        metaOutputStream.write(output.array(), 0, encryptedLength);
     }
 
-    @SuppressWarnings("Duplicates")
     @Override
     public void serialize(MetaByteBuffer metaBuffer) throws NoMatchingDiscriminatorException {
-        long byteSize = CerberusData.totalSize(get());
+        MetaData data = CapturedData.of(get());
+        int plainSize = plainSize(data);
+        int encryptedLength = encryptedLength(plainSize);
+
+        metaBuffer.writeInt(encryptedLength);
+        if (!(metaBuffer instanceof MetaByteBufferImpl)) {
+            // other buffers might slice a copy, so the cipher text is written separately
+            ByteBuffer output = ByteBuffer.allocate(encryptedLength);
+            checkLength(cipher.encrypt(plain(metaBuffer.getDiscriminatorMap(), data, plainSize), output), encryptedLength);
+            metaBuffer.write(output.array(), 0, encryptedLength);
+            return;
+        }
+
+        ByteBuffer target = metaBuffer.slice(encryptedLength);
+        // cipher.reset();
+        if (encryptedLength == plainSize) {
+            // serialize and encrypt the data in place inside of the target buffer
+            new MetaByteBufferImpl(metaBuffer.getDiscriminatorMap(), target.duplicate()).writeData(data);
+            checkLength(cipher.encrypt(target, target.duplicate()), encryptedLength);
+        } else {
+            ByteBuffer plain = plain(metaBuffer.getDiscriminatorMap(), data, plainSize);
+            checkLength(cipher.encrypt(plain, target), encryptedLength);
+        }
+    }
+
+    private static ByteBuffer plain(DiscriminatorMap discriminatorMap, MetaData data, int plainSize)
+            throws NoMatchingDiscriminatorException {
+        ByteBuffer plain = ByteBuffer.allocate(plainSize);
+        new MetaByteBufferImpl(discriminatorMap, plain.duplicate()).writeData(data);
+        return plain;
+    }
+
+    private static int plainSize(MetaData data) {
+        long byteSize = CerberusData.totalSize(data);
         if (byteSize > Integer.MAX_VALUE)
             throw new ArrayIndexOutOfBoundsException();
+        return (int) byteSize;
+    }
 
-        MetaByteBuffer buffer = new MetaByteBufferImpl(metaBuffer.getDiscriminatorMap(), (int) byteSize);
-        buffer.writeData(get());
-        buffer.rewind();
-        byte[] data = new byte[buffer.remaining()];
-        buffer.read(data);
-        // cipher.reset();
-        cipher.encrypt(data);
-        metaBuffer.writeInt((int) byteSize);
-        metaBuffer.write(data);
+    /**
+     * Returns the length of the cipher text, which is written in front
+     * of it. The cipher has to know the length in advance, since the size
+     * of this element is written before the element itself.
+     */
+    private int encryptedLength(int plainSize) {
+        int encryptedLength = cipher.getEncryptedLength(plainSize);
+        if (encryptedLength < 0)
+            throw new IllegalStateException("Cipher " + cipher.getClass().getName()
+                    + " does not know the encrypted length of " + plainSize + " bytes in advance!");
+        return encryptedLength;
+    }
+
+    private static void checkLength(int written, int encryptedLength) {
+        if (written != encryptedLength)
+            throw new IllegalStateException("Failed to encrypt the data of a cipher element");
     }
 
     @Override
     public long byteSize() {
-        return CerberusData.totalSize(get());
+        return 4 + encryptedLength(plainSize(get()));
     }
 
     @Override
@@ -22,6 +22,7 @@
 
 package com.cerberustek.data.impl.elements;
 
+import com.cerberustek.CerberusData;
 import com.cerberustek.cipher.SymmetricCipher;
 import com.cerberustek.data.MetaBuilder;
 import com.cerberustek.data.MetaByteBuffer;
@@ -30,6 +31,8 @@ import com.cerberustek.data.impl.buffer.MetaByteBufferImpl;
 import com.cerberustek.exception.UnknownDiscriminatorException;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.logging.Level;
 
 public class CipherElementBuilder implements MetaBuilder<CipherElement> {
 
@@ -43,26 +46,32 @@ public class CipherElementBuilder implements MetaBuilder<CipherElement> {
     public CipherElement build(String tag, MetaInputStream inputStream) throws IOException, UnknownDiscriminatorException {
         byte[] data = new byte[inputStream.readInt()];
         inputStream.readFully(data);
+        ByteBuffer raw = ByteBuffer.wrap(data);
         // cipher.reset();
-        cipher.decrypt(data);
+        int length = cipher.decrypt(raw, raw.duplicate());
+        if (length < 0) {
+            CerberusData.getLogger().log(Level.WARNING, "Failed to decrypt cipher data!");
+            return null;
+        }
 
-        MetaByteBuffer buffer = new MetaByteBufferImpl(inputStream.getDiscriminatorMap(), data.length);
-        buffer.write(data);
-        buffer.rewind();
+        MetaByteBuffer buffer = new MetaByteBufferImpl(inputStream.getDiscriminatorMap(),
+                ByteBuffer.wrap(data, 0, length));
         //noinspection unchecked
         return new CipherElement(cipher, buffer.readData());
     }
 
     @Override
     public CipherElement build(String tag, MetaByteBuffer buffer) throws UnknownDiscriminatorException {
-        byte[] data = new byte[buffer.readInt()];
-        buffer.read(data);
+        ByteBuffer data = buffer.slice(buffer.readInt());
+        ByteBuffer raw = ByteBuffer.allocate(data.remaining());
         // cipher.reset();
-        cipher.decrypt(data);
+        if (cipher.decrypt(data, raw) < 0) {
+            CerberusData.getLogger().log(Level.WARNING, "Failed to decrypt cipher data!");
+            return null;
+        }
+        raw.flip();
 
-        MetaByteBuffer buf = new MetaByteBufferImpl(buffer.getDiscriminatorMap(), data.length);
-        buf.write(data);
-        buf.rewind();
+        MetaByteBuffer buf = new MetaByteBufferImpl(buffer.getDiscriminatorMap(), raw);
         //noinspection unchecked
         return new CipherElement(cipher, buf.readData());
     }
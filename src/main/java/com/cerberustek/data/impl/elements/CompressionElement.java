@@ -25,47 +25,203 @@ package com.cerberustek.data.impl.elements;
 import com.cerberustek.CerberusData;
 import com.cerberustek.data.*;
 import com.cerberustek.data.impl.MetaElementImpl;
-import com.cerberustek.data.impl.buffer.MetaByteBufferImpl;
+import com.cerberustek.data.impl.compression.CodecRegistry;
+import com.cerberustek.data.impl.compression.CompressedPayload;
+import com.cerberustek.data.impl.compression.DeflateCodec;
+import com.cerberustek.data.impl.compression.DeflaterPool;
+import com.cerberustek.data.impl.compression.GrowableBuffer;
+import com.cerberustek.data.impl.compression.InflaterPool;
 import com.cerberustek.data.impl.tags.CompressionTag;
 import com.cerberustek.exception.NoMatchingDiscriminatorException;
 import com.cerberustek.exception.UnknownDiscriminatorException;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Objects;
 import java.util.zip.Deflater;
 
 public class CompressionElement<T extends MetaData> extends MetaElementImpl<T> implements MetaCompression<T> {
 
-    private final Deflater deflater;
+    private static final CompressionCodec DEFAULT_CODEC = new DeflateCodec();
+
+    private final CompressionCodec codec;
+    private final short codecId;
 
     private byte[] buffer = null;
+    private int rawLength = 0;
     private int deflatedLength = 0;
 
+    private DiscriminatorMap discriminatorMap;
+    private volatile boolean inflated = true;
+    private boolean stale;
+
     public CompressionElement(T data) {
-        this(data, new Deflater());
+        this(data, DEFAULT_CODEC, CodecRegistry.DEFLATE);
     }
 
+    /**
+     * Creates a deflate compressed element, which prefers the specified
+     * deflater over one from the default deflater pool.
+     * @param data data
+     * @param deflater deflater
+     */
     public CompressionElement(T data, Deflater deflater) {
+        this(data, new DeflateCodec(new DeflaterPool(deflater), InflaterPool.getDefault()), CodecRegistry.DEFLATE);
+    }
+
+    /**
+     * Creates a compression element, which compresses its data with the
+     * specified codec. The id of the codec is looked up in the default
+     * codec registry.
+     * @param data data
+     * @param codec compression codec
+     */
+    public CompressionElement(T data, CompressionCodec codec) {
+        this(data, codec, CodecRegistry.getDefault().getId(codec.getClass()));
+    }
+
+    /**
+     * Creates a compression element, which compresses its data with the
+     * codec registered for the id in the specified registry.
+     * @param data data
+     * @param registry codec registry
+     * @param codecId codec id
+     */
+    public CompressionElement(T data, CodecRegistry registry, short codecId) {
+        this(data, codec(registry, codecId), codecId);
+    }
+
+    /**
+     * Creates a compression element, which compresses its data with the
+     * specified codec. The codec id is written together with the
+     * compressed data, so it has to identify the codec in the registry
+     * the element is read with.
+     * @param data data
+     * @param codec compression codec
+     * @param codecId codec id
+     */
+    public CompressionElement(T data, CompressionCodec codec, short codecId) {
         super(data);
-        this.deflater = deflater;
+        this.codec = codec;
+        this.codecId = codecId;
+    }
+
+    /**
+     * Creates a compression element from its compressed payload, which
+     * is only decompressed once the data is accessed. As long as the
+     * data is not accessed, the element is serialized with its original
+     * payload. Accessing the data marks the payload as stale, so it is
+     * compressed again with the same codec and discriminator map before
+     * the element is serialized the next time.
+     * @param codec compression codec, or null if the codec is unknown
+     * @param codecId codec id
+     * @param rawLength uncompressed length
+     * @param buffer compressed payload
+     * @param discriminatorMap discriminator map of the compressed data
+     */
+    public CompressionElement(CompressionCodec codec, short codecId, int rawLength, byte[] buffer,
+                              DiscriminatorMap discriminatorMap) {
+        this.codec = codec;
+        this.codecId = codecId;
+        this.rawLength = rawLength;
+        this.buffer = buffer;
+        this.deflatedLength = buffer.length;
+        this.discriminatorMap = discriminatorMap;
+        this.inflated = false;
+    }
+
+    /**
+     * Returns the data of this element. Since the caller might modify
+     * the data, the payload of a lazily read element is compressed again
+     * before the next serialization.
+     * @return data
+     */
+    @Override
+    public T get() {
+        T data = peek();
+        if (discriminatorMap != null)
+            stale = true;
+        return data;
+    }
+
+    /**
+     * Returns the data of this element for reading only. In contrast to
+     * <code>get()</code>, the payload of a lazily read element stays
+     * valid, so it is still serialized byte for byte.
+     * @return data
+     */
+    protected T peek() {
+        if (!inflated)
+            inflate();
+        return super.get();
+    }
+
+    @Override
+    public void set(T value) {
+        super.set(value);
+        inflated = true;
+        if (discriminatorMap != null)
+            stale = true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized void inflate() {
+        if (inflated)
+            return;
+        if (codec == null)
+            throw new IllegalStateException("Unable to decompress data with unknown codec " + codecId + "!");
+
+        try (InputStream inputStream = codec.decompress(new ByteArrayInputStream(buffer, 0, deflatedLength))) {
+            super.set((T) CerberusData.createInputStream(inputStream, discriminatorMap).readData());
+        } catch (IOException | UnknownDiscriminatorException e) {
+            throw new IllegalStateException("Failed to decompress lazy compression element", e);
+        }
+        inflated = true;
+    }
+
+    private void recompress() {
+        stale = false;
+        try {
+            if (!deflate(discriminatorMap))
+                throw new IllegalStateException("Unable to compress the data of a lazy compression element");
+        } catch (IOException | NoMatchingDiscriminatorException | UnknownDiscriminatorException e) {
+            throw new IllegalStateException("Failed to compress lazy compression element", e);
+        }
     }
 
     @Override
     public void serialize(MetaOutputStream metaOutputStream) throws IOException, NoMatchingDiscriminatorException {
-        metaOutputStream.writeInt(buffer.length);
+        if (stale)
+            recompress();
+        if (codecId != CodecRegistry.DEFLATE) {
+            metaOutputStream.writeInt(CompressedPayload.CODEC_MARKER);
+            metaOutputStream.writeShort(codecId);
+        }
+        metaOutputStream.writeInt(rawLength);
         metaOutputStream.writeInt(deflatedLength);
         metaOutputStream.write(buffer, 0, deflatedLength);
     }
 
     @Override
     public void serialize(MetaByteBuffer metaBuffer) throws NoMatchingDiscriminatorException {
-        metaBuffer.writeInt(buffer.length);
+        if (stale)
+            recompress();
+        if (codecId != CodecRegistry.DEFLATE) {
+            metaBuffer.writeInt(CompressedPayload.CODEC_MARKER);
+            metaBuffer.writeShort(codecId);
+        }
+        metaBuffer.writeInt(rawLength);
         metaBuffer.writeInt(deflatedLength);
         metaBuffer.write(buffer, 0, deflatedLength);
     }
 
     @Override
     public long byteSize() {
-        return deflatedLength + 8;
+        if (stale)
+            recompress();
+        return deflatedLength + (codecId != CodecRegistry.DEFLATE ? 14 : 8);
     }
 
     @Override
@@ -73,32 +229,98 @@ public class CompressionElement<T extends MetaData> extends MetaElementImpl<T> i
         return -1;
     }
 
+    /**
+     * Compresses the data of this element with its codec. The data is
+     * written through the codec while it is serialized, so the
+     * uncompressed data is never held in memory as a whole.
+     * @param discriminatorMap discriminator map
+     * @return false if there is no data, or if the uncompressed data is
+     *          too large to be stored in a compression element
+     * @throws IOException the codec is not registered, or failed to
+     *          compress the data
+     */
     @Override
     public boolean deflate(DiscriminatorMap discriminatorMap) throws IOException, NoMatchingDiscriminatorException, UnknownDiscriminatorException {
-        if (get() != null) {
-            long size = CerberusData.totalSize(get()) + 4;
-
-            if (size < Integer.MAX_VALUE - 3) {
-                MetaByteBuffer outputBuffer = new MetaByteBufferImpl(discriminatorMap, (int) size);
-                outputBuffer.writeData(get());
-
-                byte[] raw = new byte[outputBuffer.capacity()];
-                buffer = new byte[outputBuffer.capacity()];
-                outputBuffer.rewind();
-                outputBuffer.read(raw);
-
-                deflater.setInput(raw);
-                deflater.finish();
-                deflatedLength = deflater.deflate(buffer);
-                deflater.reset();
-                return true;
-            }
+        // the payload of data, that has never been accessed, is still valid
+        if (!inflated)
+            return true;
+        T data = super.get();
+        if (data == null)
+            return false;
+
+        if (codec == null || codecId == CodecRegistry.UNKNOWN)
+            throw new IOException("Compression codec " + (codec != null ? codec.getClass().getName() : codecId)
+                    + " is not registered!");
+
+        GrowableBuffer compressed = new GrowableBuffer(CompressedPayload.STREAM_BUFFER_SIZE);
+        MetaOutputStream outputStream;
+        try (OutputStream compressor = codec.compress(compressed)) {
+            outputStream = CerberusData.createOutputStream(compressor, discriminatorMap);
+            outputStream.writeData(data);
+            outputStream.flush();
         }
-        return false;
+
+        long raw = outputStream.getByteCount();
+        if (raw > Integer.MAX_VALUE || compressed.size() > Integer.MAX_VALUE - 14)
+            return false;
+
+        buffer = compressed.compact();
+        rawLength = (int) raw;
+        deflatedLength = compressed.size();
+        return true;
+    }
+
+    public boolean isDeflated() {
+        return buffer != null;
+    }
+
+    /**
+     * Returns if the data of this element has been decompressed. Only
+     * lazily read elements can be not inflated.
+     * @return is inflated
+     */
+    public boolean isInflated() {
+        return inflated;
+    }
+
+    public CompressionCodec getCodec() {
+        return codec;
+    }
+
+    public short getCodecId() {
+        return codecId;
     }
 
     @Override
     public CompressionTag<T> toTag(String tag) {
-        return new CompressionTag<>(tag, get());
+        return new CompressionTag<>(tag, get(), codec, codecId);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null || !obj.getClass().equals(getClass()))
+            return false;
+
+        return Objects.equals(((CompressionElement<?>) obj).peek(), peek());
+    }
+
+    @Override
+    public int hashCode() {
+        T data = peek();
+        return data != null ? data.hashCode() : super.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        if (this instanceof MetaTag)
+            return "[" + getClass().getName() + "]<" + ((MetaTag) this).getTag() + ">: " + peek();
+        return "[" + getClass().getName() + "]: " + peek();
+    }
+
+    private static CompressionCodec codec(CodecRegistry registry, short codecId) {
+        CompressionCodec codec = registry.getCodec(codecId);
+        if (codec == null)
+            throw new IllegalArgumentException("No compression codec is registered for id " + codecId + "!");
+        return codec;
     }
 }
@@ -22,66 +22,68 @@
 
 package com.cerberustek.data.impl.elements;
 
-import com.cerberustek.CerberusData;
 import com.cerberustek.data.MetaBuilder;
 import com.cerberustek.data.MetaByteBuffer;
 import com.cerberustek.data.MetaInputStream;
-import com.cerberustek.data.impl.buffer.MetaByteBufferImpl;
+import com.cerberustek.data.impl.compression.CodecRegistry;
+import com.cerberustek.data.impl.compression.CompressedPayload;
+import com.cerberustek.data.impl.compression.DeflateCodec;
+import com.cerberustek.data.impl.compression.DeflaterPool;
+import com.cerberustek.data.impl.compression.InflaterPool;
 import com.cerberustek.exception.UnknownDiscriminatorException;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.util.logging.Level;
-import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
 @SuppressWarnings("Duplicates")
 public class CompressionElementBuilder implements MetaBuilder<CompressionElement> {
 
-    private final Inflater inflater;
+    private final CodecRegistry registry;
+    private final boolean lazy;
 
     public CompressionElementBuilder() {
-        this(new Inflater());
+        this(CodecRegistry.getDefault());
     }
 
+    /**
+     * Creates a builder, which prefers the specified inflater over
+     * inflaters from the default inflater pool for deflated data.
+     * @param inflater inflater
+     */
     public CompressionElementBuilder(Inflater inflater) {
-        this.inflater = inflater;
+        this(CodecRegistry.genDefaultCodecs(), false);
+        registry.unregisterCodec(DeflateCodec.class);
+        registry.registerCodec(DeflateCodec.class,
+                new DeflateCodec(DeflaterPool.getDefault(), new InflaterPool(inflater)), CodecRegistry.DEFLATE);
+    }
+
+    public CompressionElementBuilder(CodecRegistry registry) {
+        this(registry, false);
+    }
+
+    /**
+     * Creates a builder, which decompresses the data of the built
+     * elements either right away, or only once it is accessed.
+     * @param registry codec registry
+     * @param lazy decompress on first access
+     */
+    public CompressionElementBuilder(CodecRegistry registry, boolean lazy) {
+        this.registry = registry;
+        this.lazy = lazy;
     }
 
     @Override
     public CompressionElement build(String tag, MetaInputStream inputStream) throws IOException, UnknownDiscriminatorException {
-        byte[] buffer = new byte[inputStream.readInt()];
-        byte[] raw = new byte[inputStream.readInt()];
-        inputStream.readFully(raw);
-        inflater.setInput(raw);
-        try {
-            inflater.inflate(buffer);
-            MetaByteBuffer b = new MetaByteBufferImpl(inputStream.getDiscriminatorMap(), ByteBuffer.wrap(buffer));
-            return new CompressionElement<>(b.readData());
-        } catch (DataFormatException e) {
-            CerberusData.getLogger().log(Level.WARNING, "failed to inflate data from Compression Element");
-        } finally {
-            inflater.reset();
-        }
-        return null;
+        if (lazy)
+            return CompressedPayload.readLazy(inputStream, registry, CompressionElement::new);
+        return CompressedPayload.read(inputStream, registry, CompressionElement::new);
     }
 
     @Override
     public CompressionElement build(String tag, MetaByteBuffer buffer) throws UnknownDiscriminatorException {
-        byte[] buf = new byte[buffer.readInt()];
-        byte[] raw = new byte[buffer.readInt()];
-        buffer.read(raw);
-        inflater.setInput(raw);
-        try {
-            inflater.inflate(buf);
-            MetaByteBuffer b = new MetaByteBufferImpl(buffer.getDiscriminatorMap(), ByteBuffer.wrap(buf));
-            return new CompressionElement<>(b.readData());
-        } catch (DataFormatException e) {
-            CerberusData.getLogger().log(Level.WARNING, "failed to inflate data from Compression Element");
-        } finally {
-            inflater.reset();
-        }
-        return null;
+        if (lazy)
+            return CompressedPayload.readLazy(buffer, registry, CompressionElement::new);
+        return CompressedPayload.read(buffer, registry, CompressionElement::new);
     }
 
     @Override
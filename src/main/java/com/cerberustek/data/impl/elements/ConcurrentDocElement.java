@@ -0,0 +1,168 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data.impl.elements;
+
+import com.cerberustek.data.MetaByteBuffer;
+import com.cerberustek.data.MetaDoc;
+import com.cerberustek.data.MetaElement;
+import com.cerberustek.data.MetaOutputStream;
+import com.cerberustek.data.MetaTag;
+import com.cerberustek.data.impl.DocSnapshot;
+import com.cerberustek.data.impl.MetaDocImpl;
+import com.cerberustek.data.impl.tags.ConcurrentDocTag;
+import com.cerberustek.exception.NoMatchingDiscriminatorException;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Document which can be read and modified by multiple threads at the
+ * same time. The tags are stored in a concurrent hash map, so tags
+ * can not be null and need to have a non-null tag name.
+ *
+ * Serialization is weakly consistent: every <code>writeData</code> call
+ * captures the children of the document once and writes the size and
+ * exactly those children afterwards. The written count therefore always
+ * matches the amount of written children, even if the document is
+ * modified during serialization. Nested concurrent documents and maps
+ * are captured together with their parent. Calling <code>byteSize()</code>
+ * and <code>serialize()</code> directly captures the document twice.
+ */
+public class ConcurrentDocElement extends MetaDocImpl implements MetaElement<Map<String, MetaTag>> {
+
+    protected final ConcurrentHashMap<String, MetaTag> tags = new ConcurrentHashMap<>();
+
+    public ConcurrentDocElement() {
+        super();
+    }
+
+    public ConcurrentDocElement(ConcurrentDocElement other) {
+        this();
+        tags.putAll(other.tags);
+    }
+
+    @Override
+    public MetaDoc clear() {
+        tags.clear();
+        return this;
+    }
+
+    @Override
+    public MetaDoc insert(MetaTag data) {
+        tags.put(data.getTag(), data);
+        return this;
+    }
+
+    @Override
+    public MetaDoc remove(String tag) {
+        tags.remove(tag);
+        return this;
+    }
+
+    @Override
+    public int size() {
+        return tags.size();
+    }
+
+    @Override
+    public MetaTag extract(String tag) {
+        return tags.get(tag);
+    }
+
+    @Override
+    public boolean contains(String tag) {
+        return tags.containsKey(tag);
+    }
+
+    @Override
+    @NotNull
+    public Iterator<MetaTag> iterator() {
+        return tags.values().iterator();
+    }
+
+    @Override
+    protected <T extends MetaTag> T insertIfAbsent(@NotNull T value, @NotNull Class<T> clazz) {
+        MetaTag current = tags.putIfAbsent(value.getTag(), value);
+        if (current == null)
+            return value;
+
+        if (clazz.isInstance(current))
+            return clazz.cast(current);
+        throw new IllegalStateException("Value with tag: \"" + value.getTag() + "\" is not an instance" +
+                " of class: " + clazz + "!");
+    }
+
+    @Override
+    public void serialize(MetaOutputStream metaOutputStream) throws IOException, NoMatchingDiscriminatorException {
+        capture().serialize(metaOutputStream);
+    }
+
+    @Override
+    public void serialize(MetaByteBuffer metaBuffer) throws NoMatchingDiscriminatorException {
+        capture().serialize(metaBuffer);
+    }
+
+    @Override
+    public long byteSize() {
+        return capture().byteSize();
+    }
+
+    @Override
+    public DocSnapshot capture() {
+        return new DocSnapshot(tags.values());
+    }
+
+    @Override
+    public long finalSize() {
+        return -1;
+    }
+
+    @Override
+    public void set(Map<String, MetaTag> value) {
+        tags.putAll(value);
+    }
+
+    @Override
+    public Map<String, MetaTag> get() {
+        return tags;
+    }
+
+    public ConcurrentDocTag toTag(String tag) {
+        ConcurrentDocTag output = new ConcurrentDocTag(tag);
+        output.tags.putAll(tags);
+        return output;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null || !obj.getClass().equals(getClass()))
+            return false;
+
+        assert obj instanceof ConcurrentDocElement;
+        return ((ConcurrentDocElement) obj).get().equals(get());
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data.impl.elements;
+
+import com.cerberustek.CerberusData;
+import com.cerberustek.data.DiscriminatorMap;
+import com.cerberustek.data.MetaByteBuffer;
+import com.cerberustek.data.MetaData;
+import com.cerberustek.data.MetaElement;
+import com.cerberustek.data.MetaOutputStream;
+import com.cerberustek.data.impl.CanonicalOrder;
+import com.cerberustek.data.impl.ConcurrentMetaMapImpl;
+import com.cerberustek.data.impl.tags.ConcurrentMapTag;
+import com.cerberustek.exception.NoMatchingDiscriminatorException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * Map which can be read and modified by multiple threads at the same
+ * time. The map uses the same encoding as the map element, but since
+ * it is backed by a concurrent hash map, neither keys nor values can
+ * be null.
+ *
+ * Like the concurrent doc element, the entries are captured once per
+ * <code>writeData</code> call, so the written count always matches the
+ * amount of written entries.
+ */
+public class ConcurrentMapElement<T extends MetaElement, D extends MetaElement> extends ConcurrentMetaMapImpl<T, D>
+        implements MetaElement<Map<T, D>> {
+
+    private static final int ENTRY_HEADER = CerberusData.SIZE_DEC + 2 * CerberusData.DISCRIMINATOR_SIZE;
+
+    @Override
+    public void serialize(MetaOutputStream metaOutputStream) throws IOException, NoMatchingDiscriminatorException {
+        capture().serialize(metaOutputStream);
+    }
+
+    @Override
+    public void serialize(MetaByteBuffer metaBuffer) throws NoMatchingDiscriminatorException {
+        capture().serialize(metaBuffer);
+    }
+
+    @Override
+    public long byteSize() {
+        return capture().byteSize();
+    }
+
+    @Override
+    public MetaData capture() {
+        return new Snapshot(this);
+    }
+
+    @Override
+    public long finalSize() {
+        return -1;
+    }
+
+    @Override
+    public void set(Map<T, D> value) {
+        putAll(value);
+    }
+
+    @Override
+    public Map<T, D> get() {
+        return this;
+    }
+
+    public ConcurrentMapTag<T, D> toTag(String tag) {
+        ConcurrentMapTag<T, D> output = new ConcurrentMapTag<>(tag);
+        output.putAll(this);
+        return output;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null || !obj.getClass().equals(getClass()))
+            return false;
+
+        assert obj instanceof ConcurrentMapElement;
+        return ((ConcurrentMapElement) obj).get().equals(get());
+    }
+
+    private static class Snapshot implements MetaData {
+
+        private final MetaElement[] keys;
+        private final MetaElement[] values;
+        private final MetaData[] keyContents;
+        private final MetaData[] valueContents;
+        private final long[] sizes;
+        private final long size;
+
+        private Snapshot(Map<? extends MetaElement, ? extends MetaElement> map) {
+            ArrayList<MetaElement> keys = new ArrayList<>(map.size());
+            ArrayList<MetaElement> values = new ArrayList<>(map.size());
+            map.forEach((key, value) -> {
+                keys.add(key);
+                values.add(value);
+            });
+
+            int count = keys.size();
+            this.keys = keys.toArray(new MetaElement[count]);
+            this.values = values.toArray(new MetaElement[count]);
+            this.keyContents = new MetaData[count];
+            this.valueContents = new MetaData[count];
+            this.sizes = new long[count];
+
+            long size = 4;
+            for (int i = 0; i < count; i++) {
+                keyContents[i] = this.keys[i].capture();
+                valueContents[i] = this.values[i].capture();
+                sizes[i] = ENTRY_HEADER + CerberusData.size(keyContents[i]) + CerberusData.size(valueContents[i]);
+                size += sizes[i];
+            }
+            this.size = size;
+        }
+
+        @Override
+        public void serialize(MetaOutputStream metaOutputStream) throws IOException, NoMatchingDiscriminatorException {
+            DiscriminatorMap discriminators = metaOutputStream.getDiscriminatorMap();
+            metaOutputStream.writeInt(keys.length);
+            int[] order = metaOutputStream.isCanonical() ? CanonicalOrder.order(keys, discriminators) : null;
+            for (int n = 0; n < keys.length; n++) {
+                int i = order != null ? order[n] : n;
+                metaOutputStream.writeLong(sizes[i] - CerberusData.SIZE_DEC);
+                metaOutputStream.writeShort(discriminators.getDiscriminator(keys[i].getClass()));
+                metaOutputStream.writeShort(discriminators.getDiscriminator(values[i].getClass()));
+                keyContents[i].serialize(metaOutputStream);
+                valueContents[i].serialize(metaOutputStream);
+            }
+        }
+
+        @Override
+        public void serialize(MetaByteBuffer metaBuffer) throws NoMatchingDiscriminatorException {
+            DiscriminatorMap discriminators = metaBuffer.getDiscriminatorMap();
+            metaBuffer.writeInt(keys.length);
+            int[] order = metaBuffer.isCanonical() ? CanonicalOrder.order(keys, discriminators) : null;
+            for (int n = 0; n < keys.length; n++) {
+                int i = order != null ? order[n] : n;
+                metaBuffer.writeLong(sizes[i] - CerberusData.SIZE_DEC);
+                metaBuffer.writeShort(discriminators.getDiscriminator(keys[i].getClass()));
+                metaBuffer.writeShort(discriminators.getDiscriminator(values[i].getClass()));
+                keyContents[i].serialize(metaBuffer);
+                valueContents[i].serialize(metaBuffer);
+            }
+        }
+
+        @Override
+        public long byteSize() {
+            return size;
+        }
+
+        @Override
+        public long finalSize() {
+            return -1;
+        }
+
+        @Override
+        public MetaData capture() {
+            return this;
+        }
+    }
+}
@@ -24,38 +24,85 @@ package com.cerberustek.data.impl.elements;
 
 import com.cerberustek.CerberusData;
 import com.cerberustek.data.MetaByteBuffer;
+import com.cerberustek.data.MetaDoc;
 import com.cerberustek.data.MetaElement;
 import com.cerberustek.data.MetaOutputStream;
 import com.cerberustek.data.MetaTag;
+import com.cerberustek.data.impl.CanonicalOrder;
 import com.cerberustek.data.impl.tags.DocTag;
 import com.cerberustek.data.impl.MetaDocImpl;
+import com.cerberustek.data.impl.TagTable;
 import com.cerberustek.exception.NoMatchingDiscriminatorException;
+import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.Map;
 
 public class DocElement extends MetaDocImpl implements MetaElement<Map<String, MetaTag>> {
 
+    protected final TagTable tags = new TagTable();
+
     public DocElement() {
         super();
     }
 
     public DocElement(DocElement other) {
         this();
-        tags.putAll(other.tags);
+        for (MetaTag tag : other)
+            tags.insert(tag);
+    }
+
+    @Override
+    public MetaDoc clear() {
+        tags.clear();
+        return this;
+    }
+
+    @Override
+    public MetaDoc insert(MetaTag data) {
+        tags.insert(data);
+        return this;
+    }
+
+    @Override
+    public MetaDoc remove(String tag) {
+        tags.remove(tag);
+        return this;
+    }
+
+    @Override
+    public int size() {
+        return tags.size();
+    }
+
+    @Override
+    public MetaTag extract(String tag) {
+        return tags.get(tag);
+    }
+
+    @Override
+    public boolean contains(String tag) {
+        return tags.containsKey(tag);
+    }
+
+    @Override
+    @NotNull
+    public Iterator<MetaTag> iterator() {
+        return tags.values().iterator();
     }
 
     @Override
     public void serialize(MetaOutputStream metaOutputStream) throws IOException, NoMatchingDiscriminatorException {
         metaOutputStream.writeInt(size());
-        for (MetaTag tag : this)
+        for (MetaTag tag : metaOutputStream.isCanonical() ? CanonicalOrder.tags(this) : this)
             metaOutputStream.writeData(tag);
     }
 
     @Override
     public void serialize(MetaByteBuffer metaBuffer) throws NoMatchingDiscriminatorException {
         metaBuffer.writeInt(size());
-        for (MetaTag tag : this)
+        for (MetaTag tag : metaBuffer.isCanonical() ? CanonicalOrder.tags(this) : this)
             metaBuffer.writeData(tag);
     }
 
@@ -74,7 +121,8 @@ public class DocElement extends MetaDocImpl implements MetaElement<Map<String, M
 
     @Override
     public void set(Map<String, MetaTag> value) {
-        this.tags.putAll(value);
+        for (MetaTag tag : value.values())
+            tags.insert(tag);
     }
 
     @Override
@@ -84,7 +132,8 @@ public class DocElement extends MetaDocImpl implements MetaElement<Map<String, M
 
     public DocTag toTag(String tag) {
         DocTag output = new DocTag(tag);
-        output.tags.putAll(this.tags);
+        for (MetaTag child : this)
+            output.tags.insert(child);
         return output;
     }
 
@@ -104,19 +104,31 @@ public class EncryptionElement extends MetaElementImpl<byte[]> {
             cap += ((MetaTag) data).getTag().getBytes().length + 2;
 
         if (size < Integer.MAX_VALUE - 3) {
-            MetaByteBuffer outputBuffer = new MetaByteBufferImpl(map, (int) cap);
+            ByteBuffer raw = ByteBuffer.allocateDirect((int) cap);
+            MetaByteBuffer outputBuffer = new MetaByteBufferImpl(map, raw);
             outputBuffer.writeShort(discriminator);
             if (data.finalSize() < 0)
                 outputBuffer.writeLong(size);
             if (data instanceof MetaTag)
                 outputBuffer.writeUTF(((MetaTag) data).getTag());
             data.serialize(outputBuffer);
-
-            byte[] raw = new byte[outputBuffer.capacity()];
-            outputBuffer.rewind();
-            outputBuffer.read(raw);
-
-            set(cipher.encrypt(raw));
+            raw.flip();
+
+            int length = cipher.getEncryptedLength(raw.remaining());
+            if (length < 0) {
+                byte[] plain = new byte[raw.remaining()];
+                raw.get(plain);
+                set(cipher.encrypt(plain));
+                return true;
+            }
+
+            // encrypt straight out of the serialization buffer
+            byte[] encrypted = new byte[length];
+            int written = cipher.encrypt(raw, ByteBuffer.wrap(encrypted));
+            if (written < 0)
+                set(null);
+            else
+                set(written == length ? encrypted : Arrays.copyOf(encrypted, written));
             return true;
         }
         return false;
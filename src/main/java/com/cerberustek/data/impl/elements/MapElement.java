@@ -26,11 +26,13 @@ import com.cerberustek.CerberusData;
 import com.cerberustek.data.MetaByteBuffer;
 import com.cerberustek.data.MetaElement;
 import com.cerberustek.data.MetaOutputStream;
+import com.cerberustek.data.impl.CanonicalOrder;
 import com.cerberustek.data.impl.MetaMapImpl;
 import com.cerberustek.data.impl.tags.MapTag;
 import com.cerberustek.exception.NoMatchingDiscriminatorException;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Map;
 
 @SuppressWarnings("Duplicates")
@@ -40,8 +42,11 @@ public class MapElement<T extends MetaElement, D extends MetaElement> extends Me
     @Override
     public void serialize(MetaOutputStream metaOutputStream) throws IOException, NoMatchingDiscriminatorException {
         metaOutputStream.writeInt(size());
-        for (T t : keySet()) {
-            long size = 0;
+        Collection<T> keys = metaOutputStream.isCanonical() ?
+                CanonicalOrder.elements(keySet(), metaOutputStream.getDiscriminatorMap()) : keySet();
+        for (T t : keys) {
+            // the entry size covers everything after the size field
+            long size = 2 * CerberusData.DISCRIMINATOR_SIZE;
 
             if (t != null) {
                 size += CerberusData.size(t);
@@ -57,8 +62,6 @@ public class MapElement<T extends MetaElement, D extends MetaElement> extends Me
                     t.serialize(metaOutputStream);
                     value.serialize(metaOutputStream);
                 } else {
-                    size += CerberusData.DISCRIMINATOR_SIZE;
-
                     metaOutputStream.writeLong(size);
                     metaOutputStream.writeShort(metaOutputStream.getDiscriminatorMap().getDiscriminator(t.getClass()));
                     metaOutputStream.writeShort(CerberusData.CERBERUS_NULL);
@@ -71,8 +74,11 @@ public class MapElement<T extends MetaElement, D extends MetaElement> extends Me
     @Override
     public void serialize(MetaByteBuffer metaBuffer) throws NoMatchingDiscriminatorException {
         metaBuffer.writeInt(size());
-        for (T t : keySet()) {
-            long size = 0;
+        Collection<T> keys = metaBuffer.isCanonical() ?
+                CanonicalOrder.elements(keySet(), metaBuffer.getDiscriminatorMap()) : keySet();
+        for (T t : keys) {
+            // the entry size covers everything after the size field
+            long size = 2 * CerberusData.DISCRIMINATOR_SIZE;
 
             if (t != null) {
                 size += CerberusData.size(t);
@@ -80,7 +86,6 @@ public class MapElement<T extends MetaElement, D extends MetaElement> extends Me
 
                 if (value != null) {
                     size += CerberusData.size(value);
-                    size += 8 + CerberusData.DISCRIMINATOR_SIZE * CerberusData.DISCRIMINATOR_SIZE; // Size dec and stuff like that
 
                     /* Both key and value are != null */
                     metaBuffer.writeLong(size);
@@ -89,8 +94,6 @@ public class MapElement<T extends MetaElement, D extends MetaElement> extends Me
                     t.serialize(metaBuffer);
                     value.serialize(metaBuffer);
                 } else {
-                    size += 8 + CerberusData.DISCRIMINATOR_SIZE * CerberusData.DISCRIMINATOR_SIZE; // Size dec and stuff like that
-
                     metaBuffer.writeLong(size);
                     metaBuffer.writeShort(metaBuffer.getDiscriminatorMap().getDiscriminator(t.getClass()));
                     metaBuffer.writeShort(CerberusData.CERBERUS_NULL);
@@ -83,8 +83,9 @@ public class MapElementBuilder implements MetaBuilder<MapElement> {
                     value = null;
                 output.put(key, value);
             } catch (UnknownDiscriminatorException e) {
-                long currentByteCount = buffer.remaining();
-                buffer.skipFully(size - (currentByteCount - read));
+                // the remaining bytes of the buffer shrink while the entry is read
+                long currentRemaining = buffer.remaining();
+                buffer.skipFully(size - (read - currentRemaining));
                 CerberusData.getLogger().log(Level.WARNING, "Failed to read element of meta map; " + size + " bytes lost!");
             }
         }
@@ -27,6 +27,7 @@ import com.cerberustek.data.MetaByteBuffer;
 import com.cerberustek.data.MetaData;
 import com.cerberustek.data.MetaElement;
 import com.cerberustek.data.MetaOutputStream;
+import com.cerberustek.data.impl.CanonicalOrder;
 import com.cerberustek.data.impl.MetaSetImpl;
 import com.cerberustek.data.impl.tags.SetTag;
 import com.cerberustek.exception.NoMatchingDiscriminatorException;
@@ -39,14 +40,14 @@ public class SetElement<T extends MetaData> extends MetaSetImpl<T> implements Me
     @Override
     public void serialize(MetaOutputStream metaOutputStream) throws IOException, NoMatchingDiscriminatorException {
         metaOutputStream.writeInt(size());
-        for (T t : this)
+        for (T t : metaOutputStream.isCanonical() ? CanonicalOrder.elements(this, metaOutputStream.getDiscriminatorMap()) : this)
             metaOutputStream.writeData(t);
     }
 
     @Override
     public void serialize(MetaByteBuffer metaBuffer) throws NoMatchingDiscriminatorException {
         metaBuffer.writeInt(size());
-        for (T t : this)
+        for (T t : metaBuffer.isCanonical() ? CanonicalOrder.elements(this, metaBuffer.getDiscriminatorMap()) : this)
             metaBuffer.writeData(t);
     }
 
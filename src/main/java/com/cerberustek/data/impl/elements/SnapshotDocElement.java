@@ -0,0 +1,229 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data.impl.elements;
+
+import com.cerberustek.data.MetaByteBuffer;
+import com.cerberustek.data.MetaDoc;
+import com.cerberustek.data.MetaElement;
+import com.cerberustek.data.MetaOutputStream;
+import com.cerberustek.data.MetaTag;
+import com.cerberustek.data.impl.DocSnapshot;
+import com.cerberustek.data.impl.MetaDocImpl;
+import com.cerberustek.data.impl.TagTrie;
+import com.cerberustek.data.impl.tags.SnapshotDocTag;
+import com.cerberustek.exception.NoMatchingDiscriminatorException;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Document which keeps its tags in a persistent trie. Modifications
+ * are applied to a working version of the document, which can be
+ * published atomically with <code>commit()</code>. Readers obtain a
+ * consistent, read-only view of the last committed version through
+ * <code>snapshot()</code> without any locking or copying.
+ *
+ * Snapshots only cover the tags of this document. Tags, which are
+ * shared between versions, should be replaced instead of being
+ * modified in place.
+ *
+ * Calling <code>byteSize()</code> and <code>serialize()</code> directly
+ * captures the working version twice, so a concurrent writer can make
+ * them disagree. Write the document with <code>writeData</code>, which
+ * takes both from one <code>capture()</code>, or serialize a
+ * <code>snapshot()</code> instead.
+ */
+public class SnapshotDocElement extends MetaDocImpl implements MetaElement<Map<String, MetaTag>> {
+
+    protected final AtomicReference<TagTrie> working;
+    protected final AtomicReference<TagTrie> committed;
+    private final boolean readOnly;
+
+    public SnapshotDocElement() {
+        this(TagTrie.EMPTY, false);
+    }
+
+    public SnapshotDocElement(SnapshotDocElement other) {
+        this(other.working.get(), false);
+    }
+
+    protected SnapshotDocElement(TagTrie trie, boolean readOnly) {
+        this.working = new AtomicReference<>(trie);
+        this.committed = new AtomicReference<>(trie);
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Publishes the current working version of this document, so it
+     * will be visible to following snapshots.
+     */
+    public void commit() {
+        checkWritable();
+        committed.set(working.get());
+    }
+
+    /**
+     * Discards all modifications since the last commit.
+     */
+    public void rollback() {
+        checkWritable();
+        working.set(committed.get());
+    }
+
+    /**
+     * Returns a read-only view of the last committed version of this
+     * document. The view is not affected by later modifications.
+     * @return snapshot
+     */
+    public SnapshotDocElement snapshot() {
+        return new SnapshotDocElement(committed.get(), true);
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    protected TagTrie trie() {
+        return working.get();
+    }
+
+    protected void checkWritable() {
+        if (readOnly)
+            throw new UnsupportedOperationException("Document snapshots are read-only");
+    }
+
+    @Override
+    public MetaDoc clear() {
+        checkWritable();
+        working.set(TagTrie.EMPTY);
+        return this;
+    }
+
+    @Override
+    public MetaDoc insert(MetaTag data) {
+        checkWritable();
+        working.updateAndGet(trie -> trie.put(data));
+        return this;
+    }
+
+    @Override
+    public MetaDoc remove(String tag) {
+        checkWritable();
+        working.updateAndGet(trie -> trie.remove(tag));
+        return this;
+    }
+
+    @Override
+    public int size() {
+        return working.get().size();
+    }
+
+    @Override
+    public MetaTag extract(String tag) {
+        return working.get().get(tag);
+    }
+
+    @Override
+    public boolean contains(String tag) {
+        return working.get().contains(tag);
+    }
+
+    @Override
+    @NotNull
+    public Iterator<MetaTag> iterator() {
+        return working.get().iterator();
+    }
+
+    @Override
+    public void serialize(MetaOutputStream metaOutputStream) throws IOException, NoMatchingDiscriminatorException {
+        capture().serialize(metaOutputStream);
+    }
+
+    @Override
+    public void serialize(MetaByteBuffer metaBuffer) throws NoMatchingDiscriminatorException {
+        capture().serialize(metaBuffer);
+    }
+
+    @Override
+    public long byteSize() {
+        return capture().byteSize();
+    }
+
+    /**
+     * Captures the current working version of this document. Meta
+     * streams and buffers write the size and the tags of the captured
+     * version, so concurrent modifications can not corrupt the stream.
+     * @return captured working version
+     */
+    @Override
+    public DocSnapshot capture() {
+        return new DocSnapshot(working.get());
+    }
+
+    @Override
+    public long finalSize() {
+        return -1;
+    }
+
+    @Override
+    public void set(Map<String, MetaTag> value) {
+        checkWritable();
+        working.updateAndGet(trie -> {
+            for (MetaTag tag : value.values())
+                trie = trie.put(tag);
+            return trie;
+        });
+    }
+
+    /**
+     * Returns an unmodifiable map view of the working version of this
+     * document.
+     * @return tags
+     */
+    @Override
+    public Map<String, MetaTag> get() {
+        return working.get().asMap();
+    }
+
+    public SnapshotDocTag toTag(String tag) {
+        return new SnapshotDocTag(tag, working.get());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null || !obj.getClass().equals(getClass()))
+            return false;
+
+        assert obj instanceof SnapshotDocElement;
+        return ((SnapshotDocElement) obj).get().equals(get());
+    }
+
+    @Override
+    public int hashCode() {
+        return get().hashCode();
+    }
+}
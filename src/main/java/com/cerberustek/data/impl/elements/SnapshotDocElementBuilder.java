@@ -0,0 +1,75 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data.impl.elements;
+
+import com.cerberustek.data.*;
+import com.cerberustek.exception.UnknownDiscriminatorException;
+
+import java.io.IOException;
+
+public class SnapshotDocElementBuilder implements MetaBuilder<SnapshotDocElement> {
+
+    @Override
+    public SnapshotDocElement build(String tag, MetaInputStream inputStream) throws IOException, UnknownDiscriminatorException {
+        SnapshotDocElement doc = new SnapshotDocElement();
+
+        int length = inputStream.readInt();
+        for (int i = 0; i < length; i++) {
+            MetaData data = inputStream.readData();
+            if (data instanceof MetaTag)
+                doc.insert((MetaTag) data);
+        }
+        doc.commit();
+        return doc;
+    }
+
+    @Override
+    public SnapshotDocElement build(String tag, MetaByteBuffer buffer) throws UnknownDiscriminatorException {
+        SnapshotDocElement doc = new SnapshotDocElement();
+
+        int length = buffer.readInt();
+        for (int i = 0; i < length; i++) {
+            MetaData data = buffer.readData();
+            if (data instanceof MetaTag)
+                doc.insert((MetaTag) data);
+        }
+        doc.commit();
+        return doc;
+    }
+
+    @Override
+    public Class<SnapshotDocElement> getDataClass() {
+        return SnapshotDocElement.class;
+    }
+
+    @Override
+    public int getFinalSize() {
+        return -1;
+    }
+
+    @Override
+    public boolean isTag() {
+        return false;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data.impl.elements;
+
+import com.cerberustek.CerberusData;
+import com.cerberustek.cipher.impl.SegmentedGCMCipher;
+import com.cerberustek.cipher.impl.SegmentedGCMOutputStream;
+import com.cerberustek.data.*;
+import com.cerberustek.data.impl.MetaElementImpl;
+import com.cerberustek.data.impl.buffer.MetaByteBufferImpl;
+import com.cerberustek.data.impl.compression.BoundedInputStream;
+import com.cerberustek.data.impl.tags.StreamEncryptionTag;
+import com.cerberustek.exception.NoMatchingDiscriminatorException;
+import com.cerberustek.exception.UnknownDiscriminatorException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.logging.Level;
+
+/**
+ * Element, which encrypts its data while it is written. In contrast to
+ * the encryption element, the data is piped through a segmented
+ * AES/GCM stream, so neither the serialized data nor the cipher text
+ * is ever held in memory as a whole. The element is written as:
+ *
+ * <code>{long<CipherTextLength>, byte[CipherTextLength]}</code>
+ *
+ * Since every segment carries its own authentication tag, the data is
+ * decrypted segment by segment while it is read as well.
+ */
+public class StreamEncryptionElement<T extends MetaData> extends MetaElementImpl<T> {
+
+    private final SegmentedGCMCipher cipher;
+    private final DiscriminatorMap discriminatorMap;
+
+    public StreamEncryptionElement(T value, SegmentedGCMCipher cipher, DiscriminatorMap discriminatorMap) {
+        super(value);
+        this.cipher = cipher;
+        this.discriminatorMap = discriminatorMap;
+    }
+
+    @Override
+    public void serialize(MetaOutputStream metaOutputStream) throws IOException, NoMatchingDiscriminatorException {
+        metaOutputStream.writeLong(cipherTextLength());
+        encrypt(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                metaOutputStream.write(b);
+            }
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) throws IOException {
+                metaOutputStream.write(buffer, offset, length);
+            }
+        });
+    }
+
+    @Override
+    public void serialize(MetaByteBuffer metaBuffer) throws NoMatchingDiscriminatorException {
+        // the buffer is held in memory anyway, so the segments can be encrypted in parallel
+        ByteBuffer raw = ByteBuffer.allocate((int) (get() == null ? CerberusData.DISCRIMINATOR_SIZE
+                : CerberusData.totalSize(get())));
+        new MetaByteBufferImpl(discriminatorMap, raw).writeData(get());
+        byte[] encrypted = cipher.encrypt(raw.array());
+        if (encrypted == null)
+            throw new IllegalStateException("Failed to encrypt stream encryption element");
+
+        metaBuffer.writeLong(encrypted.length);
+        metaBuffer.write(encrypted);
+    }
+
+    private void encrypt(OutputStream outputStream) throws IOException, NoMatchingDiscriminatorException {
+        SegmentedGCMOutputStream cipherStream = cipher.encrypt(outputStream);
+        MetaOutputStream dataStream = CerberusData.createOutputStream(cipherStream, discriminatorMap);
+        // no flush, since it would add a short segment to the precomputed cipher text length
+        dataStream.writeData(get());
+        cipherStream.finish();
+    }
+
+    private long cipherTextLength() {
+        return cipher.cipherTextLength(get() == null ? CerberusData.DISCRIMINATOR_SIZE : CerberusData.totalSize(get()));
+    }
+
+    @Override
+    public long byteSize() {
+        return 8 + cipherTextLength();
+    }
+
+    @Override
+    public long finalSize() {
+        return -1;
+    }
+
+    public SegmentedGCMCipher getCipher() {
+        return cipher;
+    }
+
+    public DiscriminatorMap getDiscriminatorMap() {
+        return discriminatorMap;
+    }
+
+    @Override
+    public StreamEncryptionTag<T> toTag(String tag) {
+        return new StreamEncryptionTag<>(tag, get(), cipher, discriminatorMap);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null || !obj.getClass().equals(getClass()))
+            return false;
+
+        return Objects.equals(((StreamEncryptionElement) obj).get(), get());
+    }
+
+    /**
+     * Reads and decrypts the data of a stream encryption element. If no
+     * cipher is specified, the cipher text is skipped.
+     * @param inputStream input stream
+     * @param cipher cipher, or null
+     * @return decrypted data, or null if the cipher text was skipped
+     * @throws IOException failed to read the data, or the cipher text
+     *          failed the authentication
+     * @throws UnknownDiscriminatorException the decrypted data can not
+     *          be read with the discriminator map of the stream
+     */
+    public static MetaData read(MetaInputStream inputStream, SegmentedGCMCipher cipher) throws IOException,
+            UnknownDiscriminatorException {
+        long length = inputStream.readLong();
+        if (length < 0)
+            throw new IOException("Invalid length of stream encrypted data: " + length);
+
+        if (cipher == null) {
+            CerberusData.getLogger().log(Level.WARNING, "Skipping stream encrypted data without a cipher!");
+            inputStream.skipFully(length);
+            return null;
+        }
+
+        BoundedInputStream bounded = new BoundedInputStream(inputStream, length);
+        MetaData data = decrypt(cipher.decrypt(bounded), inputStream.getDiscriminatorMap());
+        if (bounded.getRemaining() > 0) {
+            bounded.skipRemaining();
+            throw new IOException("Trailing data after stream encrypted data!");
+        }
+        return data;
+    }
+
+    public static MetaData read(MetaByteBuffer buffer, SegmentedGCMCipher cipher) throws UnknownDiscriminatorException {
+        long length = buffer.readLong();
+        if (length < 0 || length > buffer.remaining())
+            throw new IllegalStateException("Invalid length of stream encrypted data: " + length);
+
+        if (cipher == null) {
+            CerberusData.getLogger().log(Level.WARNING, "Skipping stream encrypted data without a cipher!");
+            buffer.skipFully(length);
+            return null;
+        }
+
+        byte[] raw = new byte[(int) length];
+        buffer.read(raw);
+        byte[] data = cipher.decrypt(raw);
+        if (data == null)
+            throw new IllegalStateException("Failed to decrypt stream encryption element");
+        return new MetaByteBufferImpl(buffer.getDiscriminatorMap(), ByteBuffer.wrap(data)).readData();
+    }
+
+    private static MetaData decrypt(InputStream inputStream, DiscriminatorMap discriminatorMap) throws IOException,
+            UnknownDiscriminatorException {
+        MetaData data = CerberusData.createInputStream(inputStream, discriminatorMap).readData();
+        // the last segment has to be authenticated, even if it holds no more data
+        if (inputStream.read() >= 0)
+            throw new IOException("Trailing data after stream encrypted data!");
+        return data;
+    }
+}
@@ -70,6 +70,16 @@ public class CountingInputStream extends InputStream implements CountingStream {
         in.reset();
     }
 
+    @Override
+    public int available() throws IOException {
+        return in.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
     @Override
     public void resetByteCount() {
         count = 0;
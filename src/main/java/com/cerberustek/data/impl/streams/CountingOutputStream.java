@@ -27,6 +27,12 @@ import com.cerberustek.data.CountingStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
+/**
+ * Output stream, which counts the bytes written to the wrapped stream.
+ * Flushing and closing are forwarded, so closing a meta output stream
+ * also closes the stream it writes to, and wrapping streams like
+ * ciphers and codecs can write their final data.
+ */
 public class CountingOutputStream extends OutputStream implements CountingStream {
 
     private final OutputStream out;
@@ -56,6 +62,16 @@ public class CountingOutputStream extends OutputStream implements CountingStream
         out.write(b, off, len);
     }
 
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
     @Override
     public void resetByteCount() {
         count = 0;
@@ -30,6 +30,7 @@ import com.cerberustek.data.MetaInputStream;
 import com.cerberustek.exception.UnknownDiscriminatorException;
 
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.logging.Level;
@@ -65,8 +66,16 @@ public class MetaInputStreamImpl extends DataInputStream implements MetaInputStr
     @Override
     public void skipFully(long length) throws IOException {
         long skipped = 0;
-        while (skipped < length)
-            skipped += skipBytes((int) length);
+        while (skipped < length) {
+            int step = skipBytes((int) Math.min(length - skipped, Integer.MAX_VALUE));
+            if (step <= 0) {
+                // skipBytes may give up before the end of the stream is reached
+                if (read() < 0)
+                    throw new EOFException("Unexpected end of stream after skipping " + skipped + " bytes");
+                step = 1;
+            }
+            skipped += step;
+        }
     }
 
     @Override
@@ -27,6 +27,7 @@ import com.cerberustek.data.DiscriminatorMap;
 import com.cerberustek.data.MetaData;
 import com.cerberustek.data.MetaOutputStream;
 import com.cerberustek.data.MetaTag;
+import com.cerberustek.data.impl.CapturedData;
 import com.cerberustek.exception.NoMatchingDiscriminatorException;
 
 import java.io.DataOutputStream;
@@ -37,6 +38,7 @@ import java.io.OutputStream;
 public class MetaOutputStreamImpl extends DataOutputStream implements MetaOutputStream, AutoCloseable {
 
     private final DiscriminatorMap discriminatorMap;
+    private final boolean canonical;
 
     /**
      * Creates a new data output stream to write data to the specified
@@ -50,8 +52,22 @@ public class MetaOutputStreamImpl extends DataOutputStream implements MetaOutput
      * @see FilterOutputStream#out
      */
     public MetaOutputStreamImpl(OutputStream out, DiscriminatorMap discriminatorMap) {
+        this(out, discriminatorMap, false);
+    }
+
+    /**
+     * Creates a new data output stream, which writes the children of
+     * unordered containers in canonical order, if requested.
+     *
+     * @param out the underlying output stream
+     * @param discriminatorMap map of discriminators this stream uses to
+     *                         format data.
+     * @param canonical true, if the stream should be canonical
+     */
+    public MetaOutputStreamImpl(OutputStream out, DiscriminatorMap discriminatorMap, boolean canonical) {
         super(new CountingOutputStream(out));
         this.discriminatorMap = discriminatorMap;
+        this.canonical = canonical;
     }
 
     @Override
@@ -63,17 +79,19 @@ public class MetaOutputStreamImpl extends DataOutputStream implements MetaOutput
     @Override
     public void writeData(MetaData data) throws IOException, NoMatchingDiscriminatorException {
         if (data != null) {
-            short discriminator = discriminatorMap.getDiscriminator(data.getClass());
+            MetaData source = CapturedData.source(data);
+            short discriminator = discriminatorMap.getDiscriminator(source.getClass());
 
             if (discriminator != CerberusData.CERBERUS_NULL) {
+                MetaData content = data.capture();
                 writeShort(discriminator);
-                if (data.finalSize() < 0)
-                    writeLong(CerberusData.size(data));
-                if (data instanceof MetaTag)
-                    writeUTF(((MetaTag) data).getTag());
-                data.serialize(this);
+                if (source.finalSize() < 0)
+                    writeLong(CerberusData.size(content));
+                if (source instanceof MetaTag)
+                    writeUTF(((MetaTag) source).getTag());
+                content.serialize(this);
             } else
-                throw new NoMatchingDiscriminatorException(data.getClass());
+                throw new NoMatchingDiscriminatorException(source.getClass());
         } else {
             writeShort(CerberusData.CERBERUS_NULL);
         }
@@ -99,6 +117,11 @@ public class MetaOutputStreamImpl extends DataOutputStream implements MetaOutput
         ((CountingOutputStream) super.out).resetByteCount();
     }
 
+    @Override
+    public boolean isCanonical() {
+        return canonical;
+    }
+
     @Override
     public DiscriminatorMap getDiscriminatorMap() {
         return discriminatorMap;
@@ -0,0 +1,91 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data.impl.tags;
+
+import com.cerberustek.data.CompressionCodec;
+import com.cerberustek.data.DiscriminatorMap;
+import com.cerberustek.data.MetaData;
+import com.cerberustek.data.MetaTag;
+import com.cerberustek.data.impl.compression.CodecRegistry;
+import com.cerberustek.data.impl.elements.BlockCompressedListElement;
+
+import java.util.List;
+import java.util.Objects;
+
+public class BlockCompressedListTag<T extends MetaData> extends BlockCompressedListElement<T> implements MetaTag {
+
+    private String tag;
+
+    public BlockCompressedListTag(String tag, DiscriminatorMap discriminatorMap) {
+        super(discriminatorMap);
+        this.tag = tag;
+    }
+
+    public BlockCompressedListTag(String tag, int blockSize, CompressionCodec codec, DiscriminatorMap discriminatorMap) {
+        super(blockSize, codec, discriminatorMap);
+        this.tag = tag;
+    }
+
+    public BlockCompressedListTag(String tag, int blockSize, CodecRegistry registry, short codecId,
+                                  DiscriminatorMap discriminatorMap) {
+        super(blockSize, registry, codecId, discriminatorMap);
+        this.tag = tag;
+    }
+
+    public BlockCompressedListTag(String tag, int blockSize, CompressionCodec codec, short codecId, List<Block> blocks,
+                                  DiscriminatorMap discriminatorMap) {
+        super(blockSize, codec, codecId, blocks, discriminatorMap);
+        this.tag = tag;
+    }
+
+    @Override
+    public void setTag(String tag) {
+        this.tag = tag;
+    }
+
+    @Override
+    public String getTag() {
+        return tag;
+    }
+
+    @Override
+    public BlockCompressedListElement<T> toElement() {
+        return new BlockCompressedListElement<>(getBlockSize(), getCodec(), getCodecId(), copyBlocks(),
+                getDiscriminatorMap());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (super.equals(obj)) {
+            assert obj instanceof MetaTag;
+            return ((MetaTag) obj).getTag().equals(getTag());
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(tag, get());
+    }
+}
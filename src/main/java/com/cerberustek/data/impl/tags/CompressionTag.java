@@ -22,7 +22,10 @@
 
 package com.cerberustek.data.impl.tags;
 
+import com.cerberustek.data.impl.compression.CodecRegistry;
 import com.cerberustek.data.impl.elements.CompressionElement;
+import com.cerberustek.data.CompressionCodec;
+import com.cerberustek.data.DiscriminatorMap;
 import com.cerberustek.data.MetaData;
 import com.cerberustek.data.MetaTag;
 
@@ -37,6 +40,27 @@ public class CompressionTag<T extends MetaData> extends CompressionElement<T> im
         this.tag = tag;
     }
 
+    public CompressionTag(String tag, T data, CompressionCodec codec) {
+        super(data, codec);
+        this.tag = tag;
+    }
+
+    public CompressionTag(String tag, T data, CodecRegistry registry, short codecId) {
+        super(data, registry, codecId);
+        this.tag = tag;
+    }
+
+    public CompressionTag(String tag, T data, CompressionCodec codec, short codecId) {
+        super(data, codec, codecId);
+        this.tag = tag;
+    }
+
+    public CompressionTag(String tag, CompressionCodec codec, short codecId, int rawLength, byte[] buffer,
+                          DiscriminatorMap discriminatorMap) {
+        super(codec, codecId, rawLength, buffer, discriminatorMap);
+        this.tag = tag;
+    }
+
     @Override
     public void setTag(String tag) {
         this.tag = tag;
@@ -49,11 +73,20 @@ public class CompressionTag<T extends MetaData> extends CompressionElement<T> im
 
     @Override
     public CompressionElement<T> toElement() {
-        return new CompressionElement<>(get());
+        return new CompressionElement<>(get(), getCodec(), getCodecId());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (super.equals(obj)) {
+            assert obj instanceof MetaTag;
+            return ((MetaTag) obj).getTag().equals(getTag());
+        }
+        return false;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(tag, get());
+        return Objects.hash(tag, peek());
     }
 }
@@ -22,71 +22,68 @@
 
 package com.cerberustek.data.impl.tags;
 
-import com.cerberustek.data.impl.buffer.MetaByteBufferImpl;
-import com.cerberustek.CerberusData;
 import com.cerberustek.data.MetaBuilder;
 import com.cerberustek.data.MetaByteBuffer;
 import com.cerberustek.data.MetaInputStream;
+import com.cerberustek.data.impl.compression.CodecRegistry;
+import com.cerberustek.data.impl.compression.CompressedPayload;
+import com.cerberustek.data.impl.compression.DeflateCodec;
+import com.cerberustek.data.impl.compression.DeflaterPool;
+import com.cerberustek.data.impl.compression.InflaterPool;
 import com.cerberustek.exception.UnknownDiscriminatorException;
 
 import java.io.IOException;
-import java.util.logging.Level;
-import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
 @SuppressWarnings("Duplicates")
 public class CompressionTagBuilder implements MetaBuilder<CompressionTag> {
 
-    private final Inflater inflater;
+    private final CodecRegistry registry;
+    private final boolean lazy;
 
     public CompressionTagBuilder() {
-        this(new Inflater());
+        this(CodecRegistry.getDefault());
     }
 
+    /**
+     * Creates a builder, which prefers the specified inflater over
+     * inflaters from the default inflater pool for deflated data.
+     * @param inflater inflater
+     */
     public CompressionTagBuilder(Inflater inflater) {
-        this.inflater = inflater;
+        this(CodecRegistry.genDefaultCodecs(), false);
+        registry.unregisterCodec(DeflateCodec.class);
+        registry.registerCodec(DeflateCodec.class,
+                new DeflateCodec(DeflaterPool.getDefault(), new InflaterPool(inflater)), CodecRegistry.DEFLATE);
+    }
+
+    public CompressionTagBuilder(CodecRegistry registry) {
+        this(registry, false);
+    }
+
+    /**
+     * Creates a builder, which decompresses the data of the built
+     * elements either right away, or only once it is accessed.
+     * @param registry codec registry
+     * @param lazy decompress on first access
+     */
+    public CompressionTagBuilder(CodecRegistry registry, boolean lazy) {
+        this.registry = registry;
+        this.lazy = lazy;
     }
 
     @Override
     public CompressionTag build(String tag, MetaInputStream inputStream) throws IOException, UnknownDiscriminatorException {
-        byte[] buffer = new byte[inputStream.readInt()];
-        byte[] raw = new byte[inputStream.readInt()];
-        inputStream.read(raw);
-        inflater.setInput(raw);
-        try {
-            inflater.inflate(buffer);
-            MetaByteBuffer b = new MetaByteBufferImpl(inputStream.getDiscriminatorMap(), buffer.length);
-            b.write(buffer);
-            b.rewind();
-            inflater.reset();
-            return new CompressionTag<>(tag, b.readData());
-        } catch (DataFormatException e) {
-            CerberusData.getLogger().log(Level.WARNING, "failed to inflate data from Compression Tag");
-        } finally {
-            inflater.reset();
-        }
-        return null;
+        if (lazy)
+            return CompressedPayload.readLazy(inputStream, registry, (codec, id, raw, data, map) -> new CompressionTag<>(tag, codec, id, raw, data, map));
+        return CompressedPayload.read(inputStream, registry, (data, codec, id) -> new CompressionTag<>(tag, data, codec, id));
     }
 
     @Override
     public CompressionTag build(String tag, MetaByteBuffer buffer) throws UnknownDiscriminatorException {
-        byte[] buf = new byte[buffer.readInt()];
-        byte[] raw = new byte[buffer.readInt()];
-        buffer.read(raw);
-        inflater.setInput(raw);
-        try {
-            inflater.inflate(buf);
-            MetaByteBuffer b = new MetaByteBufferImpl(buffer.getDiscriminatorMap(), buf.length);
-            b.write(buf);
-            b.rewind();
-            inflater.reset();
-            return new CompressionTag<>(tag, b.readData());
-        } catch (DataFormatException e) {
-            CerberusData.getLogger().log(Level.WARNING, "failed to inflate data from Compression Tag");
-        } finally {
-            inflater.reset();
-        }
-        return null;
+        if (lazy)
+            return CompressedPayload.readLazy(buffer, registry, (codec, id, raw, data, map) -> new CompressionTag<>(tag, codec, id, raw, data, map));
+        return CompressedPayload.read(buffer, registry, (data, codec, id) -> new CompressionTag<>(tag, data, codec, id));
     }
 
     @Override
@@ -0,0 +1,82 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.data.impl.tags;
+
+import com.cerberustek.cipher.impl.SegmentedGCMCipher;
+import com.cerberustek.data.MetaBuilder;
+import com.cerberustek.data.MetaByteBuffer;
+import com.cerberustek.data.MetaData;
+import com.cerberustek.data.MetaInputStream;
+import com.cerberustek.data.impl.elements.StreamEncryptionElement;
+import com.cerberustek.exception.UnknownDiscriminatorException;
+
+import java.io.IOException;
+
+public class StreamEncryptionTagBuilder implements MetaBuilder<StreamEncryptionTag> {
+
+    private final SegmentedGCMCipher cipher;
+
+    /**
+     * Creates a builder without a cipher. Stream encrypted data can not
+     * be decrypted by this builder and is skipped.
+     */
+    public StreamEncryptionTagBuilder() {
+        this(null);
+    }
+
+    public StreamEncryptionTagBuilder(SegmentedGCMCipher cipher) {
+        this.cipher = cipher;
+    }
+
+    @Override
+    public StreamEncryptionTag build(String tag, MetaInputStream inputStream) throws IOException, UnknownDiscriminatorException {
+        MetaData data = StreamEncryptionElement.read(inputStream, cipher);
+        if (data == null)
+            return null;
+        return new StreamEncryptionTag<>(tag, data, cipher, inputStream.getDiscriminatorMap());
+    }
+
+    @Override
+    public StreamEncryptionTag build(String tag, MetaByteBuffer buffer) throws UnknownDiscriminatorException {
+        MetaData data = StreamEncryptionElement.read(buffer, cipher);
+        if (data == null)
+            return null;
+        return new StreamEncryptionTag<>(tag, data, cipher, buffer.getDiscriminatorMap());
+    }
+
+    @Override
+    public Class<StreamEncryptionTag> getDataClass() {
+        return StreamEncryptionTag.class;
+    }
+
+    @Override
+    public int getFinalSize() {
+        return -1;
+    }
+
+    @Override
+    public boolean isTag() {
+        return true;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.store;
+
+import java.io.IOException;
+
+/**
+ * A content addressed store for binary blobs. Every blob is stored
+ * under the hash of its contents, so storing the same contents twice
+ * only takes up space once.
+ */
+public interface BlobStore extends AutoCloseable {
+
+    /**
+     * Size of the content hashes in bytes.
+     */
+    int HASH_SIZE = 32;
+
+    /**
+     * Stores the blob, if there is no blob with the same contents yet,
+     * and returns its content hash.
+     * @param data blob data
+     * @param offset offset of the blob in the data array
+     * @param length length of the blob
+     * @return content hash
+     * @throws IOException failed to write the blob
+     */
+    byte[] put(byte[] data, int offset, int length) throws IOException;
+
+    default byte[] put(byte[] data) throws IOException {
+        return put(data, 0, data.length);
+    }
+
+    /**
+     * Returns the contents of the blob with the specified hash, or null
+     * if there is no such blob.
+     * @param hash content hash
+     * @return blob data
+     * @throws IOException failed to read the blob
+     */
+    byte[] get(byte[] hash) throws IOException;
+
+    boolean contains(byte[] hash) throws IOException;
+
+    void close() throws IOException;
+}
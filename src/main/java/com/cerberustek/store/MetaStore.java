@@ -0,0 +1,95 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.cerberustek.store;
+
+import com.cerberustek.data.DiscriminatorMap;
+import com.cerberustek.data.MetaData;
+import com.cerberustek.data.impl.elements.UUIDElement;
+import com.cerberustek.exception.NoMatchingDiscriminatorException;
+import com.cerberustek.exception.UnknownDiscriminatorException;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * A persistent key-value store which maps uuid keys to meta data
+ * values. In contrast to reading a whole document from a stream,
+ * a store only pulls the parts of the file it actually needs to
+ * answer a request, so even stores with millions of entries can
+ * be opened without loading them into memory.
+ */
+public interface MetaStore extends AutoCloseable {
+
+    /**
+     * Returns the value stored for the specified key, or null if
+     * there is no such value.
+     * @param key key
+     * @return value
+     * @throws IOException failed to read from the store file
+     * @throws UnknownDiscriminatorException the stored value can not
+     *          be read with the discriminator map of this store
+     */
+    MetaData get(UUIDElement key) throws IOException, UnknownDiscriminatorException;
+    MetaData get(UUID key) throws IOException, UnknownDiscriminatorException;
+
+    /**
+     * Stores the value for the specified key. If there already is
+     * a value for the key, it will be replaced.
+     * @param key key
+     * @param value value
+     * @throws IOException failed to write to the store file
+     * @throws NoMatchingDiscriminatorException the value can not be
+     *          written with the discriminator map of this store
+     */
+    void put(UUIDElement key, MetaData value) throws IOException, NoMatchingDiscriminatorException;
+    void put(UUID key, MetaData value) throws IOException, NoMatchingDiscriminatorException;
+
+    boolean remove(UUIDElement key) throws IOException;
+    boolean remove(UUID key) throws IOException;
+
+    boolean contains(UUIDElement key) throws IOException;
+    boolean contains(UUID key) throws IOException;
+
+    long size();
+
+    /**
+     * Iterates over all entries of this store in key order.
+     * @param action action to perform for each entry
+     * @throws IOException failed to read from the store file
+     * @throws UnknownDiscriminatorException a stored value can not
+     *          be read with the discriminator map of this store
+     */
+    void forEach(BiConsumer<UUID, MetaData> action) throws IOException, UnknownDiscriminatorException;
+
+    /**
+     * Writes all modified pages back to the store file and forces
+     * them to the storage device.
+     * @throws IOException failed to write to the store file
+     */
+    void flush() throws IOException;
+
+    void close() throws IOException;
+
+    DiscriminatorMap getDiscriminatorMap();
+}
@@ -0,0 +1,99 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.store;
+
+import com.cerberustek.exception.NoMatchingDiscriminatorException;
+import com.cerberustek.exception.ResourceUnavailableException;
+import com.cerberustek.querry.QueryResult;
+import com.cerberustek.querry.ResourceLocation;
+import com.cerberustek.querry.trace.QueryTrace;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A write-ahead log of query traces. Mutations of a persisted document
+ * are appended to the log before they are applied to the document in
+ * memory, so the document can be restored after a crash by replaying
+ * the log onto the last persisted version of the document.
+ */
+public interface TraceLog extends AutoCloseable {
+
+    /**
+     * Appends the trace to the log and waits until it has been forced
+     * to the storage device.
+     * @param trace trace to log
+     * @throws IOException failed to write the log
+     * @throws NoMatchingDiscriminatorException the trace can not be
+     *          written with the discriminator map of this log
+     */
+    void append(QueryTrace trace) throws IOException, NoMatchingDiscriminatorException;
+
+    /**
+     * Appends the trace to the log. The returned future completes as
+     * soon as the trace has been forced to the storage device. Traces
+     * appended concurrently are forced together.
+     * @param trace trace to log
+     * @return future
+     * @throws NoMatchingDiscriminatorException the trace can not be
+     *          written with the discriminator map of this log
+     */
+    CompletableFuture<Void> appendAsync(QueryTrace trace) throws NoMatchingDiscriminatorException;
+
+    /**
+     * Logs the trace and applies it to the resource location afterwards.
+     * @param location location to apply the trace to
+     * @param trace trace
+     * @return result of the trace
+     * @throws IOException failed to write the log
+     * @throws NoMatchingDiscriminatorException the trace can not be
+     *          written with the discriminator map of this log
+     * @throws ResourceUnavailableException the trace could not be
+     *          applied to the location
+     */
+    default QueryResult execute(ResourceLocation location, QueryTrace trace)
+            throws IOException, NoMatchingDiscriminatorException, ResourceUnavailableException {
+        append(trace);
+        return location.trace(trace);
+    }
+
+    /**
+     * Applies all traces inside of the log to the resource location.
+     * This should be done once on startup, before any new traces are
+     * appended to the log.
+     * @param location location to apply the traces to
+     * @return amount of replayed traces
+     * @throws IOException failed to read the log
+     */
+    int replay(ResourceLocation location) throws IOException;
+
+    /**
+     * Discards all logged traces. This should be called after the
+     * document the traces were applied to has been persisted.
+     * @throws IOException failed to truncate the log
+     */
+    void checkpoint() throws IOException;
+
+    void close() throws IOException;
+}
@@ -0,0 +1,642 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.cerberustek.store.impl;
+
+import com.cerberustek.CerberusData;
+import com.cerberustek.data.DiscriminatorMap;
+import com.cerberustek.data.MetaByteBuffer;
+import com.cerberustek.data.MetaData;
+import com.cerberustek.data.impl.buffer.MetaByteBufferImpl;
+import com.cerberustek.data.impl.elements.UUIDElement;
+import com.cerberustek.exception.NoMatchingDiscriminatorException;
+import com.cerberustek.exception.UnknownDiscriminatorException;
+import com.cerberustek.store.MetaStore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * Meta store which keeps its keys in a B+tree of fixed size pages.
+ *
+ * Both leaf and inner nodes use the same page layout:
+ * <code>{byte<Type>, short<Count>, long<Link>, Entry[Count]}</code>,
+ * where an entry is <code>{long<MostSignificant>, long<LeastSignificant>,
+ * long<Page>}</code>. For leaf nodes, the link points to the next leaf
+ * and the entry page points to the first page of the value. For inner
+ * nodes, the link points to the left most child, while the entry page
+ * points to the child holding all keys greater or equal to the entry
+ * key.
+ *
+ * Small values are packed into shared slotted pages with the layout
+ * <code>{short<SlotCount>, int<DataStart>, Slot[SlotCount], byte[]<Free>,
+ * byte[]<RawData>}</code>, where a slot is <code>{int<Offset>,
+ * int<Length>}</code> and the data grows from the end of the page. The
+ * entry of a packed value holds the page id and the slot index, tagged
+ * with the highest bit. Slots stay stable when a page is compacted, so
+ * entries never have to be updated.
+ *
+ * Values, which take more than half a page, are written as a chain of
+ * value pages instead, each of which has the layout
+ * <code>{long<NextPage>, int<Length>, byte[]<RawData>}</code>.
+ *
+ * Removing a key does not merge under-filled leaves. Lookups stay
+ * correct, the freed value pages are reused for later values. Packed
+ * pages, which are freed up by a quarter, are reused for new small
+ * values; this is only tracked while the store is open.
+ */
+public class BTreeStore implements MetaStore {
+
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+
+    private static final byte LEAF = 1;
+    private static final byte INNER = 2;
+
+    private static final int TYPE = 0;
+    private static final int COUNT = 1;
+    private static final int LINK = 3;
+    private static final int ENTRIES = 11;
+    private static final int ENTRY_SIZE = 24;
+
+    private static final int VALUE_NEXT = 0;
+    private static final int VALUE_LENGTH = 8;
+    private static final int VALUE_DATA = 12;
+
+    private static final long PACKED = Long.MIN_VALUE;
+    private static final int SLOT_BITS = 16;
+    private static final int MAX_SLOTS = (1 << SLOT_BITS) - 1;
+    private static final int SLOT_COUNT = 0;
+    private static final int SLOT_DATA = 2;
+    private static final int SLOTS = 6;
+    private static final int SLOT_SIZE = 8;
+    private static final int MAX_PACK_CANDIDATES = 64;
+
+    private final PageFile file;
+    private final PageCache cache;
+    private final DiscriminatorMap discriminatorMap;
+    private final int maxEntries;
+    private final int maxPacked;
+
+    /** packed page new small values are written to, or zero */
+    private long packPage;
+    /** packed pages with enough free space to be reused */
+    private final Set<Long> packCandidates = new LinkedHashSet<>();
+
+    public BTreeStore(File file, DiscriminatorMap discriminatorMap) throws IOException {
+        this(file, discriminatorMap, DEFAULT_PAGE_SIZE, DEFAULT_CACHE_SIZE);
+    }
+
+    public BTreeStore(File file, DiscriminatorMap discriminatorMap, int pageSize, int cacheSize) throws IOException {
+        this.file = new PageFile(file, pageSize);
+        this.cache = new PageCache(this.file, cacheSize);
+        this.discriminatorMap = discriminatorMap;
+        this.maxEntries = (this.file.getPageSize() - ENTRIES) / ENTRY_SIZE;
+        this.maxPacked = (this.file.getPageSize() - SLOTS) / 2 - SLOT_SIZE;
+    }
+
+    @Override
+    public synchronized MetaData get(UUIDElement key) throws IOException, UnknownDiscriminatorException {
+        try {
+            Page leaf = findLeaf(uuid(key));
+            if (leaf == null)
+                return null;
+
+            int index = search(leaf.getData(), uuid(key));
+            return index >= 0 ? readValue(link(leaf.getData(), index)) : null;
+        } finally {
+            cache.trim();
+        }
+    }
+
+    @Override
+    public MetaData get(UUID key) throws IOException, UnknownDiscriminatorException {
+        return get(new UUIDElement(key));
+    }
+
+    @Override
+    public synchronized void put(UUIDElement key, MetaData value) throws IOException, NoMatchingDiscriminatorException {
+        if (value == null) {
+            remove(key);
+            return;
+        }
+
+        byte[] raw = serializeValue(value);
+        try {
+            UUID uuid = uuid(key);
+            long valuePage = writeValue(raw);
+
+            long root = file.getRootPage();
+            if (root == 0) {
+                Page leaf = cache.allocate();
+                leaf.getData().put(TYPE, LEAF);
+                root = leaf.getId();
+                file.setRootPage(root);
+            }
+
+            Split split = insert(root, uuid, valuePage);
+            if (split != null) {
+                Page page = cache.allocate();
+                ByteBuffer data = page.getData();
+                data.put(TYPE, INNER);
+                data.putLong(LINK, root);
+                setEntry(data, 0, split.msb, split.lsb, split.page);
+                setCount(data, 1);
+                file.setRootPage(page.getId());
+            }
+        } finally {
+            cache.trim();
+        }
+    }
+
+    @Override
+    public void put(UUID key, MetaData value) throws IOException, NoMatchingDiscriminatorException {
+        put(new UUIDElement(key), value);
+    }
+
+    @Override
+    public synchronized boolean remove(UUIDElement key) throws IOException {
+        try {
+            Page leaf = findLeaf(uuid(key));
+            if (leaf == null)
+                return false;
+
+            ByteBuffer data = leaf.getData();
+            int index = search(data, uuid(key));
+            if (index < 0)
+                return false;
+
+            long valuePage = link(data, index);
+            int count = count(data);
+            System.arraycopy(data.array(), offset(index + 1), data.array(), offset(index),
+                    (count - index - 1) * ENTRY_SIZE);
+            setCount(data, count - 1);
+            leaf.markDirty();
+
+            freeValue(valuePage);
+            file.setEntryCount(file.getEntryCount() - 1);
+            return true;
+        } finally {
+            cache.trim();
+        }
+    }
+
+    @Override
+    public boolean remove(UUID key) throws IOException {
+        return remove(new UUIDElement(key));
+    }
+
+    @Override
+    public synchronized boolean contains(UUIDElement key) throws IOException {
+        try {
+            Page leaf = findLeaf(uuid(key));
+            return leaf != null && search(leaf.getData(), uuid(key)) >= 0;
+        } finally {
+            cache.trim();
+        }
+    }
+
+    @Override
+    public boolean contains(UUID key) throws IOException {
+        return contains(new UUIDElement(key));
+    }
+
+    @Override
+    public synchronized long size() {
+        return file.getEntryCount();
+    }
+
+    @Override
+    public synchronized void forEach(BiConsumer<UUID, MetaData> action) throws IOException, UnknownDiscriminatorException {
+        long pageId = file.getRootPage();
+        if (pageId == 0)
+            return;
+
+        try {
+            ByteBuffer data = cache.get(pageId).getData();
+            while (data.get(TYPE) == INNER)
+                data = cache.get(data.getLong(LINK)).getData();
+
+            for (;;) {
+                int count = count(data);
+                for (int i = 0; i < count; i++) {
+                    int offset = offset(i);
+                    action.accept(new UUID(data.getLong(offset), data.getLong(offset + 8)),
+                            readValue(link(data, i)));
+                }
+
+                long next = data.getLong(LINK);
+                cache.trim();
+                if (next == 0)
+                    break;
+                data = cache.get(next).getData();
+            }
+        } finally {
+            cache.trim();
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        cache.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            cache.flush();
+        } finally {
+            file.close();
+        }
+    }
+
+    @Override
+    public DiscriminatorMap getDiscriminatorMap() {
+        return discriminatorMap;
+    }
+
+    private Page findLeaf(UUID key) throws IOException {
+        long root = file.getRootPage();
+        if (root == 0)
+            return null;
+
+        Page page = cache.get(root);
+        while (page.getData().get(TYPE) == INNER)
+            page = cache.get(child(page.getData(), childIndex(page.getData(), key)));
+        return page;
+    }
+
+    private Split insert(long pageId, UUID key, long valuePage) throws IOException {
+        Page page = cache.get(pageId);
+        ByteBuffer data = page.getData();
+
+        if (data.get(TYPE) == LEAF) {
+            int index = search(data, key);
+            if (index >= 0) {
+                long old = link(data, index);
+                data.putLong(offset(index) + 16, valuePage);
+                page.markDirty();
+                freeValue(old);
+                return null;
+            }
+
+            file.setEntryCount(file.getEntryCount() + 1);
+            return insertEntry(page, -(index + 1), key.getMostSignificantBits(),
+                    key.getLeastSignificantBits(), valuePage);
+        }
+
+        int index = childIndex(data, key);
+        Split split = insert(child(data, index), key, valuePage);
+        if (split == null)
+            return null;
+        return insertEntry(page, index, split.msb, split.lsb, split.page);
+    }
+
+    private Split insertEntry(Page page, int index, long msb, long lsb, long link) throws IOException {
+        ByteBuffer data = page.getData();
+        int count = count(data);
+        page.markDirty();
+
+        if (count < maxEntries) {
+            System.arraycopy(data.array(), offset(index), data.array(), offset(index + 1),
+                    (count - index) * ENTRY_SIZE);
+            setEntry(data, index, msb, lsb, link);
+            setCount(data, count + 1);
+            return null;
+        }
+
+        Page right = cache.allocate();
+        ByteBuffer rightData = right.getData();
+        int mid = count / 2;
+        Split split;
+
+        if (data.get(TYPE) == LEAF) {
+            rightData.put(TYPE, LEAF);
+            System.arraycopy(data.array(), offset(mid), rightData.array(), offset(0), (count - mid) * ENTRY_SIZE);
+            setCount(rightData, count - mid);
+            rightData.putLong(LINK, data.getLong(LINK));
+            data.putLong(LINK, right.getId());
+            setCount(data, mid);
+
+            split = new Split(rightData.getLong(offset(0)), rightData.getLong(offset(0) + 8), right.getId());
+            if (index <= mid)
+                insertEntry(page, index, msb, lsb, link);
+            else
+                insertEntry(right, index - mid, msb, lsb, link);
+        } else {
+            // the middle key moves up into the parent node
+            rightData.put(TYPE, INNER);
+            rightData.putLong(LINK, link(data, mid));
+            System.arraycopy(data.array(), offset(mid + 1), rightData.array(), offset(0),
+                    (count - mid - 1) * ENTRY_SIZE);
+            setCount(rightData, count - mid - 1);
+            setCount(data, mid);
+
+            split = new Split(data.getLong(offset(mid)), data.getLong(offset(mid) + 8), right.getId());
+            if (index <= mid)
+                insertEntry(page, index, msb, lsb, link);
+            else
+                insertEntry(right, index - mid - 1, msb, lsb, link);
+        }
+        return split;
+    }
+
+    private byte[] serializeValue(MetaData value) throws IOException, NoMatchingDiscriminatorException {
+        // values are not written into a presized buffer, since concurrent values may change their size
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(file.getPageSize());
+        CerberusData.createOutputStream(raw, discriminatorMap).writeData(value);
+        return raw.toByteArray();
+    }
+
+    private long writeValue(byte[] raw) throws IOException {
+        if (raw.length <= maxPacked)
+            return writePacked(raw);
+
+        int capacity = file.getPageSize() - VALUE_DATA;
+        int pages = Math.max(1, (raw.length + capacity - 1) / capacity);
+
+        Page first = cache.allocate();
+        Page current = first;
+        int offset = 0;
+        for (int i = 0; i < pages; i++) {
+            Page next = i + 1 < pages ? cache.allocate() : null;
+            int length = Math.min(capacity, raw.length - offset);
+
+            ByteBuffer data = current.getData();
+            data.putLong(VALUE_NEXT, next != null ? next.getId() : 0);
+            data.putInt(VALUE_LENGTH, length);
+            System.arraycopy(raw, offset, data.array(), VALUE_DATA, length);
+            current.markDirty();
+
+            offset += length;
+            current = next;
+        }
+        return first.getId();
+    }
+
+    /**
+     * Packs a small value into a shared page.
+     * @return reference of the packed value
+     */
+    private long writePacked(byte[] raw) throws IOException {
+        for (;;) {
+            if (packPage != 0) {
+                Page page = cache.get(packPage);
+                int slot = place(page.getData(), raw);
+                if (slot >= 0) {
+                    page.markDirty();
+                    return PACKED | (packPage << SLOT_BITS) | slot;
+                }
+            }
+
+            Iterator<Long> candidates = packCandidates.iterator();
+            if (candidates.hasNext()) {
+                packPage = candidates.next();
+                candidates.remove();
+            } else {
+                Page page = cache.allocate();
+                page.getData().putInt(SLOT_DATA, file.getPageSize());
+                packPage = page.getId();
+            }
+        }
+    }
+
+    /**
+     * Places a value into a free slot of a packed page, compacting the
+     * data of the page if necessary.
+     * @return slot index, or -1 if the value does not fit
+     */
+    private int place(ByteBuffer data, byte[] raw) {
+        int slotCount = Short.toUnsignedInt(data.getShort(SLOT_COUNT));
+        int slot = 0;
+        while (slot < slotCount && data.getInt(slotOffset(slot)) != 0)
+            slot++;
+        if (slot == MAX_SLOTS)
+            return -1;
+
+        int directory = slotOffset(Math.max(slotCount, slot + 1));
+        if (data.getInt(SLOT_DATA) - directory < raw.length) {
+            if (free(data) - (slot == slotCount ? SLOT_SIZE : 0) < raw.length)
+                return -1;
+            compact(data);
+        }
+
+        int offset = data.getInt(SLOT_DATA) - raw.length;
+        System.arraycopy(raw, 0, data.array(), offset, raw.length);
+        data.putInt(SLOT_DATA, offset);
+        data.putInt(slotOffset(slot), offset);
+        data.putInt(slotOffset(slot) + 4, raw.length);
+        if (slot == slotCount)
+            data.putShort(SLOT_COUNT, (short) (slotCount + 1));
+        return slot;
+    }
+
+    /**
+     * Moves the data of all live slots to the end of a packed page, so
+     * the free space of the page is contiguous again.
+     */
+    private void compact(ByteBuffer data) {
+        int slotCount = Short.toUnsignedInt(data.getShort(SLOT_COUNT));
+        byte[] copy = data.array().clone();
+        int end = file.getPageSize();
+        for (int slot = 0; slot < slotCount; slot++) {
+            int offset = data.getInt(slotOffset(slot));
+            if (offset == 0)
+                continue;
+            int length = data.getInt(slotOffset(slot) + 4);
+            end -= length;
+            System.arraycopy(copy, offset, data.array(), end, length);
+            data.putInt(slotOffset(slot), end);
+        }
+        data.putInt(SLOT_DATA, end);
+    }
+
+    /**
+     * Returns the free space of a packed page, including the space of
+     * removed values, which can be recovered by compacting the page.
+     */
+    private int free(ByteBuffer data) {
+        int slotCount = Short.toUnsignedInt(data.getShort(SLOT_COUNT));
+        int free = file.getPageSize() - slotOffset(slotCount);
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (data.getInt(slotOffset(slot)) != 0)
+                free -= data.getInt(slotOffset(slot) + 4);
+        }
+        return free;
+    }
+
+    private MetaData readValue(long reference) throws IOException, UnknownDiscriminatorException {
+        byte[] raw;
+        if ((reference & PACKED) != 0) {
+            ByteBuffer data = cache.get(packedPage(reference)).getData();
+            int slot = packedSlot(reference);
+            int offset = data.getInt(slotOffset(slot));
+            raw = Arrays.copyOfRange(data.array(), offset, offset + data.getInt(slotOffset(slot) + 4));
+        } else {
+            ByteArrayOutputStream chain = new ByteArrayOutputStream(file.getPageSize());
+            for (long pageId = reference; pageId != 0; ) {
+                ByteBuffer data = cache.get(pageId).getData();
+                chain.write(data.array(), VALUE_DATA, data.getInt(VALUE_LENGTH));
+                pageId = data.getLong(VALUE_NEXT);
+            }
+            raw = chain.toByteArray();
+        }
+
+        MetaByteBuffer buffer = new MetaByteBufferImpl(discriminatorMap, ByteBuffer.wrap(raw));
+        return buffer.readData();
+    }
+
+    private void freeValue(long reference) throws IOException {
+        if ((reference & PACKED) != 0) {
+            freePacked(packedPage(reference), packedSlot(reference));
+            return;
+        }
+
+        long pageId = reference;
+        while (pageId != 0) {
+            long next = cache.get(pageId).getData().getLong(VALUE_NEXT);
+            cache.free(pageId);
+            pageId = next;
+        }
+    }
+
+    private void freePacked(long pageId, int slot) throws IOException {
+        Page page = cache.get(pageId);
+        ByteBuffer data = page.getData();
+        data.putLong(slotOffset(slot), 0);
+        page.markDirty();
+
+        // trailing free slots are dropped from the directory
+        int slotCount = Short.toUnsignedInt(data.getShort(SLOT_COUNT));
+        while (slotCount > 0 && data.getInt(slotOffset(slotCount - 1)) == 0)
+            slotCount--;
+        data.putShort(SLOT_COUNT, (short) slotCount);
+
+        if (slotCount == 0) {
+            packCandidates.remove(pageId);
+            if (packPage == pageId)
+                packPage = 0;
+            cache.free(pageId);
+        } else if (pageId != packPage && packCandidates.size() < MAX_PACK_CANDIDATES
+                && free(data) >= file.getPageSize() / 4) {
+            packCandidates.add(pageId);
+        }
+    }
+
+    private static long packedPage(long reference) {
+        return (reference & ~PACKED) >>> SLOT_BITS;
+    }
+
+    private static int packedSlot(long reference) {
+        return (int) (reference & MAX_SLOTS);
+    }
+
+    private static int slotOffset(int slot) {
+        return SLOTS + slot * SLOT_SIZE;
+    }
+
+    private static UUID uuid(UUIDElement key) {
+        return key.get() != null ? key.get() : new UUID(0, 0);
+    }
+
+    private static int search(ByteBuffer data, UUID key) {
+        long msb = key.getMostSignificantBits();
+        long lsb = key.getLeastSignificantBits();
+
+        int low = 0;
+        int high = count(data) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int offset = offset(mid);
+
+            int cmp = Long.compareUnsigned(data.getLong(offset), msb);
+            if (cmp == 0)
+                cmp = Long.compareUnsigned(data.getLong(offset + 8), lsb);
+
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Returns the index of the child of an inner node which has to
+     * contain the specified key. This is the amount of keys inside
+     * of the node, which are less or equal to the key.
+     */
+    private static int childIndex(ByteBuffer data, UUID key) {
+        int index = search(data, key);
+        return index >= 0 ? index + 1 : -(index + 1);
+    }
+
+    private static long child(ByteBuffer data, int index) {
+        return index == 0 ? data.getLong(LINK) : link(data, index - 1);
+    }
+
+    private static long link(ByteBuffer data, int index) {
+        return data.getLong(offset(index) + 16);
+    }
+
+    private static void setEntry(ByteBuffer data, int index, long msb, long lsb, long link) {
+        int offset = offset(index);
+        data.putLong(offset, msb);
+        data.putLong(offset + 8, lsb);
+        data.putLong(offset + 16, link);
+    }
+
+    private static int count(ByteBuffer data) {
+        return Short.toUnsignedInt(data.getShort(COUNT));
+    }
+
+    private static void setCount(ByteBuffer data, int count) {
+        data.putShort(COUNT, (short) count);
+    }
+
+    private static int offset(int index) {
+        return ENTRIES + index * ENTRY_SIZE;
+    }
+
+    private static class Split {
+
+        private final long msb;
+        private final long lsb;
+        private final long page;
+
+        private Split(long msb, long lsb, long page) {
+            this.msb = msb;
+            this.lsb = lsb;
+            this.page = page;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.store.impl;
+
+import com.cerberustek.store.BlobStore;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Least recently used cache in front of a blob store. The capacity
+ * of the cache is measured in bytes of blob data rather than in
+ * blobs, since blob sizes can vary a lot.
+ *
+ * Blobs are immutable, so cached blobs never have to be invalidated.
+ * The arrays returned by <code>get(byte[])</code> are shared with the
+ * cache and must not be modified.
+ */
+public class CachedBlobStore implements BlobStore {
+
+    private final BlobStore store;
+    private final long capacity;
+    private final LinkedHashMap<String, byte[]> blobs;
+
+    private long size;
+
+    public CachedBlobStore(BlobStore store, long capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("Cache capacity can not be negative!");
+
+        this.store = store;
+        this.capacity = capacity;
+        this.blobs = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    @Override
+    public byte[] put(byte[] data, int offset, int length) throws IOException {
+        return store.put(data, offset, length);
+    }
+
+    @Override
+    public byte[] get(byte[] hash) throws IOException {
+        String key = FileBlobStore.toHex(hash);
+        synchronized (blobs) {
+            byte[] data = blobs.get(key);
+            if (data != null)
+                return data;
+        }
+
+        byte[] data = store.get(hash);
+        if (data != null)
+            cache(key, data);
+        return data;
+    }
+
+    @Override
+    public boolean contains(byte[] hash) throws IOException {
+        synchronized (blobs) {
+            if (blobs.containsKey(FileBlobStore.toHex(hash)))
+                return true;
+        }
+        return store.contains(hash);
+    }
+
+    private void cache(String key, byte[] data) {
+        if (data.length > capacity)
+            return;
+
+        synchronized (blobs) {
+            byte[] previous = blobs.put(key, data);
+            if (previous != null)
+                size -= previous.length;
+            size += data.length;
+
+            Iterator<byte[]> iterator = blobs.values().iterator();
+            while (size > capacity && iterator.hasNext()) {
+                size -= iterator.next().length;
+                iterator.remove();
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (blobs) {
+            blobs.clear();
+            size = 0;
+        }
+    }
+
+    public long getCachedBytes() {
+        synchronized (blobs) {
+            return size;
+        }
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public BlobStore getStore() {
+        return store;
+    }
+
+    @Override
+    public void close() throws IOException {
+        clear();
+        store.close();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.store.impl;
+
+import com.cerberustek.store.BlobStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Blob store which keeps every blob in its own file. Blobs are
+ * addressed by their SHA-256 hash and sharded into sub directories
+ * by the first byte of the hash, so no directory grows too large.
+ *
+ * New blobs are written to a temporary file first and then moved
+ * to their final location, so a blob file is either complete or
+ * absent, even if multiple threads store the same blob at once.
+ * Blobs are verified against their hash whenever they are read, so
+ * corrupted or truncated blob files are never returned.
+ */
+public class FileBlobStore implements BlobStore {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    });
+
+    private final Path root;
+
+    public FileBlobStore(File root) throws IOException {
+        this.root = root.toPath();
+        Files.createDirectories(this.root);
+    }
+
+    @Override
+    public byte[] put(byte[] data, int offset, int length) throws IOException {
+        MessageDigest digest = DIGEST.get();
+        digest.update(data, offset, length);
+        byte[] hash = digest.digest();
+
+        Path path = resolve(hash);
+        if (Files.exists(path))
+            return hash;
+
+        Files.createDirectories(path.getParent());
+        Path temp = Files.createTempFile(path.getParent(), null, ".tmp");
+        try {
+            Files.write(temp, length == data.length ? data : copy(data, offset, length));
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path);
+            }
+        } catch (FileAlreadyExistsException e) {
+            // stored by a different thread in the meantime
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return hash;
+    }
+
+    @Override
+    public byte[] get(byte[] hash) throws IOException {
+        Path path = resolve(hash);
+        byte[] data;
+        try {
+            data = Files.readAllBytes(path);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        MessageDigest digest = DIGEST.get();
+        if (!MessageDigest.isEqual(digest.digest(data), hash))
+            throw new IOException("Blob file " + path + " does not match its hash!");
+        return data;
+    }
+
+    @Override
+    public boolean contains(byte[] hash) {
+        return Files.exists(resolve(hash));
+    }
+
+    @Override
+    public void close() {}
+
+    public File getRoot() {
+        return root.toFile();
+    }
+
+    private Path resolve(byte[] hash) {
+        if (hash.length != HASH_SIZE)
+            throw new IllegalArgumentException("Invalid blob hash length: " + hash.length + "!");
+
+        String hex = toHex(hash);
+        return root.resolve(hex.substring(0, 2)).resolve(hex.substring(2));
+    }
+
+    private static byte[] copy(byte[] data, int offset, int length) {
+        byte[] out = new byte[length];
+        System.arraycopy(data, offset, out, 0, length);
+        return out;
+    }
+
+    public static String toHex(byte[] hash) {
+        char[] chars = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            chars[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[hash[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
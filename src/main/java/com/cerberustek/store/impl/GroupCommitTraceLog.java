@@ -0,0 +1,370 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.store.impl;
+
+import com.cerberustek.CerberusData;
+import com.cerberustek.data.DiscriminatorMap;
+import com.cerberustek.data.MetaData;
+import com.cerberustek.data.impl.buffer.MetaByteBufferImpl;
+import com.cerberustek.exception.NoMatchingDiscriminatorException;
+import com.cerberustek.exception.ResourceUnavailableException;
+import com.cerberustek.exception.StoreFormatException;
+import com.cerberustek.exception.UnknownDiscriminatorException;
+import com.cerberustek.querry.ResourceLocation;
+import com.cerberustek.querry.trace.QueryTrace;
+import com.cerberustek.store.TraceLog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+/**
+ * Trace log which commits traces in groups. All traces, which are
+ * appended while the previous group is being forced to the storage
+ * device, are written and forced together by the commit thread, so
+ * the log only needs one fsync per group.
+ *
+ * The log file starts with <code>{int<Magic>, int<Version>}</code>,
+ * followed by the records <code>{int<Length>, int<CRC32>, byte[]<Trace>}</code>.
+ * A torn record at the end of the file, as left behind by a crash
+ * during a write, is discarded when the log is opened.
+ */
+public class GroupCommitTraceLog implements TraceLog {
+
+    public static final int MAGIC = 0x43445457;
+    public static final int VERSION = 1;
+    public static final int DEFAULT_MAX_BATCH = 1024;
+
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final File file;
+    private final FileChannel channel;
+    private final DiscriminatorMap discriminatorMap;
+    private final int maxBatch;
+    private final LinkedBlockingQueue<Record> queue;
+    private final Thread committer;
+    private final Object writeLock = new Object();
+
+    private long position;
+    private volatile IOException failure;
+    private boolean closed;
+
+    public GroupCommitTraceLog(File file, DiscriminatorMap discriminatorMap) throws IOException {
+        this(file, discriminatorMap, DEFAULT_MAX_BATCH);
+    }
+
+    public GroupCommitTraceLog(File file, DiscriminatorMap discriminatorMap, int maxBatch) throws IOException {
+        if (maxBatch < 1)
+            throw new IllegalArgumentException("Batch size has to be at least one trace!");
+
+        this.file = file;
+        this.discriminatorMap = discriminatorMap;
+        this.maxBatch = maxBatch;
+        this.queue = new LinkedBlockingQueue<>();
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            recover();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        committer = new Thread(this::commitLoop, "Cerberus-TraceLog-" + file.getName());
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    @Override
+    public void append(QueryTrace trace) throws IOException, NoMatchingDiscriminatorException {
+        CompletableFuture<Void> future = appendAsync(trace);
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the trace log", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> appendAsync(QueryTrace trace) throws NoMatchingDiscriminatorException {
+        // the trace is serialized right away, so the caller may reuse it
+        Record record;
+        try {
+            record = new Record(encode(trace));
+        } catch (IOException e) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        IOException failure = this.failure;
+        if (failure != null) {
+            record.future.completeExceptionally(failure);
+            return record.future;
+        }
+
+        synchronized (queue) {
+            if (closed)
+                record.future.completeExceptionally(new IOException("Trace log " + file + " is closed"));
+            else
+                queue.add(record);
+        }
+        return record.future;
+    }
+
+    @Override
+    public int replay(ResourceLocation location) throws IOException {
+        int count = 0;
+        synchronized (writeLock) {
+            long offset = HEADER_SIZE;
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            while (offset < position) {
+                header.clear();
+                readFully(header, offset);
+                header.flip();
+                int length = header.getInt();
+
+                ByteBuffer raw = ByteBuffer.allocate(length);
+                readFully(raw, offset + RECORD_HEADER_SIZE);
+                raw.flip();
+                offset += RECORD_HEADER_SIZE + length;
+
+                MetaData data;
+                try {
+                    data = new MetaByteBufferImpl(discriminatorMap, raw).readData();
+                } catch (UnknownDiscriminatorException e) {
+                    throw new StoreFormatException(file, e.getMessage());
+                }
+                if (!(data instanceof QueryTrace))
+                    throw new StoreFormatException(file, "record is not a query trace");
+
+                try {
+                    location.trace((QueryTrace) data);
+                } catch (ResourceUnavailableException e) {
+                    CerberusData.getLogger().log(Level.WARNING, "Could not replay logged trace " + data, e);
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void checkpoint() throws IOException {
+        synchronized (writeLock) {
+            channel.truncate(HEADER_SIZE);
+            channel.force(false);
+            position = HEADER_SIZE;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (queue) {
+            if (closed)
+                return;
+            closed = true;
+            queue.add(Record.CLOSE);
+        }
+
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Returns the amount of traces which are waiting to be committed.
+     * @return pending traces
+     */
+    public int pending() {
+        return queue.size();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    private byte[] encode(QueryTrace trace) throws IOException, NoMatchingDiscriminatorException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        output.write(new byte[RECORD_HEADER_SIZE]);
+        CerberusData.createOutputStream(output, discriminatorMap).writeData(trace);
+
+        byte[] raw = output.toByteArray();
+        int size = raw.length - RECORD_HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        crc.update(raw, RECORD_HEADER_SIZE, size);
+
+        ByteBuffer header = ByteBuffer.wrap(raw);
+        header.putInt(0, size);
+        header.putInt(4, (int) crc.getValue());
+        return raw;
+    }
+
+    private void commitLoop() {
+        ArrayList<Record> batch = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch, maxBatch - 1);
+
+            if (batch.remove(Record.CLOSE))
+                running = false;
+
+            if (!batch.isEmpty())
+                commit(batch);
+            batch.clear();
+        }
+    }
+
+    private void commit(ArrayList<Record> batch) {
+        IOException failure = this.failure;
+        if (failure == null) {
+            int size = 0;
+            for (Record record : batch)
+                size += record.data.length;
+
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            for (Record record : batch)
+                buffer.put(record.data);
+            buffer.flip();
+
+            try {
+                synchronized (writeLock) {
+                    long offset = position;
+                    while (buffer.hasRemaining())
+                        offset += channel.write(buffer, offset);
+                    channel.force(false);
+                    position = offset;
+                }
+            } catch (IOException e) {
+                // the log may now end with a torn record, so further records would be lost on replay
+                this.failure = failure = e;
+                CerberusData.getLogger().log(Level.SEVERE, "Failed to write trace log " + file, e);
+            }
+        }
+
+        for (Record record : batch) {
+            if (failure == null)
+                record.future.complete(null);
+            else
+                record.future.completeExceptionally(failure);
+        }
+    }
+
+    private void recover() throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            while (header.hasRemaining())
+                channel.write(header, header.position());
+            channel.force(false);
+            position = HEADER_SIZE;
+            return;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC)
+            throw new StoreFormatException(file, "missing trace log header");
+        int version = header.getInt();
+        if (version != VERSION)
+            throw new StoreFormatException(file, "unsupported version " + version);
+
+        long offset = HEADER_SIZE;
+        ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        while (offset + RECORD_HEADER_SIZE <= size) {
+            recordHeader.clear();
+            readFully(recordHeader, offset);
+            recordHeader.flip();
+            int length = recordHeader.getInt();
+            int checksum = recordHeader.getInt();
+            if (length < 0 || offset + RECORD_HEADER_SIZE + length > size)
+                break;
+
+            ByteBuffer raw = ByteBuffer.allocate(length);
+            readFully(raw, offset + RECORD_HEADER_SIZE);
+            crc.reset();
+            crc.update(raw.array(), 0, length);
+            if ((int) crc.getValue() != checksum)
+                break;
+            offset += RECORD_HEADER_SIZE + length;
+        }
+
+        if (offset < size) {
+            CerberusData.getLogger().warning("Discarding " + (size - offset) + " bytes of torn records in trace log " + file);
+            channel.truncate(offset);
+            channel.force(false);
+        }
+        position = offset;
+    }
+
+    private void readFully(ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset);
+            if (read < 0)
+                break;
+            offset += read;
+        }
+    }
+
+    private static class Record {
+
+        private static final Record CLOSE = new Record(new byte[0]);
+
+        private final byte[] data;
+        private final CompletableFuture<Void> future;
+
+        private Record(byte[] data) {
+            this.data = data;
+            this.future = new CompletableFuture<>();
+        }
+    }
+}
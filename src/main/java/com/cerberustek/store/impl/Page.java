@@ -0,0 +1,58 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.cerberustek.store.impl;
+
+import java.nio.ByteBuffer;
+
+public class Page {
+
+    private final long id;
+    private final ByteBuffer data;
+
+    private boolean dirty;
+
+    public Page(long id, ByteBuffer data) {
+        this.id = id;
+        this.data = data;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public ByteBuffer getData() {
+        return data;
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public void markDirty() {
+        dirty = true;
+    }
+
+    public void markClean() {
+        dirty = false;
+    }
+}
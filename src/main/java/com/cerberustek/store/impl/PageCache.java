@@ -0,0 +1,140 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.cerberustek.store.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Least recently used cache for the pages of a page file.
+ *
+ * Pages returned by this cache stay valid until the next call to
+ * <code>trim()</code>, which evicts the least recently used pages
+ * until the cache is within its capacity again. Eviction is never
+ * done implicitly, so a caller can safely hold on to multiple pages
+ * during one operation.
+ */
+public class PageCache {
+
+    private final PageFile file;
+    private final int capacity;
+    private final LinkedHashMap<Long, Page> pages;
+
+    public PageCache(PageFile file, int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Cache capacity has to be at least one page!");
+
+        this.file = file;
+        this.capacity = capacity;
+        this.pages = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    public Page get(long pageId) throws IOException {
+        if (pageId <= 0 || pageId >= file.getPageCount())
+            throw new IllegalArgumentException("Invalid page id: " + pageId + "!");
+
+        Page page = pages.get(pageId);
+        if (page == null) {
+            ByteBuffer buffer = ByteBuffer.allocate(file.getPageSize());
+            file.read(pageId, buffer);
+            page = new Page(pageId, buffer);
+            pages.put(pageId, page);
+        }
+        return page;
+    }
+
+    /**
+     * Returns a zeroed page which is not used by any structure yet.
+     * Pages on the free list will be reused before the file is
+     * extended.
+     * @return new page
+     * @throws IOException failed to read the free list
+     */
+    public Page allocate() throws IOException {
+        Page page;
+        long free = file.getFreePage();
+        if (free != 0) {
+            page = get(free);
+            file.setFreePage(page.getData().getLong(0));
+            Arrays.fill(page.getData().array(), (byte) 0);
+        } else {
+            long id = file.extend();
+            page = new Page(id, ByteBuffer.allocate(file.getPageSize()));
+            pages.put(id, page);
+        }
+        page.markDirty();
+        return page;
+    }
+
+    /**
+     * Puts a page onto the free list of the file.
+     * @param pageId page id
+     * @throws IOException failed to read the page
+     */
+    public void free(long pageId) throws IOException {
+        Page page = get(pageId);
+        page.getData().putLong(0, file.getFreePage());
+        page.markDirty();
+        file.setFreePage(pageId);
+    }
+
+    /**
+     * Evicts the least recently used pages until the cache is
+     * within its capacity. Dirty pages are written back to the
+     * file before they are dropped.
+     * @throws IOException failed to write a dirty page
+     */
+    public void trim() throws IOException {
+        Iterator<Page> iterator = pages.values().iterator();
+        while (pages.size() > capacity && iterator.hasNext()) {
+            Page page = iterator.next();
+            if (page.isDirty()) {
+                file.write(page.getId(), page.getData());
+                page.markClean();
+            }
+            iterator.remove();
+        }
+    }
+
+    public void flush() throws IOException {
+        for (Page page : pages.values()) {
+            if (page.isDirty()) {
+                file.write(page.getId(), page.getData());
+                page.markClean();
+            }
+        }
+        file.writeHeader();
+        file.force();
+    }
+
+    public int size() {
+        return pages.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
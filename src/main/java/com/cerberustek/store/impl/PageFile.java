@@ -0,0 +1,191 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.cerberustek.store.impl;
+
+import com.cerberustek.exception.StoreFormatException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Fixed size page access to a store file. The first page of the file
+ * is reserved for the file header, which holds the format information
+ * and the global state of the store:
+ *
+ * <code>{int<Magic>, int<Version>, int<PageSize>, long<PageCount>,
+ *  long<RootPage>, long<FreePage>, long<EntryCount>}</code>
+ *
+ * A page id of zero is used as null pointer, since page zero can never
+ * be referenced by any structure inside of the store.
+ */
+public class PageFile implements AutoCloseable {
+
+    public static final int MAGIC = 0x43445342;
+    public static final int VERSION = 1;
+    public static final int MIN_PAGE_SIZE = 256;
+    public static final int HEADER_SIZE = 44;
+
+    private final File file;
+    private final FileChannel channel;
+    private final int pageSize;
+
+    private long pageCount;
+    private long rootPage;
+    private long freePage;
+    private long entryCount;
+
+    public PageFile(File file, int pageSize) throws IOException {
+        if (pageSize < MIN_PAGE_SIZE)
+            throw new IllegalArgumentException("Page size has to be at least " + MIN_PAGE_SIZE + " bytes!");
+
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        if (channel.size() == 0) {
+            this.pageSize = pageSize;
+            pageCount = 1;
+            rootPage = 0;
+            freePage = 0;
+            entryCount = 0;
+            writeHeader();
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(header, 0);
+            header.flip();
+
+            if (header.getInt() != MAGIC) {
+                channel.close();
+                throw new StoreFormatException(file, "missing store header");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                channel.close();
+                throw new StoreFormatException(file, "unsupported version " + version);
+            }
+            this.pageSize = header.getInt();
+            pageCount = header.getLong();
+            rootPage = header.getLong();
+            freePage = header.getLong();
+            entryCount = header.getLong();
+        }
+    }
+
+    public void read(long pageId, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        readFully(buffer, pageId * pageSize);
+        // pages which have been allocated but never been written are read as zeros
+        while (buffer.hasRemaining())
+            buffer.put((byte) 0);
+        buffer.flip();
+    }
+
+    public void write(long pageId, ByteBuffer buffer) throws IOException {
+        ByteBuffer view = buffer.duplicate();
+        view.clear();
+        long position = pageId * pageSize;
+        while (view.hasRemaining())
+            position += channel.write(view, position);
+    }
+
+    public void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(pageSize);
+        header.putLong(pageCount);
+        header.putLong(rootPage);
+        header.putLong(freePage);
+        header.putLong(entryCount);
+        header.flip();
+
+        long position = 0;
+        while (header.hasRemaining())
+            position += channel.write(header, position);
+    }
+
+    public void force() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * Appends a new page to the end of the file and returns its id.
+     * @return id of the new page
+     */
+    public long extend() {
+        return pageCount++;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                break;
+            position += read;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public long getPageCount() {
+        return pageCount;
+    }
+
+    public long getRootPage() {
+        return rootPage;
+    }
+
+    public void setRootPage(long rootPage) {
+        this.rootPage = rootPage;
+    }
+
+    public long getFreePage() {
+        return freePage;
+    }
+
+    public void setFreePage(long freePage) {
+        this.freePage = freePage;
+    }
+
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    public void setEntryCount(long entryCount) {
+        this.entryCount = entryCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.cerberustek.utils;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Concurrent cache with a fixed capacity. Lookups never block and only
+ * mark the entry as recently used. Once the capacity is exceeded,
+ * entries are evicted in insertion order, with a second chance for
+ * entries which have been used since they were last looked at, which
+ * approximates a least recently used order without locking.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class BoundedCache<K, V> {
+
+    private final int capacity;
+    private final ConcurrentHashMap<K, Entry<K, V>> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry<K, V>> order = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger discarded = new AtomicInteger();
+
+    public BoundedCache(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Cache capacity has to be at least one entry!");
+        this.capacity = capacity;
+    }
+
+    public V get(K key) {
+        Entry<K, V> entry = entries.get(key);
+        if (entry == null)
+            return null;
+        entry.used = true;
+        return entry.value;
+    }
+
+    public void put(K key, V value) {
+        Entry<K, V> entry = new Entry<>(key, value);
+        Entry<K, V> previous = entries.put(key, entry);
+        if (previous != null)
+            discard(previous);
+        else
+            size.incrementAndGet();
+        order.offer(entry);
+        evict();
+    }
+
+    /**
+     * Returns the cached value for the key, or computes and caches it
+     * if there is none. Values computed as null are not cached.
+     *
+     * The value is computed atomically with respect to the key, so a
+     * concurrent <code>remove</code> either happens before the value is
+     * computed or removes the computed value. A removed key can thus
+     * not be cached again with a value computed before its removal. The
+     * function should be short and must not modify this cache.
+     * @param key key
+     * @param function function to compute the value
+     * @return value
+     */
+    public V get(K key, Function<? super K, ? extends V> function) {
+        V value = get(key);
+        if (value != null)
+            return value;
+
+        boolean[] created = new boolean[1];
+        Entry<K, V> entry = entries.computeIfAbsent(key, k -> {
+            V computed = function.apply(k);
+            if (computed == null)
+                return null;
+            created[0] = true;
+            return new Entry<>(k, computed);
+        });
+        if (entry == null)
+            return null;
+
+        if (created[0]) {
+            size.incrementAndGet();
+            order.offer(entry);
+            evict();
+        } else {
+            entry.used = true;
+        }
+        return entry.value;
+    }
+
+    public void remove(K key) {
+        Entry<K, V> entry = entries.remove(key);
+        if (entry != null) {
+            discard(entry);
+            size.decrementAndGet();
+        }
+    }
+
+    /**
+     * Removes the entry of the key, but only if the key is still mapped
+     * to the value, so an entry cached in the meantime is kept.
+     * @param key key
+     * @param value expected value
+     * @return if the entry was removed
+     */
+    public boolean remove(K key, V value) {
+        Entry<K, V> entry = entries.get(key);
+        if (entry == null || !Objects.equals(entry.value, value) || !entries.remove(key, entry))
+            return false;
+
+        discard(entry);
+        size.decrementAndGet();
+        return true;
+    }
+
+    /**
+     * Marks an entry, which is no longer mapped, as removed. The entry
+     * stays in the eviction order until it is either skipped by the
+     * eviction, or the queue is purged of removed entries, which happens
+     * once more entries than the capacity have been discarded. Purging
+     * is linear in the size of the queue, so it only adds a constant
+     * amount of work per discarded entry.
+     * @param entry entry
+     */
+    private void discard(Entry<K, V> entry) {
+        entry.removed = true;
+        int count = discarded.incrementAndGet();
+        if (count > capacity && discarded.compareAndSet(count, 0))
+            order.removeIf(queued -> queued.removed);
+    }
+
+    public void clear() {
+        for (K key : entries.keySet())
+            remove(key);
+    }
+
+    private void evict() {
+        // entries removed by a concurrent call may still be queued
+        while (size.get() > capacity) {
+            Entry<K, V> entry = order.poll();
+            if (entry == null)
+                return;
+            if (entry.removed)
+                continue;
+            if (entry.used) {
+                entry.used = false;
+                order.offer(entry);
+            } else if (entries.remove(entry.key, entry)) {
+                entry.removed = true;
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private static class Entry<K, V> {
+
+        private final K key;
+        private final V value;
+
+        private volatile boolean used;
+        private volatile boolean removed;
+
+        private Entry(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
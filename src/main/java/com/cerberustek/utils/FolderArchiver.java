@@ -0,0 +1,233 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.utils;
+
+import com.cerberustek.data.DiscriminatorMap;
+import com.cerberustek.data.MetaData;
+import com.cerberustek.data.MetaOutputStream;
+import com.cerberustek.data.impl.elements.ContainerElement;
+import com.cerberustek.data.impl.tags.ContainerTag;
+import com.cerberustek.data.impl.tags.DocTag;
+import com.cerberustek.data.impl.tags.ListTag;
+import com.cerberustek.exception.NoMatchingDiscriminatorException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Writes a folder to a meta output stream without ever holding more
+ * than a fixed size buffer of file contents in memory.
+ *
+ * The output is the same as writing the tag returned by
+ * <code>CerberusData.serializeFolder(File)</code>, so archives can be
+ * read back with a regular meta input stream as well as with the
+ * streaming <code>FolderExtractor</code>. Folders are written as
+ * <code>DocTag</code>s, files as <code>ContainerTag</code>s and files
+ * which do not fit into a single container as <code>ListTag</code>s of
+ * <code>ContainerElement</code> chunks. The children of a folder are
+ * written in the order of their names.
+ *
+ * Since the size of every tag has to be written ahead of its contents,
+ * the folder tree is walked once to collect the file sizes before any
+ * content is written. Files that change their size in between fail the
+ * archiving.
+ */
+public class FolderArchiver {
+
+    /**
+     * Files larger than this will be split into chunks.
+     */
+    public static final long MAX_CONTAINER_SIZE = Integer.MAX_VALUE - 8;
+    public static final int LARGE_FILE_CHUNK_SIZE = 1 << 30;
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final byte[] buffer;
+
+    public FolderArchiver(int bufferSize) {
+        this.buffer = new byte[bufferSize];
+    }
+
+    public FolderArchiver() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Writes the file or folder to the output stream.
+     * @param file file or folder
+     * @param outputStream output stream
+     * @return amount of bytes written
+     * @throws IOException failed to read a file or to write to the stream
+     * @throws NoMatchingDiscriminatorException the discriminator map of the
+     *          stream does not contain the doc, list or container types
+     */
+    public long archive(File file, MetaOutputStream outputStream) throws IOException, NoMatchingDiscriminatorException {
+        Node root = walk(file);
+        if (root == null)
+            throw new IOException("Unable to archive " + file + ", it is neither a file nor a folder");
+
+        long start = outputStream.getByteCount();
+        write(root, outputStream);
+        return outputStream.getByteCount() - start;
+    }
+
+    private void write(Node node, MetaOutputStream outputStream) throws IOException, NoMatchingDiscriminatorException {
+        if (node.children != null) {
+            header(DocTag.class, node, outputStream);
+            outputStream.writeInt(node.children.length);
+            for (Node child : node.children)
+                write(child, outputStream);
+        } else if (node.length > MAX_CONTAINER_SIZE) {
+            header(ListTag.class, node, outputStream);
+            int chunks = chunks(node.length);
+            outputStream.writeInt(chunks);
+
+            short discriminator = discriminator(ContainerElement.class, outputStream.getDiscriminatorMap());
+            try (InputStream inputStream = new FileInputStream(node.file)) {
+                long remaining = node.length;
+                for (int i = 0; i < chunks; i++) {
+                    int chunk = (int) Math.min(remaining, LARGE_FILE_CHUNK_SIZE);
+                    outputStream.writeShort(discriminator);
+                    outputStream.writeLong(4 + chunk);
+                    outputStream.writeInt(chunk);
+                    copy(node, inputStream, chunk, outputStream);
+                    remaining -= chunk;
+                }
+            }
+        } else {
+            header(ContainerTag.class, node, outputStream);
+            outputStream.writeInt((int) node.length);
+            try (InputStream inputStream = new FileInputStream(node.file)) {
+                copy(node, inputStream, node.length, outputStream);
+            }
+        }
+    }
+
+    private void header(Class<? extends MetaData> type, Node node, MetaOutputStream outputStream)
+            throws IOException, NoMatchingDiscriminatorException {
+
+        outputStream.writeShort(discriminator(type, outputStream.getDiscriminatorMap()));
+        outputStream.writeLong(node.byteSize);
+        outputStream.writeUTF(node.name);
+    }
+
+    private void copy(Node node, InputStream inputStream, long length, MetaOutputStream outputStream) throws IOException {
+        while (length > 0) {
+            int read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, length));
+            if (read < 0)
+                throw new IOException("File " + node.file + " has been truncated while it was archived");
+            outputStream.write(buffer, 0, read);
+            length -= read;
+        }
+    }
+
+    private static short discriminator(Class<? extends MetaData> type, DiscriminatorMap map) throws NoMatchingDiscriminatorException {
+        short discriminator = map.getDiscriminator(type);
+        if (discriminator == 0)
+            throw new NoMatchingDiscriminatorException(type);
+        return discriminator;
+    }
+
+    private static int chunks(long length) {
+        return (int) ((length + LARGE_FILE_CHUNK_SIZE - 1) / LARGE_FILE_CHUNK_SIZE);
+    }
+
+    /**
+     * Collects the names and sizes of the folder tree and calculates
+     * the serialized size of every node.
+     */
+    private static Node walk(File file) {
+        if (file.isFile()) {
+            long length = file.length();
+            long byteSize;
+            if (length > MAX_CONTAINER_SIZE) {
+                // every chunk is a container element with discriminator, size and length
+                byteSize = 4 + chunks(length) * 14L + length;
+            } else
+                byteSize = 4 + length;
+            return new Node(file, length, byteSize, null);
+        } else if (file.isDirectory()) {
+            File[] files = file.listFiles();
+            if (files == null)
+                files = new File[0];
+            Arrays.sort(files, Comparator.comparing(File::getName));
+
+            ArrayList<Node> children = new ArrayList<>(files.length);
+            long byteSize = 4;
+            for (File f : files) {
+                Node child = walk(f);
+                if (child != null) {
+                    children.add(child);
+                    byteSize += child.totalSize();
+                }
+            }
+            return new Node(file, 0, byteSize, children.toArray(new Node[0]));
+        }
+        return null;
+    }
+
+    /**
+     * Returns the length of the string in modified UTF-8, as it is
+     * written by <code>DataOutput.writeUTF(String)</code>.
+     */
+    static int utfLength(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F)
+                length++;
+            else if (c > 0x07FF)
+                length += 3;
+            else
+                length += 2;
+        }
+        return length;
+    }
+
+    private static class Node {
+
+        private final File file;
+        private final String name;
+        private final long length;
+        private final long byteSize;
+        private final Node[] children;
+
+        private Node(File file, long length, long byteSize, Node[] children) {
+            this.file = file;
+            this.name = file.getName();
+            this.length = length;
+            this.byteSize = byteSize;
+            this.children = children;
+        }
+
+        private long totalSize() {
+            // discriminator, size and tag name
+            return 2 + 8 + 2 + utfLength(name) + byteSize;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.utils;
+
+import com.cerberustek.CerberusData;
+import com.cerberustek.data.CompressionCodec;
+import com.cerberustek.data.MetaBuilder;
+import com.cerberustek.data.MetaInputStream;
+import com.cerberustek.data.impl.compression.BoundedInputStream;
+import com.cerberustek.data.impl.compression.CodecRegistry;
+import com.cerberustek.data.impl.elements.ContainerElement;
+import com.cerberustek.data.impl.tags.CompressionTag;
+import com.cerberustek.data.impl.tags.ContainerTag;
+import com.cerberustek.data.impl.tags.DocTag;
+import com.cerberustek.data.impl.tags.ListTag;
+import com.cerberustek.exception.UnknownDiscriminatorException;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.logging.Level;
+
+/**
+ * Restores a folder from a meta input stream, as written by the
+ * <code>FolderArchiver</code> or by writing the tag returned from
+ * <code>CerberusData.serializeFolder(File)</code>. File contents are
+ * copied from the stream to the file system through a fixed size
+ * buffer, so archives of any size can be extracted in constant memory.
+ *
+ * Files, which were compressed by <code>serializeFolderParallel</code>,
+ * are decompressed while they are copied.
+ *
+ * Entries of an unexpected type are skipped.
+ */
+public class FolderExtractor {
+
+    private final byte[] buffer;
+    private final CodecRegistry registry;
+
+    public FolderExtractor(int bufferSize, CodecRegistry registry) {
+        this.buffer = new byte[bufferSize];
+        this.registry = registry;
+    }
+
+    public FolderExtractor(int bufferSize) {
+        this(bufferSize, CodecRegistry.getDefault());
+    }
+
+    public FolderExtractor() {
+        this(FolderArchiver.DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Reads one archived file or folder from the input stream and
+     * restores it inside of the target folder.
+     * @param inputStream input stream
+     * @param target target folder
+     * @return the restored file or folder, or null if the stream did not
+     *          contain a file or folder
+     * @throws IOException failed to read from the stream or to write a file
+     * @throws UnknownDiscriminatorException the stream contains unknown data
+     */
+    public File extract(MetaInputStream inputStream, File target) throws IOException, UnknownDiscriminatorException {
+        if (!target.isDirectory() && !target.mkdirs())
+            throw new IOException("Unable to create folder " + target);
+        return entry(inputStream, target);
+    }
+
+    private File entry(MetaInputStream inputStream, File parent) throws IOException, UnknownDiscriminatorException {
+        short discriminator = inputStream.readShort();
+        if (discriminator == CerberusData.CERBERUS_NULL)
+            return null;
+
+        MetaBuilder builder = inputStream.getDiscriminatorMap().getBuilder(discriminator);
+        long size = builder.getFinalSize() >= 0 ? builder.getFinalSize() : inputStream.readLong();
+        String name = builder.isTag() ? inputStream.readUTF() : null;
+        Class<?> type = builder.getDataClass();
+
+        if (name == null || !(type == DocTag.class || type == ContainerTag.class || type == ListTag.class
+                || type == CompressionTag.class)) {
+            CerberusData.getLogger().log(Level.WARNING, "Skipping unexpected folder archive entry of type " + type.getName() + "!");
+            inputStream.skipFully(size);
+            return null;
+        }
+
+        File file = child(parent, name);
+        if (type == DocTag.class) {
+            if (!file.isDirectory() && !file.mkdirs())
+                throw new IOException("Unable to create folder " + file);
+
+            int length = inputStream.readInt();
+            for (int i = 0; i < length; i++)
+                entry(inputStream, file);
+        } else if (type == ContainerTag.class) {
+            try (OutputStream outputStream = new FileOutputStream(file)) {
+                copy(inputStream, inputStream.readInt(), outputStream);
+            }
+        } else if (type == CompressionTag.class) {
+            compressed(inputStream, file);
+        } else {
+            int length = inputStream.readInt();
+            try (OutputStream outputStream = new FileOutputStream(file)) {
+                for (int i = 0; i < length; i++)
+                    chunk(inputStream, outputStream);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Decompresses a file, which is stored as compression tag of its
+     * container. The payload is decoded while it is decompressed, so the
+     * file is never held in memory as a whole.
+     */
+    private void compressed(MetaInputStream inputStream, File file) throws IOException, UnknownDiscriminatorException {
+        short id = CodecRegistry.DEFLATE;
+        if (inputStream.readInt() < 0) {
+            id = inputStream.readShort();
+            inputStream.readInt();
+        }
+        BoundedInputStream bounded = new BoundedInputStream(inputStream, inputStream.readInt());
+
+        try {
+            CompressionCodec codec = registry.getCodec(id);
+            if (codec == null)
+                throw new IOException("Unknown compression codec " + id + " in folder archive");
+
+            try (InputStream decompressed = codec.decompress(bounded)) {
+                MetaInputStream content = CerberusData.createInputStream(decompressed, inputStream.getDiscriminatorMap());
+                MetaBuilder builder = content.getDiscriminatorMap().getBuilder(content.readShort());
+                if (builder.getDataClass() != ContainerElement.class)
+                    throw new IOException("Unexpected compressed file of type " + builder.getDataClass().getName());
+
+                if (builder.getFinalSize() < 0)
+                    content.readLong();
+                try (OutputStream outputStream = new FileOutputStream(file)) {
+                    copy(content, content.readInt(), outputStream);
+                }
+            }
+        } finally {
+            bounded.skipRemaining();
+        }
+    }
+
+    private void chunk(MetaInputStream inputStream, OutputStream outputStream) throws IOException, UnknownDiscriminatorException {
+        MetaBuilder builder = inputStream.getDiscriminatorMap().getBuilder(inputStream.readShort());
+        Class<?> type = builder.getDataClass();
+        if (type != ContainerElement.class && type != ContainerTag.class)
+            throw new IOException("Unexpected file chunk of type " + type.getName());
+
+        if (builder.getFinalSize() < 0)
+            inputStream.readLong();
+        if (builder.isTag())
+            inputStream.readUTF();
+        copy(inputStream, inputStream.readInt(), outputStream);
+    }
+
+    private void copy(MetaInputStream inputStream, long length, OutputStream outputStream) throws IOException {
+        while (length > 0) {
+            int read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, length));
+            if (read < 0)
+                throw new IOException("Unexpected end of folder archive");
+            outputStream.write(buffer, 0, read);
+            length -= read;
+        }
+    }
+
+    /**
+     * Resolves the name inside of the parent folder and makes sure,
+     * that the archive can not write outside of the target folder.
+     */
+    private static File child(File parent, String name) throws IOException {
+        if (name.isEmpty() || name.equals(".") || name.equals("..") || name.indexOf('/') >= 0
+                || name.indexOf('\\') >= 0 || name.indexOf('\0') >= 0)
+            throw new IOException("Illegal file name in folder archive: " + name);
+        return new File(parent, name);
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.utils;
+
+import com.cerberustek.CerberusData;
+import com.cerberustek.data.MetaTag;
+import com.cerberustek.data.impl.elements.ContainerElement;
+import com.cerberustek.data.impl.elements.DocElement;
+import com.cerberustek.data.impl.elements.StringElement;
+import com.cerberustek.data.impl.tags.ContainerTag;
+import com.cerberustek.data.impl.tags.DocTag;
+import com.cerberustek.data.impl.tags.ListTag;
+import com.cerberustek.data.impl.tags.LongTag;
+import com.cerberustek.data.impl.tags.MapTag;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Snapshot of a folder, which can be updated incrementally.
+ *
+ * Besides the serialized folder, as returned by
+ * <code>CerberusData.serializeFolder(File)</code>, a snapshot keeps a
+ * manifest that maps the relative path of every file to its size, its
+ * modification time and, optionally, the SHA-256 hash of its contents.
+ * Paths are relative to the snapshot folder and separated by slashes.
+ * When a snapshot is updated from a previous one, only files whose size
+ * or modification time changed are read again. The tags of unchanged
+ * files and folders are taken over from the previous snapshot, so the
+ * cost of an update mostly depends on the amount of changes.
+ *
+ * If hashes are enabled, files whose modification time changed, but whose
+ * size did not, are hashed and taken over as well if their contents did
+ * not change.
+ */
+public class FolderSnapshot {
+
+    public static final String CONTENT = "content";
+    public static final String MANIFEST = "manifest";
+    public static final String SIZE = "size";
+    public static final String MODIFIED = "mtime";
+    public static final String HASH = "sha256";
+
+    private final MetaTag content;
+    private final MapTag<StringElement, DocElement> manifest;
+
+    private int readFiles;
+    private int reusedFiles;
+    private long readBytes;
+
+    public FolderSnapshot(MetaTag content, MapTag<StringElement, DocElement> manifest) {
+        this.content = content;
+        this.manifest = manifest;
+    }
+
+    /**
+     * Takes a snapshot of the file or folder.
+     * @param file file or folder
+     * @param hash record content hashes
+     * @return snapshot
+     * @throws IOException failed to read a file
+     */
+    public static FolderSnapshot create(File file, boolean hash) throws IOException {
+        return update(file, null, hash);
+    }
+
+    /**
+     * Takes a snapshot of the file or folder, which only reads the files
+     * that have changed since the previous snapshot.
+     * @param file file or folder
+     * @param previous previous snapshot of the same folder, or null
+     * @param hash record and compare content hashes
+     * @return snapshot
+     * @throws IOException failed to read a file
+     */
+    public static FolderSnapshot update(File file, FolderSnapshot previous, boolean hash) throws IOException {
+        if (!file.exists())
+            return null;
+
+        FolderSnapshot snapshot = new FolderSnapshot(null, new MapTag<>(MANIFEST));
+        MetaTag content = snapshot.walk(file, "", previous != null ? previous.content : null,
+                previous, hash ? digest() : null);
+        FolderSnapshot out = new FolderSnapshot(content, snapshot.manifest);
+        out.readFiles = snapshot.readFiles;
+        out.reusedFiles = snapshot.reusedFiles;
+        out.readBytes = snapshot.readBytes;
+        return out;
+    }
+
+    public static FolderSnapshot fromTag(DocTag tag) {
+        @SuppressWarnings("unchecked")
+        MapTag<StringElement, DocElement> manifest = tag.extract(MANIFEST, MapTag.class);
+        DocTag content = tag.extractDoc(CONTENT);
+        if (manifest == null || content == null || content.size() != 1)
+            throw new IllegalArgumentException("Tag " + tag.getTag() + " is not a folder snapshot");
+        return new FolderSnapshot(content.iterator().next(), manifest);
+    }
+
+    public DocTag toTag(String tag) {
+        DocTag docTag = new DocTag(tag);
+        docTag.createDoc(CONTENT).insert(content);
+        docTag.insert(manifest);
+        return docTag;
+    }
+
+    private MetaTag walk(File file, String path, MetaTag old, FolderSnapshot previous, MessageDigest digest) throws IOException {
+        if (file.isDirectory()) {
+            DocTag oldDoc = old instanceof DocTag ? (DocTag) old : null;
+            DocTag docTag = new DocTag(file.getName());
+
+            File[] files = file.listFiles();
+            if (files == null)
+                files = new File[0];
+            Arrays.sort(files, Comparator.comparing(File::getName));
+
+            boolean unchanged = oldDoc != null;
+            for (File f : files) {
+                MetaTag oldChild = oldDoc != null ? oldDoc.extract(f.getName()) : null;
+                MetaTag child = walk(f, path.isEmpty() ? f.getName() : path + '/' + f.getName(), oldChild, previous, digest);
+                if (child != null) {
+                    docTag.insert(child);
+                    unchanged &= child == oldChild;
+                }
+            }
+            // keep sharing the old folder if nothing inside of it has changed
+            if (unchanged && oldDoc.size() == docTag.size())
+                return oldDoc;
+            return docTag;
+        } else if (file.isFile()) {
+            long size = file.length();
+            long modified = file.lastModified();
+            StringElement key = new StringElement(path);
+
+            DocElement entry = previous != null && old != null && !(old instanceof DocTag)
+                    ? previous.manifest.get(key) : null;
+            if (entry != null && size == value(entry, SIZE)) {
+                if (modified == value(entry, MODIFIED) && (digest == null || entry.extract(HASH) != null)) {
+                    manifest.put(key, entry);
+                    reusedFiles++;
+                    return old;
+                }
+
+                ContainerTag oldHash = entry.extract(HASH, ContainerTag.class);
+                if (digest != null && oldHash != null && Arrays.equals(oldHash.get(), hash(file, digest))) {
+                    manifest.put(key, entry(size, modified, oldHash.get()));
+                    reusedFiles++;
+                    return old;
+                }
+            }
+
+            MetaTag content = CerberusData.serializeFolder(file);
+            readFiles++;
+            readBytes += size;
+            manifest.put(key, entry(size, modified, digest != null ? hash(content, digest) : null));
+            return content;
+        }
+        return null;
+    }
+
+    private static long value(DocElement entry, String name) {
+        LongTag tag = entry.extractLong(name);
+        return tag != null ? tag.get() : -1;
+    }
+
+    private static DocElement entry(long size, long modified, byte[] hash) {
+        DocElement entry = new DocElement();
+        entry.insert(new LongTag(SIZE, size));
+        entry.insert(new LongTag(MODIFIED, modified));
+        if (hash != null)
+            entry.insert(new ContainerTag(HASH, hash));
+        return entry;
+    }
+
+    private byte[] hash(File file, MessageDigest digest) throws IOException {
+        byte[] buffer = new byte[FolderArchiver.DEFAULT_BUFFER_SIZE];
+        try (InputStream inputStream = new FileInputStream(file)) {
+            for (int i = inputStream.read(buffer); i != -1; i = inputStream.read(buffer)) {
+                digest.update(buffer, 0, i);
+                readBytes += i;
+            }
+        }
+        return digest.digest();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static byte[] hash(MetaTag content, MessageDigest digest) {
+        if (content instanceof ContainerTag)
+            digest.update(((ContainerTag) content).get());
+        else if (content instanceof ListTag) {
+            for (ContainerElement chunk : (ListTag<ContainerElement>) content)
+                digest.update(chunk.get());
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    public MetaTag getContent() {
+        return content;
+    }
+
+    public MapTag<StringElement, DocElement> getManifest() {
+        return manifest;
+    }
+
+    /**
+     * Returns the amount of files that have been read to take this
+     * snapshot.
+     * @return read files
+     */
+    public int getReadFiles() {
+        return readFiles;
+    }
+
+    /**
+     * Returns the amount of files that have been taken over from the
+     * previous snapshot.
+     * @return reused files
+     */
+    public int getReusedFiles() {
+        return reusedFiles;
+    }
+
+    public long getReadBytes() {
+        return readBytes;
+    }
+}
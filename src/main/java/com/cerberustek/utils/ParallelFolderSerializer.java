@@ -0,0 +1,164 @@
+/*
+ * Cerberus-Data is a complex data management library
+ * Visit https://cerberustek.com for more details
+ * Copyright (c)  2020  Adrian Paskert
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. See the file LICENSE included with this
+ * distribution for more information.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.cerberustek.utils;
+
+import com.cerberustek.CerberusData;
+import com.cerberustek.data.DiscriminatorMap;
+import com.cerberustek.data.MetaTag;
+import com.cerberustek.data.impl.elements.ContainerElement;
+import com.cerberustek.data.impl.tags.CompressionTag;
+import com.cerberustek.data.impl.tags.ContainerTag;
+import com.cerberustek.data.impl.tags.DocTag;
+import com.cerberustek.exception.NoMatchingDiscriminatorException;
+import com.cerberustek.exception.UnknownDiscriminatorException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Serializes folders like <code>CerberusData.serializeFolder(File)</code>,
+ * but walks the folder tree and reads files on a fork join pool. Every
+ * folder and every file is processed as its own task, so large trees
+ * are read and compressed by all workers of the pool at once.
+ *
+ * The children of each folder are inserted into its doc in the order of
+ * their names, so the resulting tag does not depend on the scheduling of
+ * the tasks.
+ *
+ * If compression is enabled, files are stored as compression tags of
+ * their container, unless deflating does not make them any smaller.
+ * The <code>FolderExtractor</code> decompresses such files again.
+ */
+public class ParallelFolderSerializer {
+
+    private final ForkJoinPool pool;
+    private final DiscriminatorMap discriminatorMap;
+    private final boolean compress;
+
+    public ParallelFolderSerializer(ForkJoinPool pool, DiscriminatorMap discriminatorMap, boolean compress) {
+        this.pool = pool;
+        this.discriminatorMap = discriminatorMap;
+        this.compress = compress;
+    }
+
+    public ParallelFolderSerializer(boolean compress) {
+        this(ForkJoinPool.commonPool(), CerberusData.genDefaultDiscriminators(), compress);
+    }
+
+    /**
+     * Serializes the file or folder.
+     * @param file file or folder
+     * @return serialized folder, or null if the file does not exist
+     * @throws IOException failed to read a file
+     */
+    public MetaTag serialize(File file) throws IOException {
+        if (!file.exists())
+            return null;
+
+        try {
+            return pool.invoke(task(file));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private RecursiveTask<MetaTag> task(File file) {
+        return file.isDirectory() ? new FolderTask(file) : new FileTask(file);
+    }
+
+    private MetaTag read(File file) throws IOException {
+        MetaTag tag = CerberusData.serializeFolder(file);
+        if (!compress || !(tag instanceof ContainerTag))
+            return tag;
+
+        ContainerElement container = ((ContainerTag) tag).toElement();
+        CompressionTag<ContainerElement> compressed = new CompressionTag<>(tag.getTag(), container);
+        try {
+            if (compressed.deflate(discriminatorMap)
+                    && CerberusData.totalSize(compressed) < CerberusData.totalSize(tag))
+                return compressed;
+        } catch (NoMatchingDiscriminatorException | UnknownDiscriminatorException e) {
+            throw new IOException("Discriminator map does not support compressed containers", e);
+        }
+        return tag;
+    }
+
+    private class FileTask extends RecursiveTask<MetaTag> {
+
+        private final File file;
+
+        private FileTask(File file) {
+            this.file = file;
+        }
+
+        @Override
+        protected MetaTag compute() {
+            try {
+                return read(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private class FolderTask extends RecursiveTask<MetaTag> {
+
+        private final File folder;
+
+        private FolderTask(File folder) {
+            this.folder = folder;
+        }
+
+        @Override
+        protected MetaTag compute() {
+            DocTag docTag = new DocTag(folder.getName());
+
+            File[] files = folder.listFiles();
+            if (files == null)
+                return docTag;
+            Arrays.sort(files, Comparator.comparing(File::getName));
+
+            ArrayList<RecursiveTask<MetaTag>> tasks = new ArrayList<>(files.length);
+            for (File f : files) {
+                if (f.isFile() || f.isDirectory())
+                    tasks.add(task(f));
+            }
+            ForkJoinTask.invokeAll(tasks);
+
+            for (RecursiveTask<MetaTag> task : tasks) {
+                MetaTag data = task.join();
+                if (data != null)
+                    docTag.insert(data);
+            }
+            return docTag;
+        }
+    }
+}